@@ -0,0 +1,82 @@
+package site.xiweihai.framework.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * 基准测试使用的合成文件工具
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+final class BenchFiles {
+
+    private static final String[] EXTENSIONS = {".jar", ".properties", ".yml", ".json", ".class", ".txt", ".xml"};
+
+    private BenchFiles() {
+    }
+
+    /**
+     * 创建合成的插件目录：文件按编号每 filesPerDir 个放入一个子目录 dir-N，文件大小在 0~maxSize 字节之间随机
+     *
+     * @param fileCount   文件数
+     * @param filesPerDir 每个子目录的文件数
+     * @param maxSize     单个文件的最大字节数
+     * @return 目录
+     * @throws IOException 创建失败
+     */
+    static Path createTree(int fileCount, int filesPerDir, int maxSize) throws IOException {
+        Path root = Files.createTempDirectory("bench-files");
+        Random random = new Random(fileCount);
+        byte[] buffer = new byte[maxSize];
+        Path dir = null;
+        for (int i = 0; i < fileCount; i++) {
+            if (i % filesPerDir == 0) {
+                dir = Files.createDirectories(root.resolve("dir-" + i / filesPerDir));
+            }
+            random.nextBytes(buffer);
+            Path file = dir.resolve("file-" + i + EXTENSIONS[i % EXTENSIONS.length]);
+            try (OutputStream out = Files.newOutputStream(file)) {
+                out.write(buffer, 0, random.nextInt(maxSize + 1));
+            }
+        }
+        return root;
+    }
+
+    /**
+     * 创建指定大小的随机文件
+     *
+     * @param size 文件大小
+     * @return 文件
+     * @throws IOException 创建失败
+     */
+    static Path createFile(int size) throws IOException {
+        Path file = Files.createTempFile("bench", ".jar");
+        byte[] buffer = new byte[size];
+        new Random(size).nextBytes(buffer);
+        Files.write(file, buffer);
+        return file;
+    }
+
+    /**
+     * 删除目录及其中的全部内容
+     *
+     * @param path 目录或文件
+     * @throws IOException 删除失败
+     */
+    static void delete(Path path) throws IOException {
+        if (path == null || !Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> walk = Files.walk(path)) {
+            for (Path p : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+}
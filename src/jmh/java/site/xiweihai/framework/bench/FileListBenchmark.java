@@ -0,0 +1,94 @@
+package site.xiweihai.framework.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import site.xiweihai.framework.utils.DirectoryLister;
+import site.xiweihai.framework.utils.ToolUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 文件管理页目录列表基准测试
+ * 对比整目录列出（{@link ToolUtils#getFileList}）与分页列出（{@link DirectoryLister#list}）在不同目录规模下的耗时。
+ * 准备阶段先等待摘要缓存计算完成，测量的是页面稳定后的列表耗时
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileListBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int fileCount;
+
+    private Path root;
+
+    /**
+     * 被列出的目录，包含全部 fileCount 个文件
+     */
+    private Path dir;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        root = BenchFiles.createTree(fileCount, fileCount, 4096);
+        dir = root.resolve("dir-0");
+        // 等待后台摘要计算完成，最多等待一分钟
+        long deadline = System.currentTimeMillis() + 60_000;
+        while (System.currentTimeMillis() < deadline
+                && ToolUtils.getFileList(dir.toFile()).stream().anyMatch(info -> Boolean.TRUE.equals(info.get("md5Pending")))) {
+            Thread.sleep(100);
+        }
+        // 列表失败时 getFileList 返回空列表，先确认能列出全部条目，避免测到的是异常路径
+        int listed = ToolUtils.getFileList(dir.toFile()).size();
+        try (Stream<Path> entries = Files.list(dir)) {
+            long expected = entries.count();
+            if (listed != expected) {
+                throw new IllegalStateException("getFileList listed " + listed + " of " + expected + " entries");
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchFiles.delete(root);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> getFileList() {
+        return ToolUtils.getFileList(dir.toFile());
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> firstPageByName() throws IOException {
+        File file = dir.toFile();
+        return ToolUtils.toFileInfo(file, DirectoryLister.list(dir, DirectoryLister.SORT_NAME, null, 100).entries());
+    }
+
+    @Benchmark
+    public DirectoryLister.Listing firstPageByTime() throws IOException {
+        return DirectoryLister.list(dir, DirectoryLister.SORT_TIME, null, 100);
+    }
+}
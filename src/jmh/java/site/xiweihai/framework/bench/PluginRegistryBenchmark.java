@@ -0,0 +1,116 @@
+package site.xiweihai.framework.bench;
+
+import org.anyline.adapter.init.DefaultEnvironmentWorker;
+import org.anyline.data.param.init.DefaultConfigStore;
+import org.anyline.entity.DataRow;
+import org.anyline.entity.DataSet;
+import org.anyline.proxy.ServiceProxy;
+import org.anyline.service.AnylineService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import site.xiweihai.framework.InitDb;
+import site.xiweihai.framework.datasource.DataSourceManager;
+import site.xiweihai.framework.service.PluginPage;
+import site.xiweihai.framework.service.PluginRegistry;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 插件信息读取基准测试
+ * 在临时的嵌入式 SQLite 数据库中写入指定数量的插件，对比直接通过 Anyline 查询与通过插件注册表读取的耗时
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PluginRegistryBenchmark {
+
+    @Param({"100", "10000"})
+    public int pluginCount;
+
+    private Path dbFile;
+
+    private AnylineService service;
+
+    private PluginRegistry registry;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        DefaultEnvironmentWorker.start();
+        dbFile = Files.createTempFile("bench", ".db");
+        InitDb.run("org.sqlite.JDBC", "jdbc:sqlite:" + dbFile, "", "");
+        service = ServiceProxy.service(DataSourceManager.DEFAULT_KEY);
+
+        DataSet rows = new DataSet();
+        for (int i = 1; i <= pluginCount; i++) {
+            DataRow row = new DataRow();
+            row.put("PLUGIN_NAME", "plugin-" + i % 500);
+            row.put("PLUGIN_VERSION", "1." + i / 500);
+            row.put("PLUGIN_DESC", "benchmark plugin " + i);
+            row.put("PLUGIN_PATH", "plugins/plugin-" + i + "/plugin.jar");
+            row.put("PLUGIN_STATUS", i % 2);
+            row.put("UPDATE_TIME", new Date());
+            rows.add(row);
+        }
+        service.insert(PluginRegistry.TABLE, rows);
+
+        registry = new PluginRegistry(DataSourceManager.DEFAULT_KEY);
+        registry.list();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        DataSourceManager.global().close();
+        Files.deleteIfExists(dbFile);
+    }
+
+    private long randomId() {
+        return ThreadLocalRandom.current().nextLong(1, pluginCount + 1);
+    }
+
+    @Benchmark
+    public DataRow anylineQueryById() {
+        return service.query(PluginRegistry.TABLE, "ID:" + randomId());
+    }
+
+    @Benchmark
+    public DataSet anylineQueryAll() {
+        return service.querys(PluginRegistry.TABLE, new DefaultConfigStore().order("ID"));
+    }
+
+    @Benchmark
+    public DataRow registryGet() {
+        return registry.get(randomId());
+    }
+
+    @Benchmark
+    public PluginPage registryFirstPage() {
+        return registry.page(null, null, PluginRegistry.SORT_TIME, null, 20);
+    }
+
+    @Benchmark
+    public PluginPage registryFilteredPage() {
+        return registry.page("plugin-42", 1, PluginRegistry.SORT_ID, null, 20);
+    }
+}
@@ -0,0 +1,86 @@
+package site.xiweihai.framework.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import site.xiweihai.framework.utils.ToolUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 文件工具方法基准测试：MD5计算、文件大小格式化和配置文件判断
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ToolUtilsBenchmark {
+
+    private static final long[] SIZES = {0, 1, 1023, 1024, 65_536, 4_194_304, 1L << 30, 5L << 40};
+
+    private static final String[] NAMES = {"app.yml", "plugin.jar", "config.properties", "index.html",
+            "Main.class", "data.json", "logback.xml", "README"};
+
+    /**
+     * MD5计算使用的文件，参数只作用于 getMD5，其他基准方法不随文件大小重复运行
+     */
+    @State(Scope.Benchmark)
+    public static class Md5File {
+
+        /**
+         * MD5计算的文件大小：64KB、4MB、64MB
+         */
+        @Param({"65536", "4194304", "67108864"})
+        public int md5FileSize;
+
+        private Path file;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            file = BenchFiles.createFile(md5FileSize);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            BenchFiles.delete(file);
+        }
+    }
+
+    @Benchmark
+    public String getMD5(Md5File md5File) {
+        File file = md5File.file.toFile();
+        return ToolUtils.getMD5(file);
+    }
+
+    @Benchmark
+    public void formatFileSize(Blackhole blackhole) {
+        for (long size : SIZES) {
+            blackhole.consume(ToolUtils.formatFileSize(size));
+        }
+    }
+
+    @Benchmark
+    public void isConfigFile(Blackhole blackhole) {
+        for (String name : NAMES) {
+            blackhole.consume(ToolUtils.isConfigFile(name));
+        }
+    }
+}
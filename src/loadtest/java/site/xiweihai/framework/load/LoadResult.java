@@ -0,0 +1,63 @@
+package site.xiweihai.framework.load;
+
+import java.util.Arrays;
+
+/**
+ * 单个场景的压测结果
+ *
+ * @param scenario    场景名称
+ * @param concurrency 并发数
+ * @param requests    请求总数
+ * @param errors      失败的请求数（异常或 4xx/5xx）
+ * @param seconds     测量时长（秒）
+ * @param rps         每秒请求数
+ * @param p50Millis   50分位耗时（毫秒）
+ * @param p90Millis   90分位耗时（毫秒）
+ * @param p99Millis   99分位耗时（毫秒）
+ * @param maxMillis   最大耗时（毫秒）
+ * @author hai
+ * @since 2026/10/18
+ */
+public record LoadResult(String scenario, int concurrency, long requests, long errors, double seconds, double rps,
+                         double p50Millis, double p90Millis, double p99Millis, double maxMillis) {
+
+    /**
+     * 根据全部请求的耗时计算结果
+     *
+     * @param scenario    场景名称
+     * @param concurrency 并发数
+     * @param latencies   每个请求的耗时（纳秒）
+     * @param errors      失败的请求数
+     * @param nanos       测量时长（纳秒）
+     * @return 压测结果
+     */
+    static LoadResult of(String scenario, int concurrency, long[] latencies, long errors, long nanos) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        double seconds = nanos / 1e9;
+        return new LoadResult(scenario, concurrency, sorted.length, errors, seconds, sorted.length / seconds,
+                percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99),
+                sorted.length > 0 ? sorted[sorted.length - 1] / 1e6 : 0);
+    }
+
+    /**
+     * 失败率
+     */
+    public double errorRate() {
+        return requests > 0 ? (double) errors / requests : 0;
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-14s c=%-4d req=%-8d err=%-6d rps=%10.1f p50=%8.2fms p90=%8.2fms p99=%8.2fms max=%8.2fms",
+                scenario, concurrency, requests, errors, rps, p50Millis, p90Millis, p99Millis, maxMillis);
+    }
+}
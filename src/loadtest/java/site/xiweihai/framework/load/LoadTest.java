@@ -0,0 +1,370 @@
+package site.xiweihai.framework.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.anyline.adapter.init.DefaultEnvironmentWorker;
+import org.anyline.entity.DataRow;
+import org.anyline.entity.DataSet;
+import org.anyline.proxy.ServiceProxy;
+import org.anyline.service.AnylineService;
+import site.xiweihai.framework.App;
+import site.xiweihai.framework.InitDb;
+import site.xiweihai.framework.datasource.DataSourceManager;
+import site.xiweihai.framework.service.PluginRegistry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+/**
+ * 端到端压测
+ * 在临时目录中准备 SQLite 数据库和插件目录，通过 {@link App} 启动应用，再用虚拟线程以指定并发请求真实接口，
+ * 输出各场景的吞吐量和耗时分位数，并与回归预算比较，超出预算时以非零状态退出。
+ * <p>
+ * 运行：mvn -Ploadtest verify -DskipTests，通过 -Dload.args 传递参数，例如
+ * -Dload.args="--concurrency=64 --duration=20 --scenarios=plugin.list,plugin.files"
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+public class LoadTest {
+
+    private static final String LIST = "plugin.list";
+    private static final String FILES = "plugin.files";
+    private static final String ADD = "plugin.add";
+    private static final String ENABLE = "plugin.enable";
+
+    /**
+     * 重定向携带的结果键中表示失败的键，此外以 _fail 结尾的键也表示失败
+     */
+    private static final Set<String> FAILURES = Set.of("plugin.exists", "plugin.status_changed", "plugin.not_jar",
+            "plugin.invalid_jar", "plugin.not_exist", "plugin.verifying", "plugin.install_busy");
+
+    private final Map<String, String> options;
+    private final int concurrency;
+    private final int pluginCount;
+    private final HttpClient client;
+    private final AtomicLong sequence = new AtomicLong();
+    private String baseUrl;
+    private byte[] pluginJar;
+
+    public LoadTest(Map<String, String> options) {
+        this.options = options;
+        this.concurrency = Integer.parseInt(options.getOrDefault("concurrency", "32"));
+        this.pluginCount = Integer.parseInt(options.getOrDefault("plugins", "200"));
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .connectTimeout(Duration.ofSeconds(10))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        int exitCode = new LoadTest(options).run();
+        // 结束进程时一并停止应用
+        System.exit(exitCode);
+    }
+
+    /**
+     * 准备环境、启动应用并依次执行各场景
+     *
+     * @return 进程退出码，超出预算时为 1
+     * @throws Exception 准备或执行失败
+     */
+    int run() throws Exception {
+        Path work = Files.createTempDirectory("framework-load");
+        Path db = work.resolve("load.db");
+        Path root = work.resolve("plugins");
+        Path ext = Files.createDirectories(work.resolve("ext"));
+        pluginJar = jar("load");
+        seed(db, root, Integer.parseInt(options.getOrDefault("files", "1000")));
+
+        int port = freePort();
+        baseUrl = "http://127.0.0.1:" + port;
+        App.main(new String[]{
+                "--server.port=" + port,
+                "--solon.extend=" + ext,
+                "--db.driverClassName=org.sqlite.JDBC",
+                "--db.jdbcUrl=jdbc:sqlite:" + db,
+                "--db.username=",
+                "--db.password=",
+                "--plugin.root=" + root
+        });
+
+        List<String> scenarios = Arrays.asList(options.getOrDefault("scenarios", String.join(",", LIST, FILES, ADD, ENABLE)).split(","));
+        long warmup = Duration.ofSeconds(Long.parseLong(options.getOrDefault("warmup", "3"))).toNanos();
+        long duration = Duration.ofSeconds(Long.parseLong(options.getOrDefault("duration", "10"))).toNanos();
+        List<LoadResult> results = new ArrayList<>();
+        for (String scenario : scenarios) {
+            drive(scenario, warmup);
+            LoadResult result = drive(scenario, duration);
+            System.out.println(result);
+            results.add(result);
+        }
+
+        Path report = Path.of(options.getOrDefault("report", "target/load-report.json"));
+        Files.createDirectories(report.toAbsolutePath().getParent());
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(report.toFile(), results);
+        System.out.println("Report written to " + report.toAbsolutePath());
+
+        List<String> violations = check(results, budget());
+        violations.forEach(violation -> System.out.println("BUDGET EXCEEDED: " + violation));
+        return violations.isEmpty() ? 0 : 1;
+    }
+
+    /**
+     * 创建表结构并写入插件：每个插件目录中有一个插件包，第一个插件目录中另有指定数量的文件供文件管理页列出
+     */
+    private void seed(Path db, Path root, int files) throws IOException {
+        DefaultEnvironmentWorker.start();
+        InitDb.run("org.sqlite.JDBC", "jdbc:sqlite:" + db, "", "");
+        AnylineService service = ServiceProxy.service(DataSourceManager.DEFAULT_KEY);
+        DataSet rows = new DataSet();
+        for (int i = 1; i <= pluginCount; i++) {
+            Path dir = Files.createDirectories(root.resolve("seed-" + i).resolve("1.0"));
+            Path jar = dir.resolve("plugin.jar");
+            Files.write(jar, pluginJar);
+            if (i == 1) {
+                for (int f = 0; f < files; f++) {
+                    Files.writeString(dir.resolve("file-" + f + (f % 3 == 0 ? ".yml" : ".txt")), "key: value-" + f + "\n");
+                }
+            }
+            DataRow row = new DataRow();
+            row.put("PLUGIN_NAME", "seed-" + i);
+            row.put("PLUGIN_VERSION", "1.0");
+            row.put("PLUGIN_DESC", "load test plugin " + i);
+            row.put("PLUGIN_PATH", jar.toString());
+            row.put("PLUGIN_STATUS", 0);
+            row.put("UPDATE_TIME", new Date());
+            rows.add(row);
+        }
+        service.insert(PluginRegistry.TABLE, rows);
+        // 应用启动时重新创建连接池
+        DataSourceManager.global().close();
+    }
+
+    /**
+     * 以指定并发在虚拟线程上持续请求，直到达到指定时长
+     */
+    private LoadResult drive(String scenario, long nanos) throws Exception {
+        AtomicLong errors = new AtomicLong();
+        long start = System.nanoTime();
+        long deadline = start + nanos;
+        List<Future<long[]>> workers = new ArrayList<>(concurrency);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                workers.add(executor.submit(() -> {
+                    long[] latencies = new long[1024];
+                    int count = 0;
+                    while (System.nanoTime() < deadline) {
+                        HttpRequest request = request(scenario);
+                        long begin = System.nanoTime();
+                        try {
+                            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                            if (failed(scenario, response.statusCode(), response.headers().firstValue("Location").orElse(null))) {
+                                errors.incrementAndGet();
+                            }
+                        } catch (IOException e) {
+                            errors.incrementAndGet();
+                        }
+                        if (count == latencies.length) {
+                            latencies = Arrays.copyOf(latencies, count * 2);
+                        }
+                        latencies[count++] = System.nanoTime() - begin;
+                    }
+                    return Arrays.copyOf(latencies, count);
+                }));
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        List<long[]> all = new ArrayList<>();
+        int total = 0;
+        for (Future<long[]> worker : workers) {
+            long[] latencies = worker.get();
+            all.add(latencies);
+            total += latencies.length;
+        }
+        long[] merged = new long[total];
+        int position = 0;
+        for (long[] latencies : all) {
+            System.arraycopy(latencies, 0, merged, position, latencies.length);
+            position += latencies.length;
+        }
+        return LoadResult.of(scenario, concurrency, merged, errors.get(), elapsed);
+    }
+
+    /**
+     * 判断一次请求是否失败。接口失败时大多不返回错误状态码：上传以 JSON 调用时只有 202（已提交）算成功，
+     * 失败时返回表单页；启用等操作重定向到 /plugin?errorMsg=结果键，结果键表示失败时计为错误
+     *
+     * @param scenario 场景
+     * @param status   状态码
+     * @param location 重定向地址，没有时为 null
+     * @return 是否失败
+     */
+    static boolean failed(String scenario, int status, String location) {
+        if (status >= 400) {
+            return true;
+        }
+        if (ADD.equals(scenario)) {
+            return status != 202;
+        }
+        String result = result(location);
+        return result != null && (result.endsWith("_fail") || FAILURES.contains(result));
+    }
+
+    /**
+     * 从重定向地址中取出结果键
+     */
+    private static String result(String location) {
+        int start = location != null ? location.indexOf("errorMsg=") : -1;
+        if (start < 0) {
+            return null;
+        }
+        start += "errorMsg=".length();
+        int end = location.indexOf('&', start);
+        return URLDecoder.decode(end < 0 ? location.substring(start) : location.substring(start, end), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 构造场景的一次请求
+     */
+    private HttpRequest request(String scenario) {
+        long pluginId = ThreadLocalRandom.current().nextLong(2, pluginCount + 1);
+        return switch (scenario) {
+            case LIST -> get("/plugin?size=20");
+            case FILES -> get("/plugin/file/1?size=100");
+            case ENABLE -> get("/plugin/enable/" + pluginId);
+            case ADD -> upload("load-" + sequence.incrementAndGet());
+            default -> throw new IllegalArgumentException("Unknown scenario " + scenario);
+        };
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(Duration.ofSeconds(30)).GET().build();
+    }
+
+    /**
+     * 以 multipart 表单上传插件包
+     */
+    private HttpRequest upload(String pluginName) {
+        String boundary = UUID.randomUUID().toString();
+        ByteArrayOutputStream body = new ByteArrayOutputStream(pluginJar.length + 1024);
+        field(body, boundary, "pluginName", pluginName);
+        field(body, boundary, "pluginDesc", "load test upload");
+        field(body, boundary, "pluginVersion", "1.0");
+        body.writeBytes(("--" + boundary + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\"plugin.jar\"\r\n"
+                + "Content-Type: application/java-archive\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.writeBytes(pluginJar);
+        body.writeBytes(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return HttpRequest.newBuilder(URI.create(baseUrl + "/plugin/add"))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                // 以接口方式调用，提交成功时返回 202
+                .header("Accept", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+                .build();
+    }
+
+    private static void field(ByteArrayOutputStream body, String boundary, String name, String value) {
+        body.writeBytes(("--" + boundary + "\r\nContent-Disposition: form-data; name=\"" + name + "\"\r\n\r\n"
+                + value + "\r\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 读取回归预算，--budget 指定文件时从文件读取，否则使用类路径中的默认预算
+     */
+    private Properties budget() throws IOException {
+        Properties budget = new Properties();
+        String file = options.get("budget");
+        try (InputStream in = file != null ? Files.newInputStream(Path.of(file))
+                : LoadTest.class.getClassLoader().getResourceAsStream("load-budget.properties")) {
+            if (in != null) {
+                budget.load(in);
+            }
+        }
+        return budget;
+    }
+
+    /**
+     * 检查各场景是否超出预算
+     *
+     * @param results 压测结果
+     * @param budget  回归预算
+     * @return 超出预算的说明，全部满足时为空
+     */
+    static List<String> check(List<LoadResult> results, Properties budget) {
+        List<String> violations = new ArrayList<>();
+        for (LoadResult result : results) {
+            String minRps = budget.getProperty(result.scenario() + ".minRps");
+            if (minRps != null && result.rps() < Double.parseDouble(minRps)) {
+                violations.add(String.format("%s rps %.1f < %s", result.scenario(), result.rps(), minRps));
+            }
+            String maxP99 = budget.getProperty(result.scenario() + ".maxP99Millis");
+            if (maxP99 != null && result.p99Millis() > Double.parseDouble(maxP99)) {
+                violations.add(String.format("%s p99 %.2fms > %sms", result.scenario(), result.p99Millis(), maxP99));
+            }
+            String maxErrorRate = budget.getProperty(result.scenario() + ".maxErrorRate");
+            if (maxErrorRate != null && result.errorRate() > Double.parseDouble(maxErrorRate)) {
+                violations.add(String.format("%s error rate %.4f > %s", result.scenario(), result.errorRate(), maxErrorRate));
+            }
+        }
+        return violations;
+    }
+
+    /**
+     * 生成只包含清单和一个资源文件的插件包，安装时校验要求插件包带有清单
+     */
+    private static byte[] jar(String name) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        try (JarOutputStream out = new JarOutputStream(bytes, manifest)) {
+            out.putNextEntry(new ZipEntry(name + ".txt"));
+            out.write(name.getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
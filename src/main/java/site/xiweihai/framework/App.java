@@ -1,41 +1,98 @@
 package site.xiweihai.framework;
 
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
 import org.anyline.adapter.init.DefaultEnvironmentWorker;
-import org.anyline.data.datasource.DataSourceHolder;
+import org.anyline.proxy.ServiceProxy;
+import org.anyline.service.AnylineService;
 import org.noear.solon.Solon;
-import org.noear.solon.SolonProps;
 import org.noear.solon.annotation.SolonMain;
+import org.noear.solon.core.event.AppStopEndEvent;
+import site.xiweihai.framework.audit.AuditLog;
+import site.xiweihai.framework.datasource.DataSourceManager;
+import site.xiweihai.framework.metrics.StartupPhases;
+import site.xiweihai.framework.plugin.PluginRuntime;
+import site.xiweihai.framework.service.MenuService;
+import site.xiweihai.framework.service.PluginConfigService;
+import site.xiweihai.framework.service.PluginIndex;
+import site.xiweihai.framework.service.PluginInstaller;
+import site.xiweihai.framework.service.PluginRegistry;
+import site.xiweihai.framework.utils.FileDigestCache;
+import site.xiweihai.framework.utils.FileIndex;
 
+@Slf4j
 @SolonMain
 public class App {
     /**
      * 应用程序的主入口点
      * 初始化并启动Solon应用程序，并在应用程序上下文中注册数据源
-     * 如果配置中包含数据库连接信息，则初始化数据库连接池
+     * 如果配置中包含数据库连接信息，则创建连接池（延迟建立连接），连接池预热、数据库迁移和插件加载在就绪后于后台执行
      *
      * @param args 命令行参数
      */
     public static void main(String[] args) {
+        StartupPhases startup = StartupPhases.global();
         // 启动Solon应用程序
         Solon.start(App.class, args, app -> {
             // 启动数据库框架默认的环境工作器
-            DefaultEnvironmentWorker.start();
-            // 检查配置中是否包含数据库连接URL，以决定是否初始化数据库连接池
-            SolonProps cfg = Solon.cfg();
-            if (cfg.containsKey("db.jdbcUrl")) {
-                // 创建并配置HikariCP连接池
-                HikariConfig hikariConfig = new HikariConfig();
-                hikariConfig.setDriverClassName(cfg.get("db.driverClassName"));
-                hikariConfig.setJdbcUrl(cfg.get("db.jdbcUrl"));
-                hikariConfig.setUsername(cfg.get("db.username"));
-                hikariConfig.setPassword(cfg.get("db.password"));
-                // 使用配置好的连接池创建数据源
-                HikariDataSource dataSource = new HikariDataSource(hikariConfig);
-                // 注册数据源到上下文中，标识为"db"
-                DataSourceHolder.reg("db", dataSource);
+            try (StartupPhases.Step ignored = startup.begin("anyline")) {
+                DefaultEnvironmentWorker.start();
             }
+            // 配置中包含数据库连接URL时创建连接池并注册为"db"数据源
+            try (StartupPhases.Step ignored = startup.begin("datasource")) {
+                DataSourceManager.global().start(Solon.cfg());
+            }
+            // 应用停止时卸载全部插件，再关闭连接池
+            app.onEvent(AppStopEndEvent.class, e -> {
+                FileIndex.global().stop();
+                FileDigestCache.global().close();
+                AuditLog.global().close();
+                PluginRuntime.global().unloadAll();
+                DataSourceManager.global().close();
+            });
         });
+        startup.ready();
+        // 监听插件目录，文件管理页面从内存索引列目录，磁盘上的配置文件变化时更新插件配置快照
+        if (Solon.cfg().getBool("plugin.fileIndex.enabled", true)) {
+            FileIndex.global().addListener(PluginConfigService.global());
+            FileIndex.global().start();
+        }
+        // 审计事件在后台批量写入，表结构迁移完成前写入失败的事件先写溢出文件
+        AuditLog.global().start();
+        // 多节点部署时定时刷新插件注册表，间隔为0时不刷新
+        PluginRegistry.global().startRefresh(Solon.cfg().getLong("plugin.registry.refreshInterval", 0));
+        MenuService.global().startRefresh(Solon.cfg().getLong("menu.refreshInterval", 0));
+        // 依赖数据库的初始化不阻塞启动
+        Thread.ofVirtual().name("startup").start(() -> initDatabase(startup));
+    }
+
+    /**
+     * 就绪后在后台预热连接池、检查表结构，再清理未完成的安装并加载已启用的插件
+     *
+     * @param startup 启动阶段计时
+     */
+    private static void initDatabase(StartupPhases startup) {
+        AnylineService service = ServiceProxy.service(DataSourceManager.DEFAULT_KEY);
+        if (service != null) {
+            try (StartupPhases.Step ignored = startup.begin("pool-warmup")) {
+                DataSourceManager.global().warmUp();
+            }
+            try (StartupPhases.Step ignored = startup.begin("schema")) {
+                // 执行新版本增加的迁移，已是最新版本时只查询一次版本表
+                InitDb.migrate(service);
+            } catch (Exception e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+        // 清理上次运行未完成安装的插件
+        try (StartupPhases.Step ignored = startup.begin("install-recover")) {
+            PluginInstaller.global().recover();
+        }
+        // 为升级前上传的插件包补建索引
+        PluginIndex.global().startBackfill();
+        // 并行加载所有已启用的插件
+        try (StartupPhases.Step ignored = startup.begin("plugins")) {
+            PluginRuntime.global().loadEnabled();
+        }
+        startup.finish();
     }
-}
\ No newline at end of file
+}
@@ -1,25 +1,40 @@
 package site.xiweihai.framework;
 
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
-import org.anyline.data.datasource.DataSourceHolder;
+import lombok.extern.slf4j.Slf4j;
+import org.anyline.metadata.Column;
+import org.anyline.metadata.Index;
 import org.anyline.metadata.Table;
 import org.anyline.proxy.ServiceProxy;
 import org.anyline.service.AnylineService;
+import site.xiweihai.framework.audit.AuditLog;
+import site.xiweihai.framework.datasource.DataSourceManager;
+import site.xiweihai.framework.migration.Migration;
+import site.xiweihai.framework.migration.SchemaMigrator;
 
-import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * 初始化数据库执行类，通过界面传递数据库参数进行数据库的初始化
  * @author hai
  * @since 2024-08-12
  */
+@Slf4j
 public class InitDb {
 
     /**
      * 初始化数据库连接并创建表
-     * 本函数用于配置数据库连接池，并通过连接池创建数据源，进而注册到数据源持有器中，
-     * 以便后续可以通过服务代理获取服务并执行DDL操作创建表
+     * 本函数通过数据源管理器创建连接池并注册为"db"数据源（重复初始化时替换并关闭旧连接池），
+     * 以便后续可以通过服务代理获取服务并执行迁移创建表
      *
      * @param driver 数据库驱动类名
      * @param url 数据库连接URL
@@ -27,36 +42,154 @@ public class InitDb {
      * @param password 数据库密码
      */
     public static void run(String driver, String url, String user, String password) {
-        // 配置连接池
-        HikariConfig hikariConfig = new HikariConfig();
-        hikariConfig.setDriverClassName(driver);
-        hikariConfig.setJdbcUrl(url);
-        hikariConfig.setUsername(user);
-        hikariConfig.setPassword(password);
-
-        // 创建数据源
-        DataSource ds_sso = new HikariDataSource(hikariConfig);
-        // 定义临时数据库标识
-        String tempDb = "db";
-
         try {
-            // 注册数据源到持有器
-            DataSourceHolder.reg(tempDb, ds_sso);
-            // 通过服务代理获取服务
-            AnylineService service = ServiceProxy.service(tempDb);
-
-            // 创建表结构
-            Table menuTable = createMenuTable();
-            service.ddl().create(menuTable);
-
-            Table pluginTable = createPluginTable();
-            service.ddl().create(pluginTable);
+            // 创建连接池并注册数据源
+            DataSourceManager.global().start(driver, url, user, password);
+            // 通过服务代理获取服务，执行未执行的迁移
+            migrate(ServiceProxy.service(DataSourceManager.DEFAULT_KEY));
         } catch (Exception e) {
             // 异常处理：抛出运行时异常
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * 执行未执行的数据库迁移，表结构已是最新版本时只查询一次版本表
+     *
+     * @param service 数据库服务
+     * @return 迁移结果
+     * @throws Exception 迁移失败
+     */
+    public static SchemaMigrator.Result migrate(AnylineService service) throws Exception {
+        return new SchemaMigrator(DataSourceManager.global().dataSource(), service, migrations()).migrate();
+    }
+
+    /**
+     * 全部迁移步骤，新的表结构变化追加到末尾，已发布的步骤不能修改
+     * 前三个步骤是迁移引擎之前由本类一次性创建的表结构，按元数据补齐，已有的表和索引不受影响。
+     * 建表的字段类型、自增主键因数据库而异，由数据库框架按方言生成，这类步骤只能是 managed；
+     * 只包含通用 SQL 的步骤用 {@link Migration#sql}，数据库支持事务性DDL时与版本记录一起在事务中提交
+     *
+     * @return 迁移步骤
+     */
+    static List<Migration> migrations() {
+        return List.of(
+                Migration.managed(1, "menu and plugin tables",
+                        (service, connection) -> ensureTables(service, createMenuTable(), createPluginTable())),
+                Migration.managed(2, "plugin table indexes",
+                        (service, connection) -> ensureIndexes(service, connection, "FRAMEWORK_PLUGIN", createPluginIndexes())),
+                Migration.managed(3, "plugin jar index table", (service, connection) -> {
+                    ensureTables(service, createPluginIndexTable());
+                    ensureIndexes(service, connection, "FRAMEWORK_PLUGIN_INDEX", createPluginIndexTableIndexes());
+                }),
+                // 菜单树按 UPDATE_TIME 增量刷新；索引语句各数据库通用，支持事务性DDL时在事务中执行
+                Migration.sql(4, "menu update time index",
+                        "CREATE INDEX IDX_MENU_UPDATE_TIME ON FRAMEWORK_MENU (UPDATE_TIME, ID)"),
+                Migration.managed(5, "audit log table", (service, connection) -> {
+                    ensureTables(service, createAuditLogTable());
+                    ensureIndexes(service, connection, AuditLog.TABLE, createAuditLogIndexes());
+                })
+        );
+    }
+
+    /**
+     * 确保表存在且包含定义中的全部列
+     * 各表的元数据在虚拟线程上并行读取，需要建表或补列时按顺序依次执行，避免部分数据库（如 SQLite）并发执行DDL时互相等待锁
+     *
+     * @param service 数据库服务
+     * @param tables  表定义
+     * @throws Exception 读取元数据或执行DDL失败
+     */
+    private static void ensureTables(AnylineService service, Table... tables) throws Exception {
+        List<Future<Table>> existing = new ArrayList<>(tables.length);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Table table : tables) {
+                existing.add(executor.submit(() -> service.metadata().table(table.getName())));
+            }
+        }
+        for (int i = 0; i < tables.length; i++) {
+            Table current;
+            try {
+                current = existing.get(i).get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            }
+            ensureTable(service, tables[i], current);
+        }
+    }
+
+    /**
+     * 确保表存在且包含定义中的全部列
+     * 表不存在时直接创建；已存在时（例如从旧版本升级）逐个补齐缺少的列，已有数据不受影响
+     *
+     * @param service  数据库服务
+     * @param table    表定义
+     * @param existing 数据库中已有的表，不存在时为 null
+     * @throws Exception 执行DDL失败
+     */
+    private static void ensureTable(AnylineService service, Table table, Table existing) throws Exception {
+        if (existing == null) {
+            service.ddl().create(table);
+            return;
+        }
+        for (Column column : table.getColumns().values()) {
+            if (existing.getColumn(column.getName()) == null) {
+                service.ddl().add(column);
+            }
+        }
+    }
+
+    /**
+     * 确保索引存在，按 JDBC 元数据判断索引是否已存在，不存在时创建
+     * 创建失败时重新读取元数据：索引已存在（其他节点同时迁移时创建）则忽略，否则抛出异常，该迁移步骤不会记录为已执行
+     *
+     * @param service    数据库服务
+     * @param connection 迁移连接，用于读取索引元数据
+     * @param table      索引所在的表
+     * @param indexes    索引定义
+     * @throws Exception 读取元数据或创建索引失败
+     */
+    private static void ensureIndexes(AnylineService service, Connection connection, String table, List<Index> indexes) throws Exception {
+        for (Index index : indexes) {
+            if (indexExists(connection, table, index.getName())) {
+                continue;
+            }
+            try {
+                service.ddl().add(index);
+            } catch (Exception e) {
+                if (!indexExists(connection, table, index.getName())) {
+                    throw e;
+                }
+                log.info("Index {} created concurrently: {}", index.getName(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 按 JDBC 元数据判断表上是否已有同名索引，表名按数据库保存标识符的大小写转换，索引名不区分大小写
+     *
+     * @param connection 连接
+     * @param table      表名
+     * @param name       索引名
+     * @return 是否已存在
+     * @throws SQLException 读取元数据失败
+     */
+    static boolean indexExists(Connection connection, String table, String name) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        if (metaData.storesLowerCaseIdentifiers()) {
+            table = table.toLowerCase(Locale.ROOT);
+        } else if (metaData.storesUpperCaseIdentifiers()) {
+            table = table.toUpperCase(Locale.ROOT);
+        }
+        try (ResultSet rs = metaData.getIndexInfo(connection.getCatalog(), connection.getSchema(), table, false, true)) {
+            while (rs.next()) {
+                if (name.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
 
     /**
      * 创建插件信息表
@@ -81,6 +214,10 @@ public class InitDb {
         table.addColumn("PLUGIN_STATUS", "INT(11)").nullable(false).setComment("插件状态");
         // 添加列，设置列名为"UPDATE_TIME"，类型为DATETIME，注释为"更新时间"
         table.addColumn("UPDATE_TIME", "DATETIME").setComment("更新时间");
+        // 添加列，设置列名为"DIGEST"，类型为VARCHAR(64)，注释为"插件包MD5"
+        table.addColumn("PLUGIN_DIGEST", "VARCHAR(64)").setComment("插件包MD5");
+        // 添加列，设置列名为"ROW_VERSION"，类型为BIGINT，默认值为0，注释为"行版本号"，用于修改插件信息时的乐观锁
+        table.addColumn("ROW_VERSION", "BIGINT").setDefaultValue(0).setComment("行版本号");
 
         // 设置表的注释为"插件信息存储表"
         table.setComment("插件信息存储表");
@@ -90,6 +227,147 @@ public class InitDb {
         return table; // 返回构建好的表结构对象
     }
 
+    /**
+     * 创建插件信息表的索引
+     * 插件列表的游标分页在注册表的内存有序索引上完成，不查询数据库；
+     * 这里的索引支撑直接访问数据库的查询：注册表按 UPDATE_TIME 增量刷新，
+     * 新增插件时按名称版本查重，启动时按状态查找安装中的插件，按插件包MD5关联插件包索引
+     *
+     * @return 插件信息表的索引列表
+     */
+    private static List<Index> createPluginIndexes() {
+        List<Index> indexes = new ArrayList<>();
+
+        // 更新时间索引，ID 作为第二列保证同一时间内的顺序稳定
+        Index updateTime = new Index("IDX_PLUGIN_UPDATE_TIME");
+        updateTime.setTable("FRAMEWORK_PLUGIN");
+        updateTime.addColumn("UPDATE_TIME");
+        updateTime.addColumn("ID");
+        indexes.add(updateTime);
+
+        // 名称版本索引
+        Index nameVersion = new Index("IDX_PLUGIN_NAME_VERSION");
+        nameVersion.setTable("FRAMEWORK_PLUGIN");
+        nameVersion.addColumn("PLUGIN_NAME");
+        nameVersion.addColumn("PLUGIN_VERSION");
+        indexes.add(nameVersion);
+
+        // 状态索引
+        Index status = new Index("IDX_PLUGIN_STATUS");
+        status.setTable("FRAMEWORK_PLUGIN");
+        status.addColumn("PLUGIN_STATUS");
+        status.addColumn("ID");
+        indexes.add(status);
+
+        // 插件包MD5索引，按内容关联插件包索引表
+        Index digest = new Index("IDX_PLUGIN_DIGEST");
+        digest.setTable("FRAMEWORK_PLUGIN");
+        digest.addColumn("PLUGIN_DIGEST");
+        indexes.add(digest);
+
+        return indexes;
+    }
+
+    /**
+     * 创建插件包索引表
+     * 插件包上传时扫描一次，把清单属性、包名、服务注册、Solon 插件声明和控制器类按插件包MD5保存，
+     * 查找提供某个类或服务的插件、检测包冲突时直接查询该表，不需要再打开插件包
+     *
+     * @return 插件包索引表
+     */
+    private static Table createPluginIndexTable() {
+        Table table = new Table("FRAMEWORK_PLUGIN_INDEX");
+
+        // 添加列，设置列名为"ID"，类型为BIGINT，允许自增，设为主键，注释为"索引编号"
+        table.addColumn("ID", "BIGINT").autoIncrement(true).setPrimary(true).setComment("索引编号");
+        // 添加列，设置列名为"PLUGIN_DIGEST"，类型为VARCHAR(64)，不允许为空，注释为"插件包MD5"
+        table.addColumn("PLUGIN_DIGEST", "VARCHAR(64)").nullable(false).setComment("插件包MD5");
+        // 添加列，设置列名为"ENTRY_TYPE"，类型为VARCHAR(20)，不允许为空，注释为"条目类型"
+        table.addColumn("ENTRY_TYPE", "VARCHAR(20)").nullable(false).setComment("条目类型");
+        // 添加列，设置列名为"ENTRY_KEY"，类型为VARCHAR(255)，不允许为空，注释为"条目键"，如包名、服务接口、类名
+        table.addColumn("ENTRY_KEY", "VARCHAR(255)").nullable(false).setComment("条目键");
+        // 添加列，设置列名为"ENTRY_VALUE"，类型为VARCHAR(500)，注释为"条目值"，如清单属性值、服务实现类
+        table.addColumn("ENTRY_VALUE", "VARCHAR(500)").setComment("条目值");
+
+        table.setComment("插件包索引表");
+        table.setCharset("utf8");
+        return table;
+    }
+
+    /**
+     * 创建插件包索引表的索引：按类型和键查找提供者，按插件包MD5删除和检测冲突
+     *
+     * @return 插件包索引表的索引列表
+     */
+    private static List<Index> createPluginIndexTableIndexes() {
+        List<Index> indexes = new ArrayList<>();
+
+        Index key = new Index("IDX_PLUGIN_INDEX_KEY");
+        key.setTable("FRAMEWORK_PLUGIN_INDEX");
+        key.addColumn("ENTRY_TYPE");
+        key.addColumn("ENTRY_KEY");
+        indexes.add(key);
+
+        Index digest = new Index("IDX_PLUGIN_INDEX_DIGEST");
+        digest.setTable("FRAMEWORK_PLUGIN_INDEX");
+        digest.addColumn("PLUGIN_DIGEST");
+        digest.addColumn("ENTRY_TYPE");
+        indexes.add(digest);
+
+        return indexes;
+    }
+
+    /**
+     * 创建审计日志表
+     * 插件和文件操作由审计日志批量写入，只追加不修改
+     *
+     * @return 审计日志表
+     */
+    private static Table createAuditLogTable() {
+        Table table = new Table(AuditLog.TABLE);
+
+        // 添加列，设置列名为"ID"，类型为BIGINT，允许自增，设为主键，注释为"日志编号"
+        table.addColumn("ID", "BIGINT").autoIncrement(true).setPrimary(true).setComment("日志编号");
+        // 添加列，设置列名为"EVENT_TIME"，类型为BIGINT，不允许为空，注释为"操作时间"，毫秒时间戳
+        table.addColumn("EVENT_TIME", "BIGINT").nullable(false).setComment("操作时间");
+        // 添加列，设置列名为"ACTION"，类型为VARCHAR(20)，不允许为空，注释为"操作"
+        table.addColumn("ACTION", "VARCHAR(20)").nullable(false).setComment("操作");
+        // 添加列，设置列名为"PLUGIN_ID"，类型为BIGINT，注释为"插件编号"
+        table.addColumn("PLUGIN_ID", "BIGINT").setComment("插件编号");
+        // 添加列，设置列名为"TARGET"，类型为VARCHAR(500)，注释为"操作对象"，如插件名称版本或文件路径
+        table.addColumn("TARGET", "VARCHAR(500)").setComment("操作对象");
+        // 添加列，设置列名为"RESULT"，类型为VARCHAR(100)，注释为"操作结果"
+        table.addColumn("RESULT", "VARCHAR(100)").setComment("操作结果");
+        // 添加列，设置列名为"REMOTE_ADDR"，类型为VARCHAR(64)，注释为"客户端地址"
+        table.addColumn("REMOTE_ADDR", "VARCHAR(64)").setComment("客户端地址");
+
+        table.setComment("审计日志表");
+        table.setCharset("utf8");
+        return table;
+    }
+
+    /**
+     * 创建审计日志表的索引：按时间查询，按插件查询操作记录
+     *
+     * @return 审计日志表的索引列表
+     */
+    private static List<Index> createAuditLogIndexes() {
+        List<Index> indexes = new ArrayList<>();
+
+        Index time = new Index("IDX_AUDIT_LOG_TIME");
+        time.setTable(AuditLog.TABLE);
+        time.addColumn("EVENT_TIME");
+        indexes.add(time);
+
+        Index plugin = new Index("IDX_AUDIT_LOG_PLUGIN");
+        plugin.setTable(AuditLog.TABLE);
+        plugin.addColumn("PLUGIN_ID");
+        plugin.addColumn("EVENT_TIME");
+        indexes.add(plugin);
+
+        return indexes;
+    }
+
     /**
      * 创建菜单信息表
      * 该方法定义了数据库中用于存储菜单信息的表的结构
@@ -0,0 +1,17 @@
+package site.xiweihai.framework.audit;
+
+/**
+ * 审计事件，记录一次插件或文件操作及其结果
+ *
+ * @param time     操作时间（毫秒时间戳），审计记录按该时间排序，积压的事件补写后仍在原来的位置
+ * @param action   操作，如 add、update、delete、enable、disable、upload、save
+ * @param pluginId 插件编号，新增插件时尚未分配编号为 0
+ * @param target   操作对象，如插件名称版本或文件路径
+ * @param result   结果消息的国际化键
+ * @param remote   客户端地址
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+public record AuditEvent(long time, String action, long pluginId, String target, String result, String remote) {
+}
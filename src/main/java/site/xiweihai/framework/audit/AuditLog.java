@@ -0,0 +1,514 @@
+package site.xiweihai.framework.audit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.noear.solon.Solon;
+import site.xiweihai.framework.datasource.DataSourceManager;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * 审计日志
+ * 操作线程只把事件放入无锁队列，不等待数据库；后台写入线程攒够一批或到达刷新间隔后在一个事务中批量插入（组提交）。
+ * 数据库不可用、或队列积压超过水位说明数据库跟不上时，整批追加到本地溢出文件（每行一个 JSON），
+ * 数据库恢复且队列清空后再把溢出文件补写到数据库。队列已满时按配置丢弃、等待或直接写溢出文件。
+ * 补写是至少一次：提交后、记录进度前进程退出时，已补写的事件会再写一次
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+@Slf4j
+public class AuditLog {
+
+    /**
+     * 审计日志表名
+     */
+    public static final String TABLE = "FRAMEWORK_AUDIT_LOG";
+
+    private static final String INSERT_SQL = "INSERT INTO " + TABLE
+            + " (EVENT_TIME, ACTION, PLUGIN_ID, TARGET, RESULT, REMOTE_ADDR) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final int MAX_ACTION_LENGTH = 20;
+
+    private static final int MAX_TARGET_LENGTH = 500;
+
+    private static final int MAX_RESULT_LENGTH = 100;
+
+    private static final int MAX_REMOTE_LENGTH = 64;
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    /**
+     * 队列已满时的处理方式
+     */
+    public enum Overflow {
+        /**
+         * 丢弃新的事件，只计数
+         */
+        DROP,
+        /**
+         * 操作线程等待队列腾出空间，超时后丢弃
+         */
+        BLOCK,
+        /**
+         * 操作线程直接把事件追加到溢出文件，磁盘可写时不丢失
+         */
+        SPILL
+    }
+
+    /**
+     * 审计日志配置
+     *
+     * @param capacity       队列容量
+     * @param batchSize      每批插入的事件数
+     * @param flushMillis    未攒够一批时的刷新间隔（毫秒）
+     * @param spillWatermark 队列积压超过该数量时写溢出文件，不再等待数据库
+     * @param retryMillis    数据库写入失败后重试的间隔（毫秒），期间写溢出文件
+     * @param overflow       队列已满时的处理方式
+     * @param blockMillis    {@link Overflow#BLOCK} 时的最长等待时间（毫秒）
+     * @param spillFile      溢出文件
+     */
+    public record Options(int capacity, int batchSize, long flushMillis, int spillWatermark, long retryMillis,
+                          Overflow overflow, long blockMillis, Path spillFile) {
+    }
+
+    private static volatile AuditLog global;
+
+    private final Supplier<DataSource> dataSource;
+    private final Options options;
+    private final Queue<AuditEvent> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final Object spillLock = new Object();
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder spilled = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private volatile long retryAt;
+    private volatile boolean running;
+    private volatile Thread writer;
+
+    /**
+     * 创建审计日志
+     *
+     * @param dataSource 写入的数据源，未启动时返回 null
+     * @param options    配置
+     */
+    public AuditLog(Supplier<DataSource> dataSource, Options options) {
+        this.dataSource = dataSource;
+        this.options = options;
+    }
+
+    /**
+     * 获取全局的审计日志，写入"db"数据源，由 audit.* 配置
+     *
+     * @return 审计日志
+     */
+    public static AuditLog global() {
+        if (global == null) {
+            synchronized (AuditLog.class) {
+                if (global == null) {
+                    global = new AuditLog(() -> DataSourceManager.global().dataSource(), options());
+                }
+            }
+        }
+        return global;
+    }
+
+    private static Options options() {
+        boolean started = Solon.app() != null;
+        int capacity = started ? Solon.cfg().getInt("audit.capacity", 10_000) : 10_000;
+        return new Options(
+                Math.max(1, capacity),
+                Math.max(1, started ? Solon.cfg().getInt("audit.batchSize", 200) : 200),
+                Math.max(10, started ? Solon.cfg().getLong("audit.flushInterval", 200) : 200),
+                started ? Solon.cfg().getInt("audit.spillWatermark", capacity / 2) : capacity / 2,
+                started ? Solon.cfg().getLong("audit.retryInterval", 5_000) : 5_000,
+                Overflow.valueOf((started ? Solon.cfg().get("audit.overflow", "spill") : "spill").toUpperCase(Locale.ROOT)),
+                started ? Solon.cfg().getLong("audit.blockMillis", 100) : 100,
+                Path.of(started ? Solon.cfg().get("audit.spillFile", "audit/spill.jsonl") : "audit/spill.jsonl"));
+    }
+
+    /**
+     * 启动后台写入线程，启动前记录的事件保留在队列中
+     */
+    public synchronized void start() {
+        if (writer != null) {
+            return;
+        }
+        running = true;
+        writer = Thread.ofPlatform().daemon().name("audit-writer").start(this::run);
+    }
+
+    /**
+     * 记录审计事件，只入队，不等待写入
+     *
+     * @param event 审计事件
+     */
+    public void append(AuditEvent event) {
+        appended.increment();
+        if (reserve()) {
+            enqueue(event);
+            return;
+        }
+        switch (options.overflow()) {
+            case BLOCK -> {
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(options.blockMillis());
+                while (System.nanoTime() < deadline) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                    if (reserve()) {
+                        enqueue(event);
+                        return;
+                    }
+                }
+                dropped.increment();
+            }
+            case SPILL -> {
+                try {
+                    spill(List.of(event));
+                } catch (IOException e) {
+                    dropped.increment();
+                    log.error("Audit event dropped, spill failed: {}", e.getMessage());
+                }
+            }
+            default -> dropped.increment();
+        }
+    }
+
+    /**
+     * 写出队列中的全部事件，数据库可用且没有积压时再补写溢出文件
+     */
+    public synchronized void flush() {
+        List<AuditEvent> batch = new ArrayList<>(options.batchSize());
+        while (true) {
+            batch.clear();
+            AuditEvent event;
+            while (batch.size() < options.batchSize() && (event = queue.poll()) != null) {
+                depth.decrementAndGet();
+                batch.add(event);
+            }
+            if (batch.isEmpty()) {
+                break;
+            }
+            write(batch);
+        }
+        replay();
+    }
+
+    /**
+     * 停止写入线程，写出队列中剩余的事件
+     */
+    public void close() {
+        Thread current;
+        synchronized (this) {
+            current = writer;
+            writer = null;
+            running = false;
+        }
+        if (current != null) {
+            LockSupport.unpark(current);
+            try {
+                current.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 队列中等待写入的事件数
+     *
+     * @return 事件数
+     */
+    public int depth() {
+        return Math.max(0, depth.get());
+    }
+
+    /**
+     * 记录的事件数，包括丢弃的
+     *
+     * @return 事件数
+     */
+    public long appended() {
+        return appended.sum();
+    }
+
+    /**
+     * 直接写入数据库的事件数，不含补写的
+     *
+     * @return 事件数
+     */
+    public long written() {
+        return written.sum();
+    }
+
+    /**
+     * 提交的批次数
+     *
+     * @return 批次数
+     */
+    public long batches() {
+        return batches.sum();
+    }
+
+    /**
+     * 写入溢出文件的事件数
+     *
+     * @return 事件数
+     */
+    public long spilled() {
+        return spilled.sum();
+    }
+
+    /**
+     * 从溢出文件补写到数据库的事件数
+     *
+     * @return 事件数
+     */
+    public long replayed() {
+        return replayed.sum();
+    }
+
+    /**
+     * 丢弃的事件数
+     *
+     * @return 事件数
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    private void run() {
+        long flushNanos = TimeUnit.MILLISECONDS.toNanos(options.flushMillis());
+        while (running) {
+            // 攒够一批时由 append 唤醒，否则按刷新间隔写出
+            if (depth.get() < options.batchSize()) {
+                LockSupport.parkNanos(this, flushNanos);
+            }
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                log.error("Audit flush failed: {}", e.getMessage(), e);
+            }
+        }
+        flush();
+    }
+
+    private boolean reserve() {
+        while (true) {
+            int current = depth.get();
+            if (current >= options.capacity()) {
+                return false;
+            }
+            if (depth.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void enqueue(AuditEvent event) {
+        queue.offer(event);
+        Thread current = writer;
+        if (current != null && depth.get() >= options.batchSize()) {
+            LockSupport.unpark(current);
+        }
+    }
+
+    /**
+     * 写出一批事件：数据库可用且没有积压时插入数据库，否则追加到溢出文件
+     */
+    private void write(List<AuditEvent> batch) {
+        if (System.currentTimeMillis() >= retryAt && depth.get() <= options.spillWatermark()) {
+            try {
+                insert(batch);
+                written.add(batch.size());
+                return;
+            } catch (SQLException | RuntimeException e) {
+                retryAt = System.currentTimeMillis() + options.retryMillis();
+                log.warn("Audit insert failed, spilling to {}: {}", options.spillFile(), e.getMessage());
+            }
+        }
+        try {
+            spill(batch);
+        } catch (IOException e) {
+            dropped.add(batch.size());
+            log.error("{} audit events dropped, spill failed: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    private void insert(List<AuditEvent> batch) throws SQLException {
+        DataSource current = dataSource.get();
+        if (current == null) {
+            throw new SQLException("Datasource is not started");
+        }
+        try (Connection connection = current.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (PreparedStatement insert = connection.prepareStatement(INSERT_SQL)) {
+                for (AuditEvent event : batch) {
+                    insert.setLong(1, event.time());
+                    insert.setString(2, truncate(event.action(), MAX_ACTION_LENGTH));
+                    insert.setLong(3, event.pluginId());
+                    insert.setString(4, truncate(event.target(), MAX_TARGET_LENGTH));
+                    insert.setString(5, truncate(event.result(), MAX_RESULT_LENGTH));
+                    insert.setString(6, truncate(event.remote(), MAX_REMOTE_LENGTH));
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+                connection.commit();
+                batches.increment();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    private void spill(List<AuditEvent> events) throws IOException {
+        synchronized (spillLock) {
+            Path file = options.spillFile();
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (AuditEvent event : events) {
+                    out.write(JSON.writeValueAsString(event));
+                    out.newLine();
+                }
+            }
+            spilled.add(events.size());
+        }
+    }
+
+    /**
+     * 把溢出文件补写到数据库
+     * 溢出文件先改名为补写文件，之后溢出的事件写入新的溢出文件；补写失败或队列重新积压时，
+     * 补写文件只保留未提交的部分，下次继续
+     */
+    private void replay() {
+        Path replaying = options.spillFile().resolveSibling(options.spillFile().getFileName() + ".replay");
+        if (System.currentTimeMillis() < retryAt || depth.get() > 0) {
+            return;
+        }
+        try {
+            if (!Files.exists(replaying)) {
+                synchronized (spillLock) {
+                    if (!Files.exists(options.spillFile())) {
+                        return;
+                    }
+                    Files.move(options.spillFile(), replaying, StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Audit spill file not replayed: {}", e.getMessage());
+            return;
+        }
+
+        long committed = 0;
+        long lines = 0;
+        boolean complete = false;
+        List<AuditEvent> batch = new ArrayList<>(options.batchSize());
+        try (BufferedReader in = Files.newBufferedReader(replaying, StandardCharsets.UTF_8)) {
+            String line;
+            // 队列重新积压时让新的事件优先写入
+            while (depth.get() < options.batchSize() && (line = in.readLine()) != null) {
+                lines++;
+                if (!line.isBlank()) {
+                    try {
+                        batch.add(JSON.readValue(line, AuditEvent.class));
+                    } catch (IOException e) {
+                        // 进程在写溢出文件时退出会留下不完整的最后一行
+                        log.warn("Skipping malformed audit spill line {}: {}", lines, e.getMessage());
+                    }
+                }
+                if (batch.size() >= options.batchSize()) {
+                    insert(batch);
+                    replayed.add(batch.size());
+                    batch.clear();
+                    committed = lines;
+                }
+            }
+            if (depth.get() < options.batchSize()) {
+                if (!batch.isEmpty()) {
+                    insert(batch);
+                    replayed.add(batch.size());
+                }
+                complete = true;
+            }
+        } catch (SQLException | IOException | RuntimeException e) {
+            retryAt = System.currentTimeMillis() + options.retryMillis();
+            log.warn("Audit replay stopped after {} lines: {}", committed, e.getMessage());
+        }
+        if (!complete) {
+            keepRemaining(replaying, committed);
+            return;
+        }
+        try {
+            Files.delete(replaying);
+            log.info("Audit spill file replayed: {} lines", lines);
+        } catch (IOException e) {
+            log.warn("Audit replay file not deleted: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 从补写文件中去掉已提交的行
+     */
+    private static void keepRemaining(Path replaying, long committed) {
+        if (committed == 0) {
+            return;
+        }
+        Path temp = replaying.resolveSibling(replaying.getFileName() + ".tmp");
+        try (BufferedReader in = Files.newBufferedReader(replaying, StandardCharsets.UTF_8);
+             BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            String line;
+            long skipped = 0;
+            while ((line = in.readLine()) != null) {
+                if (skipped < committed) {
+                    skipped++;
+                    continue;
+                }
+                out.write(line);
+                out.newLine();
+            }
+        } catch (IOException e) {
+            log.warn("Audit replay progress not saved: {}", e.getMessage());
+            return;
+        }
+        try {
+            Files.move(temp, replaying, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Audit replay progress not saved: {}", e.getMessage());
+        }
+    }
+
+    private static String truncate(String value, int max) {
+        return value == null || value.length() <= max ? value : value.substring(0, max);
+    }
+}
@@ -0,0 +1,247 @@
+package site.xiweihai.framework.cache;
+
+import org.noear.solon.Solon;
+import org.noear.solon.core.handle.Context;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 页面渲染结果缓存
+ * 以路由（路径和查询参数）、语言和数据版本号为键缓存渲染好的页面，数据变化时版本号随之变化，旧的缓存自然失效。
+ * 缓存总大小和存活时间有上限，超出大小时按最近最少使用淘汰。
+ * 响应带有基于内容摘要的 ETag，客户端携带 If-None-Match 且内容未变化时返回 304
+ * <p>
+ * 控制器先调用 {@link #sendCached} 尝试直接返回缓存，未命中时调用 {@link #cacheResult} 标记当前请求，
+ * 由 {@link PageCacheInterceptor} 渲染视图后写入缓存
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+public class PageCache {
+
+    /**
+     * 请求上下文中保存缓存键的属性名
+     */
+    static final String KEY_ATTR = "pageCache.key";
+
+    private static volatile PageCache global;
+
+    private final long maxBytes;
+    private final long ttlMillis;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder notModified = new LongAdder();
+
+    /**
+     * 缓存的页面
+     *
+     * @param body      UTF-8 编码的页面内容
+     * @param etag      内容摘要生成的 ETag
+     * @param expiresAt 过期时间
+     */
+    record Entry(byte[] body, String etag, long expiresAt) {
+    }
+
+    /**
+     * 创建页面缓存
+     *
+     * @param maxBytes  缓存总大小上限（字节），小于等于0时不缓存
+     * @param ttlMillis 缓存存活时间（毫秒），小于等于0时不缓存
+     */
+    public PageCache(long maxBytes, long ttlMillis) {
+        this.maxBytes = maxBytes;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * 获取全局的页面缓存，大小和存活时间由 page.cache.maxBytes、page.cache.ttl 配置
+     *
+     * @return 页面缓存
+     */
+    public static PageCache global() {
+        if (global == null) {
+            synchronized (PageCache.class) {
+                if (global == null) {
+                    boolean started = Solon.app() != null;
+                    global = new PageCache(started ? Solon.cfg().getLong("page.cache.maxBytes", 16L * 1024 * 1024) : 0,
+                            started ? Solon.cfg().getLong("page.cache.ttl", 60_000) : 0);
+                }
+            }
+        }
+        return global;
+    }
+
+    /**
+     * 生成缓存键
+     *
+     * @param ctx     请求上下文
+     * @param locale  语言
+     * @param version 页面数据的版本号
+     * @return 缓存键
+     */
+    public static String key(Context ctx, Locale locale, String version) {
+        String query = ctx.queryString();
+        return ctx.path() + (query != null && !query.isEmpty() ? "?" + query : "") + '|' + locale + '|' + version;
+    }
+
+    /**
+     * 缓存命中时直接输出页面（或 304），只缓存 GET 请求
+     *
+     * @param ctx 请求上下文
+     * @param key 缓存键
+     * @return 已输出响应时返回 true，控制器不需要再处理请求
+     */
+    public boolean sendCached(Context ctx, String key) {
+        if (!enabled() || !"GET".equalsIgnoreCase(ctx.method())) {
+            return false;
+        }
+        Entry entry = get(key);
+        if (entry == null) {
+            misses.increment();
+            return false;
+        }
+        hits.increment();
+        send(ctx, entry);
+        return true;
+    }
+
+    /**
+     * 标记当前请求的视图在渲染后写入缓存
+     *
+     * @param ctx 请求上下文
+     * @param key 缓存键
+     */
+    public void cacheResult(Context ctx, String key) {
+        if (enabled() && "GET".equalsIgnoreCase(ctx.method())) {
+            ctx.attrSet(KEY_ATTR, key);
+        }
+    }
+
+    /**
+     * 写入渲染好的页面，单个页面超过总大小的四分之一时不缓存，避免挤掉其他页面
+     *
+     * @param key  缓存键
+     * @param html 页面内容
+     * @return 缓存的页面
+     */
+    Entry put(String key, String html) {
+        byte[] body = html.getBytes(StandardCharsets.UTF_8);
+        Entry entry = new Entry(body, "\"" + md5(body) + "\"", System.currentTimeMillis() + ttlMillis);
+        if (body.length <= maxBytes / 4) {
+            synchronized (this) {
+                Entry previous = entries.put(key, entry);
+                bytes += body.length - (previous != null ? previous.body().length : 0);
+                evict();
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * 输出页面，客户端缓存的内容与当前一致时返回 304
+     *
+     * @param ctx   请求上下文
+     * @param entry 页面
+     */
+    void send(Context ctx, Entry entry) {
+        ctx.headerSet("ETag", entry.etag());
+        // 客户端每次都需要携带 ETag 重新验证
+        ctx.headerSet("Cache-Control", "no-cache");
+        String ifNoneMatch = ctx.header("If-None-Match");
+        if (ifNoneMatch != null && ifNoneMatch.contains(entry.etag())) {
+            notModified.increment();
+            ctx.status(304);
+            return;
+        }
+        ctx.contentType("text/html; charset=utf-8");
+        ctx.output(entry.body());
+    }
+
+    /**
+     * 清空缓存
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * 命中次数
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * 未命中次数
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * 返回 304 的次数
+     */
+    public long notModified() {
+        return notModified.sum();
+    }
+
+    /**
+     * 当前缓存的总字节数
+     */
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    private boolean enabled() {
+        return maxBytes > 0 && ttlMillis > 0;
+    }
+
+    private synchronized Entry get(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expiresAt() < System.currentTimeMillis()) {
+            entries.remove(key);
+            bytes -= entry.body().length;
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * 先淘汰过期的页面，仍超出大小上限时按最近最少使用淘汰
+     */
+    private void evict() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next().getValue();
+            if (entry.expiresAt() < now) {
+                bytes -= entry.body().length;
+                iterator.remove();
+            }
+        }
+        iterator = entries.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            bytes -= iterator.next().getValue().body().length;
+            iterator.remove();
+        }
+    }
+
+    private static String md5(byte[] body) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(body));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
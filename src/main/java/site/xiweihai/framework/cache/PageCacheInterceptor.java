@@ -0,0 +1,38 @@
+package site.xiweihai.framework.cache;
+
+import org.noear.solon.annotation.Component;
+import org.noear.solon.core.handle.Context;
+import org.noear.solon.core.handle.Handler;
+import org.noear.solon.core.handle.ModelAndView;
+import org.noear.solon.core.route.RouterInterceptor;
+import org.noear.solon.core.route.RouterInterceptorChain;
+
+/**
+ * 页面缓存拦截器
+ * 控制器标记了缓存键的请求，在控制器返回视图后（此时 @I18n 等已经补充好模型）由这里渲染、写入缓存并输出。
+ * 排在指标拦截器之后，渲染耗时仍计入模板渲染阶段
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+@Component(index = 100)
+public class PageCacheInterceptor implements RouterInterceptor {
+
+    @Override
+    public void doIntercept(Context ctx, Handler mainHandler, RouterInterceptorChain chain) throws Throwable {
+        chain.doIntercept(ctx, mainHandler);
+    }
+
+    @Override
+    public Object postResult(Context ctx, Object result) throws Throwable {
+        Object key = ctx.attr(PageCache.KEY_ATTR);
+        if (key == null || !(result instanceof ModelAndView modelAndView)) {
+            return result;
+        }
+        PageCache cache = PageCache.global();
+        String html = ctx.renderAndReturn(modelAndView);
+        cache.send(ctx, cache.put(key.toString(), html));
+        // 响应已经输出，不再渲染
+        return null;
+    }
+}
@@ -0,0 +1,29 @@
+package site.xiweihai.framework.controller;
+
+import org.anyline.proxy.ServiceProxy;
+import org.noear.solon.annotation.Controller;
+import org.noear.solon.annotation.Mapping;
+import org.noear.solon.core.handle.Context;
+import site.xiweihai.framework.service.MenuService;
+
+/**
+ * 菜单控制器
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+@Controller
+public class MenuController {
+
+    /**
+     * 输出启用的菜单树，直接返回菜单服务中预先序列化的 JSON
+     *
+     * @param ctx 上下文对象，用于输出菜单树
+     */
+    @Mapping("/menu")
+    public void menu(Context ctx) {
+        ctx.contentType("application/json; charset=utf-8");
+        // 数据库未初始化时返回空菜单
+        ctx.output(ServiceProxy.service("db") != null ? MenuService.global().treeJson() : "[]");
+    }
+}
@@ -0,0 +1,27 @@
+package site.xiweihai.framework.controller;
+
+import org.noear.solon.annotation.Controller;
+import org.noear.solon.annotation.Mapping;
+import org.noear.solon.core.handle.Context;
+import site.xiweihai.framework.metrics.Metrics;
+
+/**
+ * 指标控制器
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+@Controller
+public class MetricsController {
+
+    /**
+     * 以 Prometheus 文本格式输出应用指标
+     *
+     * @param ctx 上下文对象，用于输出指标
+     */
+    @Mapping("/metrics")
+    public void metrics(Context ctx) {
+        ctx.contentType("text/plain; version=0.0.4; charset=utf-8");
+        ctx.output(Metrics.global().scrape());
+    }
+}
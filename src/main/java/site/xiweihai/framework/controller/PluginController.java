@@ -1,11 +1,9 @@
 package site.xiweihai.framework.controller;
 
 import ch.qos.logback.core.util.FileUtil;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.anyline.entity.DataRow;
-import org.anyline.entity.DataSet;
-import org.anyline.proxy.ServiceProxy;
-import org.anyline.service.AnylineService;
 import org.noear.snack.core.utils.StringUtil;
 import org.noear.solon.annotation.Controller;
 import org.noear.solon.annotation.Mapping;
@@ -15,15 +13,35 @@ import org.noear.solon.core.handle.ModelAndView;
 import org.noear.solon.core.handle.UploadedFile;
 import org.noear.solon.i18n.annotation.I18n;
 import org.noear.solon.validation.annotation.NotEmpty;
+import site.xiweihai.framework.audit.AuditEvent;
+import site.xiweihai.framework.audit.AuditLog;
+import site.xiweihai.framework.cache.PageCache;
+import site.xiweihai.framework.metrics.Metrics;
+import site.xiweihai.framework.plugin.PluginRuntime;
+import site.xiweihai.framework.service.BulkItem;
+import site.xiweihai.framework.service.PluginBulkService;
+import site.xiweihai.framework.service.PluginConfigService;
+import site.xiweihai.framework.service.PluginIndex;
+import site.xiweihai.framework.service.PluginInstaller;
+import site.xiweihai.framework.service.PluginPage;
+import site.xiweihai.framework.service.PluginRegistry;
+import site.xiweihai.framework.service.PluginStore;
+import site.xiweihai.framework.utils.DirectoryLister;
+import site.xiweihai.framework.utils.FileDigestCache;
+import site.xiweihai.framework.utils.FileIndex;
+import site.xiweihai.framework.utils.FileDownloader;
+import site.xiweihai.framework.utils.TextFileWindow;
 import site.xiweihai.framework.utils.ToolUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.sql.SQLException;
 import java.text.DecimalFormat;
-import java.time.LocalDateTime;
 import java.util.*;
+import java.util.zip.ZipException;
 
 /**
  * 插件管理控制器
@@ -37,34 +55,68 @@ import java.util.*;
 @Slf4j
 public class PluginController {
 
-    private final String pluginPath = "plugins";
+    private final String pluginPath = PluginStore.root().toString();
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    /**
+     * 文件列表每页最大条数
+     */
+    private static final int MAX_FILE_PAGE_SIZE = 1000;
+
+    /**
+     * 文件编辑窗口最大行数
+     */
+    private static final int MAX_EDIT_LINES = 5000;
 
     /**
      * 映射到默认路径的处理器方法
      *
      * @param errorMsg 错误消息
+     * @param name     插件名称关键字，用于过滤
+     * @param status   插件状态，用于过滤
+     * @param sort     排序方式，id 或 time
+     * @param cursor   分页游标，为空时显示第一页
+     * @param size     每页条数
      * @param locale   本地化信息
-     * @return modelAndView
+     * @param ctx      上下文对象，用于页面缓存
+     * @return modelAndView，命中页面缓存时返回 null
      */
     @Mapping("")
-    public ModelAndView index(String errorMsg, Locale locale) {
+    public ModelAndView index(String errorMsg,
+                              String name,
+                              Integer status,
+                              @Param(defaultValue = PluginRegistry.SORT_ID) String sort,
+                              String cursor,
+                              @Param(defaultValue = "20") int size,
+                              Locale locale,
+                              Context ctx) {
+        // 页面只依赖插件注册表，注册表版本号未变化时直接返回缓存的页面
+        String cacheKey = PageCache.key(ctx, locale, String.valueOf(PluginRegistry.global().version()));
+        if (PageCache.global().sendCached(ctx, cacheKey)) {
+            return null;
+        }
         // 创建ModelAndView对象，指定视图名称为"plugin.ftl"
         ModelAndView modelAndView = new ModelAndView("plugin.ftl");
 
         // 将当前语言信息添加到modelAndView，以便在视图中使用
         modelAndView.put("lang", locale.getLanguage());
 
-        // 通过ServiceProxy获取到AnylineService服务实例
-        AnylineService service = ServiceProxy.service("db");
-
-        // 通过服务实例查询并获取框架插件数据
-        DataSet frameworkPlugin = service.querys("FRAMEWORK_PLUGIN");
+        // 从插件注册表中按游标分页获取框架插件数据
+        PluginPage page = PluginRegistry.global().page(name, status, sort, cursor, size);
 
         // 将查询到的框架插件数据添加到modelAndView，以便在视图中展示
-        modelAndView.put("data", frameworkPlugin);
+        modelAndView.put("data", page.rows());
+        // 将分页和过滤条件添加到modelAndView，用于生成翻页链接
+        modelAndView.put("name", name != null ? name : "");
+        modelAndView.put("status", status != null ? String.valueOf(status) : "");
+        modelAndView.put("sort", PluginRegistry.SORT_TIME.equals(sort) ? PluginRegistry.SORT_TIME : PluginRegistry.SORT_ID);
+        modelAndView.put("size", page.size());
+        modelAndView.put("nextCursor", page.hasNext() ? page.nextCursor() : "");
 
         // 将错误消息添加到modelAndView，如果errorMsg为空，则使用"defaultErrorMsg"作为默认值
         modelAndView.put("errorMsg", errorMsg != null ? errorMsg : "empty");
+        PageCache.global().cacheResult(ctx, cacheKey);
 
         // 返回modelAndView对象
         return modelAndView;
@@ -77,6 +129,7 @@ public class PluginController {
      * @param pluginName    插件名称
      * @param pluginDesc    插件描述
      * @param pluginVersion 插件版本
+     * @param digest        插件包MD5，内容已存在时可以不上传文件
      * @param ctx           上下文对象，用于获取上传文件等
      * @return modelAndView
      * @throws IOException
@@ -87,39 +140,78 @@ public class PluginController {
             String pluginName,      // 插件名称
             String pluginDesc,      // 插件描述
             String pluginVersion,   // 插件版本
+            String digest,          // 插件包MD5
             Context ctx             // 上下文对象，用于获取上传文件等
     ) throws IOException {
         String errorMsg = "plugin.add_init_msg"; // 默认错误信息
         UploadedFile file = ctx.file("file");    // 从上下文中获取上传的文件
+        // 同名同版本的插件已存在时拒绝，保存路径相同，继续会替换已有插件的插件包
+        if (!StringUtil.isEmpty(pluginName) && !StringUtil.isEmpty(pluginVersion) && isRegistered(pluginName, pluginVersion)) {
+            if (file != null) {
+                file.delete();
+            }
+            audit(ctx, "add", 0, pluginName + " " + pluginVersion, "plugin.exists");
+            return addView(locale, "plugin.exists", pluginName, pluginDesc, pluginVersion);
+        }
+        // 未上传文件但提供了已存储内容的MD5时，只登记元数据
+        if (file == null && PluginStore.exists(digest) && !StringUtil.isEmpty(pluginName) && !StringUtil.isEmpty(pluginDesc) && !StringUtil.isEmpty(pluginVersion)) {
+            // 沿用已有插件的文件名
+            DataRow sameContent = PluginRegistry.global().findByDigest(digest);
+            String fileName = sameContent != null ? new File(sameContent.getString("PLUGIN_PATH")).getName() : digest + ".jar";
+            String savePath = pluginPath + File.separator + pluginName + File.separator + pluginVersion + File.separator + fileName;
+            if (PluginStore.storeExisting(digest, Path.of(savePath))) {
+                registerPlugin(pluginName, pluginDesc, pluginVersion, savePath, digest);
+                audit(ctx, "add", 0, pluginName + " " + pluginVersion, "plugin.install_success");
+                try {
+                    // 升级前上传的内容可能还没有索引
+                    PluginIndex.global().ensureIndexed(digest, PluginStore.blobPath(digest));
+                } catch (Exception e) {
+                    log.warn("Plugin jar {} not indexed: {}", digest, e.getMessage());
+                }
+                // 重定向到插件列表页面
+                ctx.redirect("/plugin");
+            }
+        }
         // 检查文件和必要信息是否已提供
         if (file != null && !StringUtil.isEmpty(pluginName) && !StringUtil.isEmpty(pluginDesc) && !StringUtil.isEmpty(pluginVersion)) {
             try {
                 // 构造文件保存路径
                 String savePath = pluginPath + File.separator + pluginName + File.separator + pluginVersion + File.separator + file.getName();
-                // 确保所需目录存在
-                FileUtil.createMissingParentDirectories(new File(savePath));
                 // 只有是.jar文件才进行保存
                 if (file.getName().endsWith(".jar")) {
-                    // 把上传的文件保存到指定路径
-                    file.transferTo(new File(savePath));
-                    // 初始化数据库服务
-                    AnylineService service = ServiceProxy.service("db");
-                    // 创建数据行，用于存储插件信息
-                    DataRow dataRow = new DataRow();
-                    dataRow.put("PLUGIN_NAME", pluginName);
-                    dataRow.put("PLUGIN_DESC", pluginDesc);
-                    dataRow.put("PLUGIN_PATH", savePath);
-                    dataRow.put("PLUGIN_VERSION", pluginVersion);
-                    dataRow.put("PLUGIN_STATUS", 0);
-                    dataRow.put("UPDATE_TIME", LocalDateTime.now());
-                    // 将插件信息插入数据库
-                    service.insert("FRAMEWORK_PLUGIN", dataRow);
-                    // 重定向到插件列表页面
-                    ctx.redirect("/plugin");
+                    // 接收并校验上传文件，以安装中状态登记插件，收录和登记在后台完成
+                    PluginInstaller.InstallStatus job = PluginInstaller.global().submit(pluginName, pluginDesc, pluginVersion, savePath, file);
+                    audit(ctx, "add", job != null ? job.pluginId() : 0, pluginName + " " + pluginVersion,
+                            job == null ? "plugin.install_busy" : job.done() ? job.message() : "plugin.install_submitted");
+                    if (job == null) {
+                        return addView(locale, "plugin.install_busy", pluginName, pluginDesc, pluginVersion);
+                    }
+                    if (job.done()) {
+                        return addView(locale, job.message(), pluginName, pluginDesc, pluginVersion);
+                    }
+                    ctx.headerSet("X-Install-Job", job.jobId());
+                    String accept = ctx.header("Accept");
+                    if (accept != null && accept.contains("application/json")) {
+                        // 接口调用直接返回任务编号，通过 /plugin/install/{jobId} 查询进度
+                        ctx.status(202);
+                        ctx.contentType("application/json; charset=utf-8");
+                        ctx.output(JSON.writeValueAsBytes(job));
+                        return null;
+                    }
+                    // 重定向到插件列表页面，插件显示为安装中
+                    ctx.redirect("/plugin?errorMsg=plugin.install_submitted");
                 } else {
                     // 如果上传的不是.jar文件，设置错误信息
                     errorMsg = "plugin.not_jar";
                 }
+            } catch (ZipException e) {
+                // 上传的不是合法的 jar 文件，接收时已校验
+                log.warn("Invalid plugin jar {}: {}", file.getName(), e.getMessage());
+                errorMsg = "plugin.invalid_jar";
+            } catch (SQLException e) {
+                // 登记插件失败
+                log.error(e.getMessage(), e);
+                errorMsg = "plugin.add_fail";
             } finally {
                 // 清理可能的临时文件
                 if (file != null) {
@@ -129,6 +221,122 @@ public class PluginController {
         }
 
         // 准备模型视图数据，无论成功还是失败
+        return addView(locale, errorMsg, pluginName, pluginDesc, pluginVersion);
+    }
+
+    /**
+     * 查询插件安装任务的进度
+     *
+     * @param jobId 任务编号
+     * @param ctx   上下文对象，用于输出任务状态
+     * @throws IOException 输出结果失败
+     */
+    @Mapping(path = "/install/{jobId}")
+    public void installStatus(String jobId, Context ctx) throws IOException {
+        PluginInstaller.InstallStatus status = PluginInstaller.global().status(jobId);
+        ctx.contentType("application/json; charset=utf-8");
+        if (status == null) {
+            ctx.status(404);
+            ctx.output("{\"message\":\"plugin.install_not_found\"}");
+            return;
+        }
+        ctx.output(JSON.writeValueAsBytes(status));
+    }
+
+    /**
+     * 查找提供指定条目的插件，查询插件包索引，不打开插件包
+     *
+     * @param type 条目类型，为空时按类名查找（className）
+     * @param key  条目键，如包名、服务接口、类名
+     * @param ctx  上下文对象，用于输出查询结果
+     * @throws Exception 查询或输出失败
+     */
+    @Mapping(path = "/providers")
+    public void providers(String type, String key, Context ctx) throws Exception {
+        List<PluginIndex.Provider> providers = key == null ? Collections.emptyList()
+                : StringUtil.isEmpty(type) ? PluginIndex.global().findClass(key) : PluginIndex.global().providers(type, key);
+        ctx.contentType("application/json; charset=utf-8");
+        ctx.output(JSON.writeValueAsBytes(providers));
+    }
+
+    /**
+     * 检测插件与其他插件的冲突：相同的包、Solon 插件类或控制器类
+     *
+     * @param pluginId 插件编号
+     * @param ctx      上下文对象，用于输出冲突列表
+     * @throws Exception 查询或输出失败
+     */
+    @Mapping(path = "/conflicts/{pluginId}")
+    public void conflicts(long pluginId, Context ctx) throws Exception {
+        DataRow row = getPlugin(pluginId);
+        String digest = row != null ? row.getString("PLUGIN_DIGEST") : null;
+        List<PluginIndex.Provider> conflicts = digest != null ? PluginIndex.global().conflicts(digest) : Collections.emptyList();
+        ctx.contentType("application/json; charset=utf-8");
+        ctx.output(JSON.writeValueAsBytes(conflicts));
+    }
+
+    /**
+     * 以 JSON 输出插件配置文件解析后的配置项，按文件分组
+     *
+     * @param pluginId 插件编号
+     * @param ctx      上下文对象，用于输出配置项
+     * @throws Exception 输出失败
+     */
+    @Mapping(path = "/config/{pluginId}")
+    public void config(long pluginId, Context ctx) throws Exception {
+        PluginConfigService.PluginConfig config = PluginConfigService.global().get(pluginId);
+        if (config == null) {
+            ctx.status(404);
+            return;
+        }
+        ctx.contentType("application/json; charset=utf-8");
+        ctx.output(JSON.writeValueAsBytes(config));
+    }
+
+    /**
+     * 判断名称和版本是否已被其他插件使用，查询失败时按已存在处理
+     */
+    private static boolean isRegistered(String pluginName, String pluginVersion) {
+        try {
+            return PluginRegistry.global().exists(pluginName, pluginVersion);
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+            return true;
+        }
+    }
+
+    /**
+     * 登记新插件，插入数据库并写入注册表
+     *
+     * @param pluginName    插件名称
+     * @param pluginDesc    插件描述
+     * @param pluginVersion 插件版本
+     * @param savePath      插件包保存路径
+     * @param digest        插件包MD5
+     */
+    private void registerPlugin(String pluginName, String pluginDesc, String pluginVersion, String savePath, String digest) {
+        // 创建数据行，用于存储插件信息
+        DataRow dataRow = new DataRow();
+        dataRow.put("PLUGIN_NAME", pluginName);
+        dataRow.put("PLUGIN_DESC", pluginDesc);
+        dataRow.put("PLUGIN_PATH", savePath);
+        dataRow.put("PLUGIN_VERSION", pluginVersion);
+        dataRow.put("PLUGIN_STATUS", 0);
+        dataRow.put("PLUGIN_DIGEST", digest);
+        PluginRegistry.global().add(dataRow);
+    }
+
+    /**
+     * 构造添加插件页面的视图模型
+     *
+     * @param locale        本地化设置
+     * @param errorMsg      错误信息
+     * @param pluginName    插件名称
+     * @param pluginDesc    插件描述
+     * @param pluginVersion 插件版本
+     * @return modelAndView
+     */
+    private ModelAndView addView(Locale locale, String errorMsg, String pluginName, String pluginDesc, String pluginVersion) {
         ModelAndView modelAndView = new ModelAndView("plugin-add.ftl");
         modelAndView.put("lang", locale.getLanguage());
         modelAndView.put("errorMsg", errorMsg);
@@ -152,14 +360,16 @@ public class PluginController {
             long pluginId,
             Context ctx
     ) {
-        // 获取数据库服务代理
-        AnylineService service = ServiceProxy.service("db");
-
         // 查询要删除的插件信息
-        DataRow row = service.query("FRAMEWORK_PLUGIN", "ID:" + pluginId);
+        DataRow row = getPlugin(pluginId);
 
         // 如果插件不存在，调用notPlugin方法处理
         notPlugin(ctx, row);
+        // 安装中的插件在安装完成前不能删除
+        if (row != null && row.getInt("PLUGIN_STATUS", -1) == PluginRegistry.STATUS_VERIFYING) {
+            ctx.redirect("/plugin?errorMsg=plugin.verifying");
+            return;
+        }
 
         // 定义默认的错误消息
         String errorMsg = "plugin.delete_init_msg";
@@ -170,10 +380,19 @@ public class PluginController {
             String pluginPath = row.getString("PLUGIN_PATH");
 
             try {
+                // 先卸载插件，释放jar文件句柄
+                PluginRuntime.global().remove(pluginId);
                 // 删除插件文件
                 Files.delete(Path.of(pluginPath));
                 // 删除数据库中的插件记录
-                service.delete("FRAMEWORK_PLUGIN", row);
+                PluginRegistry.global().delete(row);
+                PluginConfigService.global().evict(pluginId);
+                // 内容不再被任何插件引用时删除内容文件
+                String digest = row.getString("PLUGIN_DIGEST");
+                if (digest != null && PluginRegistry.global().countByDigest(digest) == 0) {
+                    PluginStore.release(digest);
+                    PluginIndex.global().remove(digest);
+                }
                 // 设置成功消息
                 errorMsg = "plugin.delete_success";
             } catch (IOException e) {
@@ -184,6 +403,9 @@ public class PluginController {
             }
         }
 
+        if (row != null) {
+            audit(ctx, "delete", pluginId, auditTarget(row), errorMsg);
+        }
         // 重定向到插件列表页面，并附带错误消息参数
         ctx.redirect("/plugin?errorMsg=" + errorMsg);
     }
@@ -197,6 +419,7 @@ public class PluginController {
      * @param pluginName    插件名称，将要更新的字段之一
      * @param pluginDesc    插件描述，将要更新的字段之一
      * @param pluginVersion 插件版本，将要更新的字段之一
+     * @param rowVersion    打开修改页面时的行版本号，为空时不修改，返回最新的插件信息
      * @param ctx           上下文对象，用于重定向和错误处理
      * @return ModelAndView 模型视图对象，用于渲染更新插件页面
      */
@@ -207,25 +430,37 @@ public class PluginController {
             String pluginName,      // 插件名称，将要更新的字段之一
             String pluginDesc,      // 插件描述，将要更新的字段之一
             String pluginVersion,   // 插件版本，将要更新的字段之一
+            Long rowVersion,        // 打开修改页面时的行版本号，用于乐观锁
             Context ctx             // 上下文对象，用于重定向和错误处理
     ) {
-        AnylineService service = ServiceProxy.service("db"); // 获取数据库服务
-        DataRow row = service.query("FRAMEWORK_PLUGIN", "ID:" + pluginId); // 查询指定ID的插件信息
+        DataRow row = getPlugin(pluginId); // 查询指定ID的插件信息
         notPlugin(ctx, row); // 验证row是否为插件，如果不是，执行相应操作（此处省略具体实现）
         String errorMsg = "plugin.update_init_msg"; // 初始化错误信息
         // 如果任一字段（插件名称、描述、版本）不为空，则尝试更新插件信息
         if (!(StringUtil.isEmpty(pluginName) && StringUtil.isEmpty(pluginDesc) && StringUtil.isEmpty(pluginVersion))) {
             try {
-                row.putWithoutEmpty("PLUGIN_NAME", pluginName); // 更新插件名称，如果名称不为空
-                row.putWithoutEmpty("PLUGIN_DESC", pluginDesc); // 更新插件描述，如果描述不为空
-                row.putWithoutEmpty("PLUGIN_VERSION", pluginVersion); // 更新插件版本，如果版本不为空
-                service.update("FRAMEWORK_PLUGIN", row); // 执行更新操作
-                errorMsg = "plugin.update_success"; // 更新成功信息
-                ctx.redirect("/plugin?errorMsg=" + errorMsg); // 重定向到插件列表页，携带成功信息
+                Map<String, String> fields = new LinkedHashMap<>();
+                fields.put("PLUGIN_NAME", pluginName); // 更新插件名称，如果名称不为空
+                fields.put("PLUGIN_DESC", pluginDesc); // 更新插件描述，如果描述不为空
+                fields.put("PLUGIN_VERSION", pluginVersion); // 更新插件版本，如果版本不为空
+                // 一条语句完成修改，行版本号与打开页面时不一致说明已被其他人修改；
+                // 没有行版本号时无法判断修改是否基于最新的数据，按冲突处理，展示最新的插件信息后重新提交
+                if (rowVersion != null && PluginRegistry.global().updateMetadata(pluginId, rowVersion, fields)) {
+                    errorMsg = "plugin.update_success"; // 更新成功信息
+                    ctx.redirect("/plugin?errorMsg=" + errorMsg); // 重定向到插件列表页，携带成功信息
+                } else {
+                    errorMsg = "plugin.update_conflict"; // 修改冲突，展示最新的插件信息
+                    row = getPlugin(pluginId);
+                    notPlugin(ctx, row);
+                }
             } catch (Exception e) {
                 errorMsg = "plugin.update_fail"; // 更新失败信息
                 log.error(e.getMessage(), e); // 记录异常信息
             }
+            audit(ctx, "update", pluginId, pluginName + " " + pluginVersion, errorMsg);
+        }
+        if (row == null) {
+            return null;
         }
 
         ModelAndView modelAndView = new ModelAndView("plugin-update.ftl"); // 创建ModelAndView对象，指定视图
@@ -235,6 +470,7 @@ public class PluginController {
         modelAndView.put("pluginName", row.getString("PLUGIN_NAME")); // 将插件名称设置到Model
         modelAndView.put("pluginDesc", row.getString("PLUGIN_DESC")); // 将插件描述设置到Model
         modelAndView.put("pluginVersion", row.getString("PLUGIN_VERSION")); // 将插件版本设置到Model
+        modelAndView.put("rowVersion", row.getLong(PluginRegistry.ROW_VERSION, 0L)); // 将行版本号设置到Model
         return modelAndView; // 返回ModelAndView对象
     }
 
@@ -251,24 +487,45 @@ public class PluginController {
             long pluginId,
             Context ctx
     ) {
-        // 获取数据库服务代理
-        AnylineService service = ServiceProxy.service("db");
         // 查询指定ID的插件信息
-        DataRow row = service.query("FRAMEWORK_PLUGIN", "ID:" + pluginId);
+        DataRow row = getPlugin(pluginId);
         // 验证插件有效性，如果无效则进行相应处理
         notPlugin(ctx, row);
+        // 安装中的插件在安装完成前不能启用
+        if (row != null && row.getInt("PLUGIN_STATUS", -1) == PluginRegistry.STATUS_VERIFYING) {
+            audit(ctx, "enable", pluginId, auditTarget(row), "plugin.verifying");
+            ctx.redirect("/plugin?errorMsg=plugin.verifying");
+            return;
+        }
 
         try {
-            // 标记插件为启用状态
-            row.put("PLUGIN_STATUS", 1); // 假设1表示启用
-            // 更新插件状态
-            service.update("FRAMEWORK_PLUGIN", row);
+            // 先以条件更新修改状态，缓存中的状态可能已过期，状态已被其他请求修改时不覆盖，也不加载
+            int status = row.getInt("PLUGIN_STATUS", 0);
+            if (!PluginRegistry.global().transition(pluginId, status, 1)) {
+                audit(ctx, "enable", pluginId, auditTarget(row), "plugin.status_changed");
+                ctx.redirect("/plugin?errorMsg=plugin.status_changed");
+                return;
+            }
+            try {
+                // 热加载插件，已加载的实例先卸载
+                PluginRuntime.global().load(pluginId, row.getString("PLUGIN_PATH"));
+            } catch (Exception e) {
+                // 加载失败时没有运行的实例，把状态改回未启用，保持数据库与运行时一致
+                try {
+                    PluginRegistry.global().transition(pluginId, 1, 0);
+                } catch (Exception rollback) {
+                    e.addSuppressed(rollback);
+                }
+                throw e;
+            }
             // 重定向到插件管理页面，显示成功消息
+            audit(ctx, "enable", pluginId, auditTarget(row), "plugin.enable_success");
             ctx.redirect("/plugin?errorMsg=plugin.enable_success");
         } catch (Exception e) {
             // 日志记录异常信息
             log.error(e.getMessage(), e);
             // 重定向到插件管理页面，显示失败消息
+            audit(ctx, "enable", pluginId, auditTarget(row), "plugin.enable_fail");
             ctx.redirect("/plugin?errorMsg=plugin.enable_fail");
         }
     }
@@ -286,30 +543,104 @@ public class PluginController {
             long pluginId,
             Context ctx
     ) {
-        // 获取数据库服务代理
-        AnylineService service = ServiceProxy.service("db");
-
         // 查询要禁用的插件信息
-        DataRow row = service.query("FRAMEWORK_PLUGIN", "ID:" + pluginId);
+        DataRow row = getPlugin(pluginId);
 
         // 检查查询结果是否为插件，如果不是，进行相应处理
         notPlugin(ctx, row);
+        // 安装中的插件在安装完成前不能禁用
+        if (row != null && row.getInt("PLUGIN_STATUS", -1) == PluginRegistry.STATUS_VERIFYING) {
+            audit(ctx, "disable", pluginId, auditTarget(row), "plugin.verifying");
+            ctx.redirect("/plugin?errorMsg=plugin.verifying");
+            return;
+        }
 
         try {
-            // 修改插件状态为禁用
-            row.put("PLUGIN_STATUS", 0);
-            // 更新插件信息
-            service.update("FRAMEWORK_PLUGIN", row);
+            // 以条件更新修改插件状态为禁用，状态已被其他请求修改时不覆盖；缓存中已禁用时同样以条件更新确认
+            int status = row.getInt("PLUGIN_STATUS", 0);
+            if (!PluginRegistry.global().transition(pluginId, status, 0)) {
+                audit(ctx, "disable", pluginId, auditTarget(row), "plugin.status_changed");
+                ctx.redirect("/plugin?errorMsg=plugin.status_changed");
+                return;
+            }
+            // 热卸载插件
+            PluginRuntime.global().unload(pluginId);
             // 重定向到插件列表页面，传递成功消息
+            audit(ctx, "disable", pluginId, auditTarget(row), "plugin.disable_success");
             ctx.redirect("/plugin?errorMsg=plugin.disable_success");
         } catch (Exception e) {
             // 日志记录异常信息
             log.error(e.getMessage(), e);
             // 重定向到插件列表页面，传递失败消息
+            audit(ctx, "disable", pluginId, auditTarget(row), "plugin.disable_fail");
             ctx.redirect("/plugin?errorMsg=plugin.disable_fail");
         }
     }
 
+    /**
+     * 批量启用插件，数据库状态在一个事务中批量更新
+     *
+     * @param ids 插件编号，逗号分隔
+     * @param ctx 上下文对象，用于输出每个插件的处理结果
+     * @throws IOException 输出结果失败
+     */
+    @Mapping(path = "/bulk/enable")
+    public void bulkEnable(String ids, Context ctx) throws IOException {
+        writeBulkResult(ctx, audit(ctx, "enable", PluginBulkService.global().enable(parseIds(ids))));
+    }
+
+    /**
+     * 批量禁用插件，数据库状态在一个事务中批量更新
+     *
+     * @param ids 插件编号，逗号分隔
+     * @param ctx 上下文对象，用于输出每个插件的处理结果
+     * @throws IOException 输出结果失败
+     */
+    @Mapping(path = "/bulk/disable")
+    public void bulkDisable(String ids, Context ctx) throws IOException {
+        writeBulkResult(ctx, audit(ctx, "disable", PluginBulkService.global().disable(parseIds(ids))));
+    }
+
+    /**
+     * 批量删除插件，插件文件并行删除，数据库记录在一个事务中批量删除
+     *
+     * @param ids 插件编号，逗号分隔
+     * @param ctx 上下文对象，用于输出每个插件的处理结果
+     * @throws IOException 输出结果失败
+     */
+    @Mapping(path = "/bulk/delete")
+    public void bulkDelete(String ids, Context ctx) throws IOException {
+        writeBulkResult(ctx, audit(ctx, "delete", PluginBulkService.global().delete(parseIds(ids))));
+    }
+
+    /**
+     * 解析逗号分隔的插件编号，忽略空白和无效的编号
+     */
+    private static List<Long> parseIds(String ids) {
+        List<Long> pluginIds = new ArrayList<>();
+        if (ids == null) {
+            return pluginIds;
+        }
+        for (String id : ids.split(",")) {
+            try {
+                if (!id.isBlank()) {
+                    pluginIds.add(Long.parseLong(id.trim()));
+                }
+            } catch (NumberFormatException e) {
+                log.warn("Invalid plugin id: {}", id);
+            }
+        }
+        return pluginIds;
+    }
+
+    /**
+     * 以 JSON 输出批量操作中每个插件的处理结果
+     */
+    private static void writeBulkResult(Context ctx, List<BulkItem> items) throws IOException {
+        ctx.contentType("application/json; charset=utf-8");
+        ctx.output(JSON.writeValueAsBytes(items));
+    }
+
 
     /**
      * 文件管理页面控制器
@@ -319,6 +650,9 @@ public class PluginController {
      * @param locale   语言环境，用于国际化
      * @param pluginId 插件ID，用于标识特定的插件
      * @param path     文件或目录的路径，相对于插件路径
+     * @param sort     排序方式，name、size 或 time
+     * @param cursor   分页游标，为空时显示第一页
+     * @param size     每页条数
      * @param errorMsg 错误信息，当操作失败或路径无效时显示
      * @param ctx      上下文对象，用于重定向或共享数据
      * @return 返回一个 ModelAndView 对象，包含视图路径和模型数据
@@ -328,6 +662,9 @@ public class PluginController {
             Locale locale,
             long pluginId,
             String path,
+            @Param(defaultValue = DirectoryLister.SORT_NAME) String sort,
+            String cursor,
+            @Param(defaultValue = "100") int size,
             @Param(defaultValue = "empty") String errorMsg,
             Context ctx
     ) {
@@ -355,6 +692,8 @@ public class PluginController {
         // 设置语言环境和插件ID到模型
         modelAndView.put("lang", locale.getLanguage());
         modelAndView.put("pluginId", pluginId);
+        modelAndView.put("sort", sort);
+        modelAndView.put("size", size);
 
         // 如果目标路径不存在，设置错误信息
         if (!targetFileOrDir.exists()) {
@@ -362,9 +701,21 @@ public class PluginController {
         }
         // 如果目标是一个目录，获取其内容并添加到模型
         if (targetFileOrDir.isDirectory()) {
+            // 目录页面依赖插件注册表和目录内容：已建立文件索引的目录用索引版本（条目增删改都会变化），
+            // 否则用目录的修改时间（只反映增删文件）
+            long dirVersion = FileIndex.global().version(targetFileOrDir.toPath());
+            String cacheKey = PageCache.key(ctx, locale, PluginRegistry.global().version() + "-"
+                    + (dirVersion >= 0 ? "i" + dirVersion : targetFileOrDir.lastModified()));
+            if (PageCache.global().sendCached(ctx, cacheKey)) {
+                return null;
+            }
             modelAndView.put("parentPath", ToolUtils.getParentPath(baseDir.getPath(), targetFileOrDir));
             modelAndView.put("currentPath", currentPath);
-            modelAndView.put("files", ToolUtils.getFileList(targetFileOrDir));
+            errorMsg = putFiles(modelAndView, targetFileOrDir, sort, cursor, size, errorMsg);
+            // 还有文件摘要在后台计算时不缓存，避免一直显示计算中
+            if (!hasPendingDigest(modelAndView)) {
+                PageCache.global().cacheResult(ctx, cacheKey);
+            }
         } else if (targetFileOrDir.isFile() && ToolUtils.isConfigFile(targetFileOrDir.getName())) {
             // 如果目标是一个配置文件，重定向到编辑页面
             ctx.redirect("/plugin/file/save/" + pluginId + "?path=" + currentPath);
@@ -374,7 +725,7 @@ public class PluginController {
             File parentFile = targetFileOrDir.getParentFile();
             modelAndView.put("parentPath", ToolUtils.getParentPath(baseDir.getPath(), parentFile));
             modelAndView.put("currentPath", parentFile.getPath());
-            modelAndView.put("files", ToolUtils.getFileList(parentFile));
+            errorMsg = putFiles(modelAndView, parentFile, sort, null, size, errorMsg);
         }
         // 将错误信息添加到模型
         modelAndView.put("errorMsg", errorMsg);
@@ -383,6 +734,55 @@ public class PluginController {
     }
 
 
+    /**
+     * 分页列出目录中的文件并添加到模型
+     *
+     * @param modelAndView 视图模型
+     * @param dir          要列出的目录
+     * @param sort         排序方式
+     * @param cursor       分页游标
+     * @param size         每页条数
+     * @param errorMsg     当前的错误信息
+     * @return 读取目录失败时返回新的错误信息，否则返回原错误信息
+     */
+    private String putFiles(ModelAndView modelAndView, File dir, String sort, String cursor, int size, String errorMsg) {
+        try (Metrics.Timer ignored = Metrics.time(Metrics.STAGE_FS)) {
+            int pageSize = Math.min(size, MAX_FILE_PAGE_SIZE);
+            // 优先从文件索引分页，目录尚未建立索引时读取磁盘
+            DirectoryLister.Listing listing = FileIndex.global().list(dir.toPath(), sort, cursor, pageSize);
+            if (listing == null) {
+                listing = DirectoryLister.list(dir.toPath(), sort, cursor, pageSize);
+            }
+            modelAndView.put("files", ToolUtils.toFileInfo(dir, listing.entries()));
+            modelAndView.put("nextCursor", listing.nextCursor() != null ? listing.nextCursor() : "");
+            return errorMsg;
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+            modelAndView.put("files", Collections.emptyList());
+            modelAndView.put("nextCursor", "");
+            return "file.read_fail";
+        }
+    }
+
+    /**
+     * 判断模型中的文件列表是否还有未计算完成的摘要
+     *
+     * @param modelAndView 视图模型
+     * @return 有未计算完成的摘要时返回 true
+     */
+    @SuppressWarnings("unchecked")
+    private static boolean hasPendingDigest(ModelAndView modelAndView) {
+        Object files = modelAndView.model().get("files");
+        if (files instanceof List<?> list) {
+            for (Object file : list) {
+                if (Boolean.TRUE.equals(((Map<String, Object>) file).get("md5Pending"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * 当请求的插件不存在时，将请求重定向到插件不存在的错误页面
      * 此方法用于处理试图访问不存在的插件的情况，通过重定向用户到一个错误页面，告知用户相关的错误信息
@@ -397,6 +797,36 @@ public class PluginController {
         }
     }
 
+    /**
+     * 记录审计事件，只放入审计队列，不等待写入数据库
+     *
+     * @param ctx      上下文对象，用于获取客户端地址
+     * @param action   操作
+     * @param pluginId 插件编号
+     * @param target   操作对象
+     * @param result   结果消息的国际化键
+     */
+    private static void audit(Context ctx, String action, long pluginId, String target, String result) {
+        AuditLog.global().append(new AuditEvent(System.currentTimeMillis(), action, pluginId, target, result, ctx.realIp()));
+    }
+
+    /**
+     * 审计事件中的插件操作对象：插件名称和版本
+     */
+    private static String auditTarget(DataRow row) {
+        return row != null ? row.getString("PLUGIN_NAME") + " " + row.getString("PLUGIN_VERSION") : null;
+    }
+
+    /**
+     * 记录批量操作中每个插件的审计事件
+     */
+    private static List<BulkItem> audit(Context ctx, String action, List<BulkItem> items) {
+        for (BulkItem item : items) {
+            audit(ctx, action, item.pluginId(), null, item.message());
+        }
+        return items;
+    }
+
 
     /**
      * 根据插件ID获取插件数据
@@ -405,13 +835,60 @@ public class PluginController {
      * @return 返回查询到的插件数据，如果未找到则返回null
      */
     private DataRow getPlugin(long pluginId) {
-        // 创建并初始化AnylineService对象，用于与数据库进行交互
-        AnylineService service = ServiceProxy.service("db");
+        // 从插件注册表中读取，注册表首次访问时才会查询数据库
+        return PluginRegistry.global().get(pluginId);
+    }
 
-        // 使用插件ID查询数据库中的插件信息
-        return service.query("FRAMEWORK_PLUGIN", "ID:" + pluginId);
+
+    /**
+     * 下载插件包或插件目录下的文件
+     * 支持 Range 断点续传，并以文件摘要作为 ETag，客户端携带 If-None-Match 且文件未变化时返回 304
+     *
+     * @param pluginId 插件ID，用于标识特定插件
+     * @param path     要下载的文件路径，为空时下载插件包
+     * @param ctx      上下文对象，用于读取请求头和输出文件
+     * @throws IOException 读取文件或输出失败
+     */
+    @Mapping(path = "/file/download/{pluginId}")
+    public void download(
+            long pluginId,
+            String path,
+            Context ctx
+    ) throws IOException {
+        DataRow row = getPlugin(pluginId);  // 获取指定插件的信息
+        if (row == null) {
+            ctx.status(404);
+            return;
+        }
+        File pluginJar = new File(row.getString("PLUGIN_PATH"));
+        File baseDir = pluginJar.getParentFile();
+        // 未指定路径时下载插件包，指定路径时只允许下载插件目录内的文件
+        File target = StringUtil.isEmpty(path) ? pluginJar : new File(path);
+        if (!isInside(baseDir, target) || !target.isFile()) {
+            ctx.status(404);
+            return;
+        }
+        // 插件包使用数据库中记录的摘要，其他文件使用摘要缓存，缓存未命中时由下载工具生成弱ETag
+        String digest = target.getAbsoluteFile().equals(pluginJar.getAbsoluteFile())
+                ? row.getString("PLUGIN_DIGEST")
+                : FileDigestCache.global().get(target, target.length(), target.lastModified());
+        try (Metrics.Timer ignored = Metrics.time(Metrics.STAGE_FS)) {
+            FileDownloader.send(ctx, target, digest);
+        }
     }
 
+    /**
+     * 判断文件是否位于指定目录内，路径先规范化，避免通过 .. 访问目录之外的文件
+     *
+     * @param dir  目录
+     * @param file 文件
+     * @return 是否位于目录内
+     */
+    private static boolean isInside(File dir, File file) {
+        Path base = dir.toPath().toAbsolutePath().normalize();
+        Path target = file.toPath().toAbsolutePath().normalize();
+        return target.startsWith(base);
+    }
 
     @Mapping(path = "/file/upload/{pluginId}", multipart = true)
     public void uploadFile(
@@ -422,23 +899,45 @@ public class PluginController {
         DataRow plugin = getPlugin(pluginId);
         notPlugin(ctx, plugin);
         List<UploadedFile> files = ctx.files("files");
+        Path jar = Path.of(plugin.getString("PLUGIN_PATH")).toAbsolutePath().normalize();
         String pluginPath = new File(plugin.getString("PLUGIN_PATH")).getParentFile().getPath() + File.separator;
+        String result = "file.upload_done";
         for (UploadedFile file : files) {
             String savePath = pluginPath + file.getName();
+            // 插件包是指向内容文件的硬链接，其他版本可能共用，且数据库记录了它的MD5，只能通过修改插件替换
+            if (Path.of(savePath).toAbsolutePath().normalize().equals(jar)) {
+                result = "file.upload_jar_refused";
+                audit(ctx, "upload", pluginId, savePath, result);
+                continue;
+            }
             FileUtil.createMissingParentDirectories(new File(savePath));
-            file.transferTo(new File(savePath));
+            try (InputStream in = file.getContent()) {
+                PluginStore.replace(in, Path.of(savePath));
+            }
+            FileIndex.global().refresh(Path.of(savePath));
+            PluginConfigService.global().reload(Path.of(savePath));
+            audit(ctx, "upload", pluginId, savePath, "file.upload_done");
         }
-        ctx.redirect("/plugin/file/" + pluginId + "?errorMsg=file.upload_done");
+        ctx.redirect("/plugin/file/" + pluginId + "?errorMsg=" + result);
     }
 
     /**
      * 映射到文件保存功能的路径
+     * 文件按窗口分页查看和修改，每次只读取和替换当前窗口对应的内容，大文件也不会占用过多内存
      *
-     * @param locale   用户的区域设置，用于确定语言环境
-     * @param pluginId 插件ID，用于标识特定插件
-     * @param path     文件路径，用于指定要操作的文件
-     * @param content  文件内容，用于写入文件
-     * @param ctx      上下文对象，用于重定向和错误处理
+     * @param locale       用户的区域设置，用于确定语言环境
+     * @param pluginId     插件ID，用于标识特定插件
+     * @param path         文件路径，用于指定要操作的文件
+     * @param content      窗口内容，不为空时保存
+     * @param line         跳转到的行号（从1开始），优先于 offset
+     * @param offset       窗口起始字节偏移
+     * @param lines        每个窗口的行数
+     * @param startOffset  保存时：窗口起始字节偏移
+     * @param endOffset    保存时：窗口结束字节偏移
+     * @param fileSize     保存时：读取窗口时的文件大小
+     * @param lastModified 保存时：读取窗口时的文件修改时间
+     * @param crlf         保存时：窗口原本是否使用 \r\n 换行
+     * @param ctx          上下文对象，用于重定向和错误处理
      * @return ModelAndView 用于渲染文件保存页面
      * @throws IOException
      */
@@ -447,7 +946,15 @@ public class PluginController {
             Locale locale,  // 用户的区域设置，用于确定语言环境
             long pluginId,  // 插件ID，用于标识特定插件
             String path,  // 文件路径，用于指定要操作的文件
-            String content,  // 文件内容，用于写入文件
+            String content,  // 窗口内容，用于写入文件
+            Long line,  // 跳转到的行号
+            @Param(defaultValue = "0") long offset,  // 窗口起始字节偏移
+            @Param(defaultValue = "500") int lines,  // 每个窗口的行数
+            @Param(defaultValue = "0") long startOffset,  // 保存时的窗口起始字节偏移
+            @Param(defaultValue = "0") long endOffset,  // 保存时的窗口结束字节偏移
+            @Param(defaultValue = "-1") long fileSize,  // 保存时的文件大小
+            @Param(defaultValue = "-1") long lastModified,  // 保存时的文件修改时间
+            @Param(defaultValue = "false") boolean crlf,  // 保存时窗口是否使用\r\n换行
             Context ctx  // 上下文对象，用于重定向和错误处理
     ) throws IOException {
         DataRow row = getPlugin(pluginId);  // 获取指定插件的信息
@@ -468,21 +975,55 @@ public class PluginController {
         modelAndView.put("pluginId", pluginId);  // 设置插件ID
 
         if (content != null) {  // 如果有内容需要写入文件
-            File file = new File(path);  // 文件对象
-            Files.write(file.toPath(), content.getBytes());  // 将内容写入文件
-            ctx.redirect("/plugin/file/" + pluginId + "?path=" + ToolUtils.getParentPath(baseDir.getPath(), targetFileOrDir) + "&errorMsg=file.save_success");  // 重定向并显示保存成功消息
-            return null;
+            // 浏览器提交表单时会把换行统一为\r\n，原内容不是\r\n换行时还原
+            String windowContent = crlf ? content : content.replace("\r\n", "\n");
+            // 只替换当前窗口对应的字节区间，其余内容流式拷贝后原子替换原文件
+            boolean saved;
+            try (Metrics.Timer ignored = Metrics.time(Metrics.STAGE_FS)) {
+                saved = TextFileWindow.replace(targetFileOrDir.toPath(), startOffset, endOffset, windowContent, fileSize, lastModified);
+            }
+            if (saved) {
+                FileIndex.global().refresh(targetFileOrDir.toPath());
+                PluginConfigService.global().reload(targetFileOrDir.toPath());
+                audit(ctx, "save", pluginId, path, "file.save_success");
+                ctx.redirect("/plugin/file/" + pluginId + "?path=" + ToolUtils.getParentPath(baseDir.getPath(), targetFileOrDir) + "&errorMsg=file.save_success");  // 重定向并显示保存成功消息
+                return null;
+            }
+            // 文件在打开后已被修改，重新读取当前窗口
+            errorMsg = "file.changed";
+            audit(ctx, "save", pluginId, path, errorMsg);
+            offset = startOffset;
         }
 
         modelAndView.put("parentPath", ToolUtils.getParentPath(baseDir.getPath(), targetFileOrDir));  // 设置父路径
         modelAndView.put("currentPath", path);  // 设置当前路径
+        modelAndView.put("lines", lines);  // 设置每个窗口的行数
 
-        try {
-            modelAndView.put("fileContent", new String(Files.readAllBytes(targetFileOrDir.toPath())));  // 读取文件内容
+        try (Metrics.Timer ignored = Metrics.time(Metrics.STAGE_FS)) {
+            // 指定了行号时跳转到该行，否则从指定偏移开始读取
+            long windowOffset = line != null ? TextFileWindow.offsetOfLine(targetFileOrDir.toPath(), line - 1) : offset;
+            TextFileWindow.Window window = TextFileWindow.read(targetFileOrDir.toPath(), windowOffset, Math.max(1, Math.min(lines, MAX_EDIT_LINES)));
+            modelAndView.put("fileContent", window.content());  // 窗口内容
+            modelAndView.put("startLine", window.startLine() + 1);  // 窗口第一行的行号
+            modelAndView.put("totalLines", window.totalLines());  // 文件总行数
+            modelAndView.put("startOffset", window.startOffset());
+            modelAndView.put("endOffset", window.endOffset());
+            modelAndView.put("fileSize", window.fileSize());
+            modelAndView.put("lastModified", window.lastModified());
+            modelAndView.put("crlf", window.crlf());
+            modelAndView.put("hasNext", window.hasNext());
         } catch (IOException e) {
             log.error(e.getMessage(), e);  // 记录读取文件异常
             errorMsg = "file.read_fail";  // 设置错误消息为读取失败
             modelAndView.put("fileContent", "");  // 将文件内容设置为空字符串
+            modelAndView.put("startLine", 1);
+            modelAndView.put("totalLines", 0);
+            modelAndView.put("startOffset", 0);
+            modelAndView.put("endOffset", 0);
+            modelAndView.put("fileSize", -1);
+            modelAndView.put("lastModified", -1);
+            modelAndView.put("crlf", false);
+            modelAndView.put("hasNext", false);
         }
 
         modelAndView.put("errorMsg", errorMsg);  // 设置错误消息
@@ -0,0 +1,338 @@
+package site.xiweihai.framework.datasource;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import lombok.extern.slf4j.Slf4j;
+import org.anyline.data.datasource.DataSourceHolder;
+import org.noear.solon.Solon;
+import org.noear.solon.core.Props;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 数据源管理器
+ * 应用启动和数据库初始化共用同一个连接池：连接池大小、超时和泄漏检测从 app.yml 或 db_ext 中的 db.pool.* 读取，
+ * 重新初始化数据库时先注册新连接池再关闭旧连接池，不会泄漏连接。应用启动时连接池延迟建立连接，由后台预热。
+ * 开启虚拟线程后请求线程不再受限，连接池大小就是数据库的实际并发上限，可以通过 {@link #stats()} 观察连接池的实时状态。
+ * 配置了只读副本时另外注册只读数据源，能容忍复制延迟的查询通过 {@link #readKey()} 读副本，写入始终在主库
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+@Slf4j
+public class DataSourceManager {
+
+    /**
+     * 默认数据源标识
+     */
+    public static final String DEFAULT_KEY = "db";
+
+    /**
+     * 只读数据源标识，配置了只读副本时注册
+     */
+    public static final String READ_KEY = "db_read";
+
+    /**
+     * 连接池配置前缀
+     */
+    private static final String POOL_PREFIX = "db.pool.";
+
+    /**
+     * 只读副本配置前缀，db.replica[0].jdbcUrl、db.replica[1].jdbcUrl ...
+     */
+    private static final String REPLICA_PREFIX = "db.replica";
+
+    private static final DataSourceManager global = new DataSourceManager(DEFAULT_KEY);
+
+    private final String key;
+
+    private final PoolMetrics metrics = new PoolMetrics();
+
+    private volatile HikariDataSource dataSource;
+
+    private volatile ReplicaRouter replicas;
+
+    /**
+     * 连接池实时状态
+     *
+     * @param active  正在使用的连接数
+     * @param idle    空闲连接数
+     * @param total   连接总数
+     * @param waiting 等待获取连接的线程数
+     * @param max     连接池上限
+     */
+    public record PoolStats(int active, int idle, int total, int waiting, int max) {
+    }
+
+    public DataSourceManager(String key) {
+        this.key = key;
+    }
+
+    /**
+     * 获取全局的数据源管理器
+     *
+     * @return 数据源管理器
+     */
+    public static DataSourceManager global() {
+        return global;
+    }
+
+    /**
+     * 配置中包含数据库连接信息时创建连接池
+     * 启动时默认延迟建立连接（db.pool.lazy），不在启动的关键路径上等待数据库，由 {@link #warmUp()} 在后台预热
+     *
+     * @param cfg 应用配置
+     * @return 是否创建了连接池
+     */
+    public boolean start(Props cfg) {
+        if (!cfg.containsKey("db.jdbcUrl")) {
+            return false;
+        }
+        start(cfg.get("db.driverClassName"), cfg.get("db.jdbcUrl"), cfg.get("db.username"), cfg.get("db.password"),
+                cfg.getBool(POOL_PREFIX + "lazy", true));
+        startReplicas(cfg);
+        return true;
+    }
+
+    /**
+     * 按 db.replica[i].* 创建只读副本连接池，并把副本路由注册为只读数据源 {@link #READ_KEY}；没有配置副本时不注册
+     * 每个副本可配置 jdbcUrl、driverClassName（默认与主库相同）、username、password、
+     * readOnly（连接设为只读，默认 true）、lagQuery（查询复制延迟秒数的语句）；
+     * db.replicas.maxLag 为允许的最大复制延迟（毫秒），db.replicas.checkInterval 为健康检查间隔（毫秒），
+     * db.replicas.connectionTimeout 为从副本获取连接的超时时间（毫秒，默认2000），副本不可用时尽快回退到主库，
+     * 不等待主库连接池的 db.pool.connectionTimeout
+     *
+     * @param cfg 应用配置
+     * @return 创建的副本数
+     */
+    public synchronized int startReplicas(Props cfg) {
+        List<ReplicaRouter.Replica> list = new ArrayList<>();
+        boolean lazy = cfg.getBool(POOL_PREFIX + "lazy", true);
+        long connectionTimeout = cfg.getLong("db.replicas.connectionTimeout", 2_000);
+        for (int i = 0; cfg.containsKey(REPLICA_PREFIX + "[" + i + "].jdbcUrl"); i++) {
+            String prefix = REPLICA_PREFIX + "[" + i + "].";
+            String name = key + "-replica-" + i;
+            HikariConfig hikariConfig = new HikariConfig();
+            hikariConfig.setDriverClassName(cfg.get(prefix + "driverClassName", cfg.get("db.driverClassName")));
+            hikariConfig.setJdbcUrl(cfg.get(prefix + "jdbcUrl"));
+            hikariConfig.setUsername(cfg.get(prefix + "username", cfg.get("db.username")));
+            hikariConfig.setPassword(cfg.get(prefix + "password", cfg.get("db.password")));
+            hikariConfig.setPoolName(name);
+            // 防止误把写操作发到副本；SQLite 等不能在连接建立后切换只读的驱动需要关闭
+            hikariConfig.setReadOnly(cfg.getBool(prefix + "readOnly", true));
+            configure(hikariConfig, cfg);
+            hikariConfig.setConnectionTimeout(connectionTimeout);
+            hikariConfig.setValidationTimeout(Math.min(hikariConfig.getValidationTimeout(), connectionTimeout));
+            list.add(new ReplicaRouter.Replica(name, create(hikariConfig, lazy), cfg.get(prefix + "lagQuery")));
+        }
+        if (list.isEmpty()) {
+            return 0;
+        }
+        ReplicaRouter router = new ReplicaRouter(this::dataSource, list, cfg.getLong("db.replicas.maxLag", 10_000));
+        ReplicaRouter previous = replicas;
+        replicas = router;
+        DataSourceHolder.reg(READ_KEY, router);
+        router.start(cfg.getLong("db.replicas.checkInterval", 5_000));
+        if (previous != null) {
+            previous.close();
+        }
+        log.info("Datasource {} routes reads to {} replica(s)", READ_KEY, list.size());
+        return list.size();
+    }
+
+    /**
+     * 创建连接池并注册为当前数据源，已有的连接池在新连接池注册后关闭
+     *
+     * @param driver   数据库驱动类名
+     * @param url      数据库连接URL
+     * @param user     数据库用户名
+     * @param password 数据库密码
+     * @return 新的数据源
+     */
+    public DataSource start(String driver, String url, String user, String password) {
+        return start(driver, url, user, password, false);
+    }
+
+    /**
+     * 创建连接池并注册为当前数据源，已有的连接池在新连接池注册后关闭
+     *
+     * @param driver   数据库驱动类名
+     * @param url      数据库连接URL
+     * @param user     数据库用户名
+     * @param password 数据库密码
+     * @param lazy     是否延迟建立连接：为 true 时第一次获取连接才启动连接池，否则立即建立连接，连接失败时抛出异常
+     * @return 新的数据源
+     */
+    public synchronized DataSource start(String driver, String url, String user, String password, boolean lazy) {
+        HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setDriverClassName(driver);
+        hikariConfig.setJdbcUrl(url);
+        hikariConfig.setUsername(user);
+        hikariConfig.setPassword(password);
+        hikariConfig.setPoolName(key);
+        configure(hikariConfig, Solon.app() != null ? Solon.cfg() : null);
+        hikariConfig.setMetricsTrackerFactory(metrics);
+
+        HikariDataSource created = create(hikariConfig, lazy);
+        HikariDataSource previous = dataSource;
+        dataSource = created;
+        // 注册数据源到持有器，之后新的请求都使用新连接池
+        DataSourceHolder.reg(key, created);
+        if (previous != null) {
+            // 已借出的连接归还时才会真正关闭，不影响正在执行的请求
+            previous.close();
+            log.info("Datasource {} replaced, previous pool closed", key);
+        }
+        return created;
+    }
+
+    /**
+     * 创建连接池，延迟启动时无参构造的数据源在第一次获取连接时才启动连接池
+     */
+    private static HikariDataSource create(HikariConfig hikariConfig, boolean lazy) {
+        if (!lazy) {
+            return new HikariDataSource(hikariConfig);
+        }
+        HikariDataSource created = new HikariDataSource();
+        hikariConfig.copyStateTo(created);
+        return created;
+    }
+
+    /**
+     * 把 db.pool.* 配置应用到连接池，未配置的项保留 HikariCP 默认值
+     */
+    private static void configure(HikariConfig hikariConfig, Props cfg) {
+        if (cfg == null) {
+            return;
+        }
+        int maximumPoolSize = cfg.getInt(POOL_PREFIX + "maximumPoolSize", 0);
+        if (maximumPoolSize > 0) {
+            hikariConfig.setMaximumPoolSize(maximumPoolSize);
+        }
+        int minimumIdle = cfg.getInt(POOL_PREFIX + "minimumIdle", -1);
+        if (minimumIdle >= 0) {
+            hikariConfig.setMinimumIdle(minimumIdle);
+        }
+        long connectionTimeout = cfg.getLong(POOL_PREFIX + "connectionTimeout", 0);
+        if (connectionTimeout > 0) {
+            hikariConfig.setConnectionTimeout(connectionTimeout);
+        }
+        long validationTimeout = cfg.getLong(POOL_PREFIX + "validationTimeout", 0);
+        if (validationTimeout > 0) {
+            hikariConfig.setValidationTimeout(validationTimeout);
+        }
+        long idleTimeout = cfg.getLong(POOL_PREFIX + "idleTimeout", -1);
+        if (idleTimeout >= 0) {
+            hikariConfig.setIdleTimeout(idleTimeout);
+        }
+        long maxLifetime = cfg.getLong(POOL_PREFIX + "maxLifetime", 0);
+        if (maxLifetime > 0) {
+            hikariConfig.setMaxLifetime(maxLifetime);
+        }
+        long leakDetectionThreshold = cfg.getLong(POOL_PREFIX + "leakDetectionThreshold", 0);
+        if (leakDetectionThreshold > 0) {
+            hikariConfig.setLeakDetectionThreshold(leakDetectionThreshold);
+        }
+    }
+
+    /**
+     * 预热连接池：借出并归还一个连接，延迟启动的连接池随之启动并按 minimumIdle 补充空闲连接
+     *
+     * @return 是否成功获取连接，未初始化或连接失败时返回 false
+     */
+    public boolean warmUp() {
+        HikariDataSource current = dataSource;
+        if (current == null) {
+            return false;
+        }
+        try (Connection ignored = current.getConnection()) {
+            return true;
+        } catch (SQLException e) {
+            log.error("Datasource {} warm-up failed: {}", key, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 获取当前数据源
+     *
+     * @return 当前数据源，未初始化时为 null
+     */
+    public DataSource dataSource() {
+        return dataSource;
+    }
+
+    /**
+     * 只读查询使用的数据源标识：配置了副本时为 {@link #READ_KEY}，否则为主库
+     * 只适合能容忍复制延迟的查询，读取后立即写入、需要读到自己刚写入数据的查询应使用主库
+     *
+     * @return 数据源标识
+     */
+    public String readKey() {
+        return replicas != null ? READ_KEY : key;
+    }
+
+    /**
+     * 只读查询使用的数据源：配置了副本时为副本路由，否则为主库
+     *
+     * @return 数据源，未初始化时为 null
+     */
+    public DataSource readDataSource() {
+        ReplicaRouter router = replicas;
+        return router != null ? router : dataSource;
+    }
+
+    /**
+     * 获取只读副本路由
+     *
+     * @return 副本路由，没有配置副本时为 null
+     */
+    public ReplicaRouter replicas() {
+        return replicas;
+    }
+
+    /**
+     * 获取连接池实时状态
+     *
+     * @return 连接池状态，未初始化时为 null
+     */
+    public PoolStats stats() {
+        HikariDataSource current = dataSource;
+        HikariPoolMXBean pool = current != null ? current.getHikariPoolMXBean() : null;
+        if (pool == null) {
+            return null;
+        }
+        return new PoolStats(pool.getActiveConnections(), pool.getIdleConnections(), pool.getTotalConnections(),
+                pool.getThreadsAwaitingConnection(), current.getMaximumPoolSize());
+    }
+
+    /**
+     * 获取连接耗时等累计指标
+     *
+     * @return 累计指标
+     */
+    public PoolMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * 关闭只读副本和当前连接池
+     */
+    public synchronized void close() {
+        ReplicaRouter router = replicas;
+        replicas = null;
+        if (router != null) {
+            router.close();
+        }
+        HikariDataSource current = dataSource;
+        dataSource = null;
+        if (current != null) {
+            current.close();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package site.xiweihai.framework.datasource;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import site.xiweihai.framework.metrics.Histogram;
+import site.xiweihai.framework.metrics.Metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 连接池指标采集
+ * 作为 HikariCP 的 {@link MetricsTrackerFactory} 注册到连接池，记录获取连接的耗时分布、超时次数和连接占用时长。
+ * 连接归还发生在使用连接的线程上，占用时长同时计入当前请求路由的数据库阶段耗时，所有 Anyline 调用都无需单独埋点。
+ * 连接池切换时沿用同一个实例，指标在应用生命周期内持续累加
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+public class PoolMetrics implements MetricsTrackerFactory {
+
+    /**
+     * 获取连接耗时分布的桶边界（秒）
+     */
+    public static final double[] ACQUIRE_BUCKETS = {0.0001, 0.0005, 0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5};
+
+    private final Histogram acquire = new Histogram(ACQUIRE_BUCKETS);
+    private final AtomicLong acquireMaxNanos = new AtomicLong();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder usageCount = new LongAdder();
+    private final LongAdder usageMillis = new LongAdder();
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquire.record(elapsedAcquiredNanos);
+                acquireMaxNanos.accumulateAndGet(elapsedAcquiredNanos, Math::max);
+            }
+
+            @Override
+            public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+                usageCount.increment();
+                usageMillis.add(elapsedBorrowedMillis);
+                Metrics.global().recordStage(Metrics.STAGE_DB, TimeUnit.MILLISECONDS.toNanos(elapsedBorrowedMillis));
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                timeouts.increment();
+            }
+        };
+    }
+
+    /**
+     * 获取连接的耗时分布
+     */
+    public Histogram acquire() {
+        return acquire;
+    }
+
+    /**
+     * 获取连接的总次数
+     */
+    public long acquireCount() {
+        return acquire.count();
+    }
+
+    /**
+     * 获取连接的总耗时（秒）
+     */
+    public double acquireSeconds() {
+        return acquire.sumSeconds();
+    }
+
+    /**
+     * 获取连接的最大耗时（毫秒）
+     */
+    public double acquireMaxMillis() {
+        return acquireMaxNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * 获取连接超时的次数
+     */
+    public long timeouts() {
+        return timeouts.sum();
+    }
+
+    /**
+     * 连接归还的次数
+     */
+    public long usageCount() {
+        return usageCount.sum();
+    }
+
+    /**
+     * 连接被占用的总时长（毫秒）
+     */
+    public long usageMillis() {
+        return usageMillis.sum();
+    }
+}
@@ -0,0 +1,244 @@
+package site.xiweihai.framework.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * 只读副本路由数据源
+ * 注册为只读数据源，只用于查询：每次获取连接时在健康且复制延迟不超过上限的副本之间轮询，
+ * 副本获取连接失败时标记为不可用并尝试下一个，没有可用副本时回退到主库。
+ * 后台定时检查每个副本：能获取连接则视为健康，配置了延迟查询时按查询结果（秒）更新复制延迟
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+@Slf4j
+public class ReplicaRouter implements DataSource {
+
+    private final Supplier<DataSource> primary;
+    private final List<Replica> replicas;
+    private final long maxLagMillis;
+    private final AtomicInteger next = new AtomicInteger();
+    private final LongAdder fallbacks = new LongAdder();
+    private ScheduledExecutorService checker;
+
+    /**
+     * 副本状态
+     *
+     * @param name      副本名称
+     * @param healthy   是否健康
+     * @param lagMillis 最近一次检查的复制延迟（毫秒）
+     * @param routed    路由到该副本的连接数
+     */
+    public record ReplicaStats(String name, boolean healthy, long lagMillis, long routed) {
+    }
+
+    /**
+     * 副本
+     */
+    public static final class Replica {
+        final String name;
+        final HikariDataSource dataSource;
+        final String lagQuery;
+        final LongAdder routed = new LongAdder();
+        volatile boolean healthy = true;
+        volatile long lagMillis;
+
+        /**
+         * 创建副本
+         *
+         * @param name       副本名称，用于日志和指标
+         * @param dataSource 副本连接池
+         * @param lagQuery   查询复制延迟（秒）的语句，为空时不检查延迟
+         */
+        public Replica(String name, HikariDataSource dataSource, String lagQuery) {
+            this.name = name;
+            this.dataSource = dataSource;
+            this.lagQuery = lagQuery == null || lagQuery.isBlank() ? null : lagQuery;
+        }
+    }
+
+    /**
+     * 创建只读副本路由
+     *
+     * @param primary      主库，主库连接池重新初始化后也能取到新的连接池
+     * @param replicas     副本
+     * @param maxLagMillis 允许的最大复制延迟（毫秒），超过时不路由到该副本
+     */
+    public ReplicaRouter(Supplier<DataSource> primary, List<Replica> replicas, long maxLagMillis) {
+        this.primary = primary;
+        this.replicas = new ArrayList<>(replicas);
+        this.maxLagMillis = maxLagMillis;
+    }
+
+    /**
+     * 开启定时健康检查
+     *
+     * @param intervalMillis 检查间隔（毫秒）
+     */
+    public synchronized void start(long intervalMillis) {
+        if (checker != null || replicas.isEmpty()) {
+            return;
+        }
+        checker = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().daemon().name("db-replica-check").factory());
+        checker.scheduleWithFixedDelay(this::check, 0, Math.max(intervalMillis, 100), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 检查全部副本的健康状态和复制延迟
+     */
+    public void check() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.dataSource.getConnection()) {
+                long lagMillis = 0;
+                if (replica.lagQuery != null) {
+                    try (Statement statement = connection.createStatement();
+                         ResultSet rs = statement.executeQuery(replica.lagQuery)) {
+                        // 延迟为 NULL（如未在复制的主库）时视为没有延迟
+                        lagMillis = rs.next() ? (long) (rs.getDouble(1) * 1000) : 0;
+                    }
+                }
+                replica.lagMillis = lagMillis;
+                if (!replica.healthy) {
+                    log.info("Replica {} is back, lag {} ms", replica.name, lagMillis);
+                }
+                replica.healthy = true;
+            } catch (SQLException | RuntimeException e) {
+                markDown(replica, e);
+            }
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        int size = replicas.size();
+        int start = size > 0 ? Math.floorMod(next.getAndIncrement(), size) : 0;
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (!replica.healthy || replica.lagMillis > maxLagMillis) {
+                continue;
+            }
+            try {
+                Connection connection = replica.dataSource.getConnection();
+                replica.routed.increment();
+                return connection;
+            } catch (SQLException e) {
+                markDown(replica, e);
+            }
+        }
+        // 没有可用的副本时读主库
+        fallbacks.increment();
+        return primary().getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Replica router uses pool credentials");
+    }
+
+    /**
+     * 各副本的状态
+     *
+     * @return 副本状态列表
+     */
+    public List<ReplicaStats> stats() {
+        List<ReplicaStats> stats = new ArrayList<>(replicas.size());
+        for (Replica replica : replicas) {
+            stats.add(new ReplicaStats(replica.name, replica.healthy, replica.lagMillis, replica.routed.sum()));
+        }
+        return stats;
+    }
+
+    /**
+     * 回退到主库的次数
+     *
+     * @return 回退次数
+     */
+    public long fallbacks() {
+        return fallbacks.sum();
+    }
+
+    /**
+     * 停止健康检查并关闭全部副本连接池
+     */
+    public synchronized void close() {
+        if (checker != null) {
+            checker.shutdownNow();
+            checker = null;
+        }
+        for (Replica replica : replicas) {
+            replica.dataSource.close();
+        }
+    }
+
+    private void markDown(Replica replica, Exception e) {
+        if (replica.healthy) {
+            log.warn("Replica {} marked down: {}", replica.name, e.getMessage());
+        }
+        replica.healthy = false;
+    }
+
+    private DataSource primary() throws SQLException {
+        DataSource dataSource = primary.get();
+        if (dataSource == null) {
+            throw new SQLException("Primary datasource is not started");
+        }
+        return dataSource;
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+        // 不使用
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+        // 超时由各连接池配置
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return 0;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+}
@@ -0,0 +1,96 @@
+package site.xiweihai.framework.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 耗时直方图
+ * 桶边界固定，计数使用 {@link LongAdder}，记录时不加锁，适合在请求线程上高频调用
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+public class Histogram {
+
+    /**
+     * 请求耗时的默认桶边界（秒）
+     */
+    public static final double[] DEFAULT_BUCKETS = {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    private final double[] buckets;
+    private final long[] bucketNanos;
+    private final LongAdder[] counts;
+    private final LongAdder sumNanos = new LongAdder();
+
+    public Histogram() {
+        this(DEFAULT_BUCKETS);
+    }
+
+    /**
+     * @param buckets 桶边界（秒），升序
+     */
+    public Histogram(double[] buckets) {
+        this.buckets = buckets.clone();
+        this.bucketNanos = new long[buckets.length];
+        this.counts = new LongAdder[buckets.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            bucketNanos[i] = (long) (buckets[i] * TimeUnit.SECONDS.toNanos(1));
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 记录一次耗时
+     *
+     * @param nanos 耗时（纳秒）
+     */
+    public void record(long nanos) {
+        int bucket = 0;
+        while (bucket < bucketNanos.length && nanos > bucketNanos[bucket]) {
+            bucket++;
+        }
+        counts[bucket].increment();
+        sumNanos.add(nanos);
+    }
+
+    /**
+     * 记录的总次数
+     */
+    public long count() {
+        long count = 0;
+        for (LongAdder adder : counts) {
+            count += adder.sum();
+        }
+        return count;
+    }
+
+    /**
+     * 记录的总耗时（秒）
+     */
+    public double sumSeconds() {
+        return sumNanos.sum() / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    /**
+     * 按 Prometheus 文本格式输出直方图的 _bucket、_sum 和 _count 样本
+     *
+     * @param out    输出
+     * @param name   指标名称
+     * @param labels 标签，如 route="/plugin"，没有标签时为空字符串
+     */
+    void write(StringBuilder out, String name, String labels) {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i].sum();
+            String le = i < buckets.length ? Double.toString(buckets[i]) : "+Inf";
+            out.append(name).append("_bucket{").append(prefix).append("le=\"").append(le).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+        String suffix = labels.isEmpty() ? " " : "{" + labels + "} ";
+        out.append(name).append("_sum").append(suffix).append(sumSeconds()).append('\n');
+        out.append(name).append("_count").append(suffix).append(cumulative).append('\n');
+    }
+}
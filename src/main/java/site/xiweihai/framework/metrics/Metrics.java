@@ -0,0 +1,314 @@
+package site.xiweihai.framework.metrics;
+
+import org.noear.solon.core.handle.Context;
+import site.xiweihai.framework.audit.AuditLog;
+import site.xiweihai.framework.cache.PageCache;
+import site.xiweihai.framework.datasource.DataSourceManager;
+import site.xiweihai.framework.datasource.PoolMetrics;
+import site.xiweihai.framework.datasource.ReplicaRouter;
+import site.xiweihai.framework.plugin.PluginRuntime;
+import site.xiweihai.framework.service.PluginConfigService;
+import site.xiweihai.framework.utils.FileIndex;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 应用指标
+ * 按路由记录请求耗时、处理中的请求数和错误数，按路由和阶段（数据库、文件系统、模板渲染）记录耗时，
+ * 由 /metrics 以 Prometheus 文本格式输出。指标实例创建后只读取不加锁，计数全部使用 {@link LongAdder}
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+public class Metrics {
+
+    /**
+     * 数据库阶段，即连接从连接池借出到归还的时长
+     */
+    public static final String STAGE_DB = "db";
+
+    /**
+     * 文件系统阶段
+     */
+    public static final String STAGE_FS = "fs";
+
+    /**
+     * 模板渲染阶段
+     */
+    public static final String STAGE_TEMPLATE = "template";
+
+    /**
+     * 请求上下文中保存当前路由的属性名
+     */
+    static final String ROUTE_ATTR = "metrics.route";
+
+    /**
+     * 不在请求中执行（如启动加载插件、后台刷新）时使用的路由名
+     */
+    static final String NO_ROUTE = "-";
+
+    private static final Metrics global = new Metrics();
+
+    private final Map<String, RouteMetrics> routes = new ConcurrentHashMap<>();
+
+    private final Map<String, Histogram> stages = new ConcurrentHashMap<>();
+
+    /**
+     * 单个路由的指标
+     */
+    public static class RouteMetrics {
+        final String method;
+        final String route;
+        final Histogram latency = new Histogram();
+        final LongAdder inFlight = new LongAdder();
+        final LongAdder errors = new LongAdder();
+
+        RouteMetrics(String method, String route) {
+            this.method = method;
+            this.route = route;
+        }
+    }
+
+    /**
+     * 阶段计时器，关闭时把耗时记录到当前请求路由的阶段直方图
+     */
+    public static final class Timer implements AutoCloseable {
+        private final String stage;
+        private final long start = System.nanoTime();
+
+        private Timer(String stage) {
+            this.stage = stage;
+        }
+
+        @Override
+        public void close() {
+            global.recordStage(stage, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 获取全局的应用指标
+     *
+     * @return 应用指标
+     */
+    public static Metrics global() {
+        return global;
+    }
+
+    /**
+     * 开始为指定阶段计时，配合 try-with-resources 使用
+     *
+     * @param stage 阶段，{@link #STAGE_DB}、{@link #STAGE_FS} 或 {@link #STAGE_TEMPLATE}
+     * @return 计时器
+     */
+    public static Timer time(String stage) {
+        return new Timer(stage);
+    }
+
+    /**
+     * 获取路由的指标，不存在时创建
+     *
+     * @param method 请求方法
+     * @param route  路由
+     * @return 路由的指标
+     */
+    public RouteMetrics route(String method, String route) {
+        String key = method + ' ' + route;
+        RouteMetrics metrics = routes.get(key);
+        return metrics != null ? metrics : routes.computeIfAbsent(key, k -> new RouteMetrics(method, route));
+    }
+
+    /**
+     * 记录当前请求路由的阶段耗时
+     *
+     * @param stage 阶段
+     * @param nanos 耗时（纳秒）
+     */
+    public void recordStage(String stage, long nanos) {
+        Context ctx = Context.current();
+        Object route = ctx != null ? ctx.attr(ROUTE_ATTR) : null;
+        recordStage(stage, route != null ? route.toString() : NO_ROUTE, nanos);
+    }
+
+    /**
+     * 记录指定路由的阶段耗时
+     *
+     * @param stage 阶段
+     * @param route 路由
+     * @param nanos 耗时（纳秒）
+     */
+    public void recordStage(String stage, String route, long nanos) {
+        String key = stage + ' ' + route;
+        Histogram histogram = stages.get(key);
+        if (histogram == null) {
+            histogram = stages.computeIfAbsent(key, k -> new Histogram());
+        }
+        histogram.record(nanos);
+    }
+
+    /**
+     * 以 Prometheus 文本格式输出全部指标
+     *
+     * @return 指标文本
+     */
+    public String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+
+        out.append("# HELP http_server_requests_seconds Request latency by route\n");
+        out.append("# TYPE http_server_requests_seconds histogram\n");
+        for (RouteMetrics metrics : routes.values()) {
+            metrics.latency.write(out, "http_server_requests_seconds", routeLabels(metrics));
+        }
+        out.append("# HELP http_server_requests_in_flight Requests currently being handled by route\n");
+        out.append("# TYPE http_server_requests_in_flight gauge\n");
+        for (RouteMetrics metrics : routes.values()) {
+            out.append("http_server_requests_in_flight{").append(routeLabels(metrics)).append("} ")
+                    .append(metrics.inFlight.sum()).append('\n');
+        }
+        out.append("# HELP http_server_requests_errors_total Requests that failed with an exception or a 5xx status\n");
+        out.append("# TYPE http_server_requests_errors_total counter\n");
+        for (RouteMetrics metrics : routes.values()) {
+            out.append("http_server_requests_errors_total{").append(routeLabels(metrics)).append("} ")
+                    .append(metrics.errors.sum()).append('\n');
+        }
+
+        out.append("# HELP app_stage_seconds Time spent in each stage by route\n");
+        out.append("# TYPE app_stage_seconds histogram\n");
+        for (Map.Entry<String, Histogram> entry : stages.entrySet()) {
+            String key = entry.getKey();
+            int split = key.indexOf(' ');
+            String labels = "stage=\"" + escape(key.substring(0, split)) + "\",route=\"" + escape(key.substring(split + 1)) + "\"";
+            entry.getValue().write(out, "app_stage_seconds", labels);
+        }
+
+        writePool(out);
+
+        out.append("# HELP app_plugins_loaded Plugins currently loaded\n");
+        out.append("# TYPE app_plugins_loaded gauge\n");
+        out.append("app_plugins_loaded ").append(PluginRuntime.global().loadedCount()).append('\n');
+
+        PageCache pageCache = PageCache.global();
+        out.append("# HELP app_page_cache_requests_total Page cache lookups by result\n");
+        out.append("# TYPE app_page_cache_requests_total counter\n");
+        out.append("app_page_cache_requests_total{result=\"hit\"} ").append(pageCache.hits()).append('\n');
+        out.append("app_page_cache_requests_total{result=\"miss\"} ").append(pageCache.misses()).append('\n');
+        out.append("app_page_cache_requests_total{result=\"not_modified\"} ").append(pageCache.notModified()).append('\n');
+        out.append("# HELP app_page_cache_bytes Bytes held by the page cache\n");
+        out.append("# TYPE app_page_cache_bytes gauge\n");
+        out.append("app_page_cache_bytes ").append(pageCache.bytes()).append('\n');
+
+        FileIndex fileIndex = FileIndex.global();
+        out.append("# HELP app_file_index_dirs Directories held by the plugin file index\n");
+        out.append("# TYPE app_file_index_dirs gauge\n");
+        out.append("app_file_index_dirs ").append(fileIndex.size()).append('\n');
+        out.append("# HELP app_file_index_events_total File watch events processed\n");
+        out.append("# TYPE app_file_index_events_total counter\n");
+        out.append("app_file_index_events_total ").append(fileIndex.events()).append('\n');
+        out.append("# HELP app_file_index_rescans_total Full rescans of the plugin root, including overflow recovery\n");
+        out.append("# TYPE app_file_index_rescans_total counter\n");
+        out.append("app_file_index_rescans_total ").append(fileIndex.rescans()).append('\n');
+
+        PluginConfigService pluginConfig = PluginConfigService.global();
+        out.append("# HELP app_plugin_config_cached Plugins with a cached config snapshot\n");
+        out.append("# TYPE app_plugin_config_cached gauge\n");
+        out.append("app_plugin_config_cached ").append(pluginConfig.size()).append('\n');
+        out.append("# HELP app_plugin_config_reloads_total Config snapshot swaps after a config file changed\n");
+        out.append("# TYPE app_plugin_config_reloads_total counter\n");
+        out.append("app_plugin_config_reloads_total ").append(pluginConfig.reloads()).append('\n');
+
+        AuditLog audit = AuditLog.global();
+        out.append("# HELP app_audit_queue_depth Audit events waiting to be written\n");
+        out.append("# TYPE app_audit_queue_depth gauge\n");
+        out.append("app_audit_queue_depth ").append(audit.depth()).append('\n');
+        out.append("# HELP app_audit_events_total Audit events by outcome\n");
+        out.append("# TYPE app_audit_events_total counter\n");
+        out.append("app_audit_events_total{outcome=\"appended\"} ").append(audit.appended()).append('\n');
+        out.append("app_audit_events_total{outcome=\"written\"} ").append(audit.written()).append('\n');
+        out.append("app_audit_events_total{outcome=\"spilled\"} ").append(audit.spilled()).append('\n');
+        out.append("app_audit_events_total{outcome=\"replayed\"} ").append(audit.replayed()).append('\n');
+        out.append("app_audit_events_total{outcome=\"dropped\"} ").append(audit.dropped()).append('\n');
+        out.append("# HELP app_audit_batches_total Audit insert batches committed\n");
+        out.append("# TYPE app_audit_batches_total counter\n");
+        out.append("app_audit_batches_total ").append(audit.batches()).append('\n');
+
+        StartupPhases startup = StartupPhases.global();
+        out.append("# HELP app_startup_phase_seconds Duration of each startup phase\n");
+        out.append("# TYPE app_startup_phase_seconds gauge\n");
+        for (StartupPhases.Phase phase : startup.phases()) {
+            out.append("app_startup_phase_seconds{phase=\"").append(phase.name()).append("\",background=\"")
+                    .append(phase.background()).append("\"} ").append(phase.millis() / 1000.0).append('\n');
+        }
+        out.append("# HELP app_startup_ready_seconds Time from process start until the server accepted requests\n");
+        out.append("# TYPE app_startup_ready_seconds gauge\n");
+        out.append("app_startup_ready_seconds ").append(startup.readyMillis() / 1000.0).append('\n');
+        out.append("# HELP app_startup_first_request_seconds Time from process start until the first request arrived\n");
+        out.append("# TYPE app_startup_first_request_seconds gauge\n");
+        out.append("app_startup_first_request_seconds ").append(startup.firstRequestMillis() / 1000.0).append('\n');
+        return out.toString();
+    }
+
+    /**
+     * 输出连接池指标
+     */
+    private static void writePool(StringBuilder out) {
+        DataSourceManager manager = DataSourceManager.global();
+        DataSourceManager.PoolStats stats = manager.stats();
+        if (stats != null) {
+            gauge(out, "db_pool_connections_active", "Connections in use", stats.active());
+            gauge(out, "db_pool_connections_idle", "Idle connections", stats.idle());
+            gauge(out, "db_pool_connections_total", "Open connections", stats.total());
+            gauge(out, "db_pool_connections_pending", "Threads waiting for a connection", stats.waiting());
+            gauge(out, "db_pool_connections_max", "Maximum pool size", stats.max());
+        }
+        PoolMetrics metrics = manager.metrics();
+        out.append("# HELP db_pool_acquire_seconds Time to acquire a connection from the pool\n");
+        out.append("# TYPE db_pool_acquire_seconds histogram\n");
+        metrics.acquire().write(out, "db_pool_acquire_seconds", "");
+        out.append("# HELP db_pool_acquire_timeouts_total Connection acquisitions that timed out\n");
+        out.append("# TYPE db_pool_acquire_timeouts_total counter\n");
+        out.append("db_pool_acquire_timeouts_total ").append(metrics.timeouts()).append('\n');
+
+        ReplicaRouter replicas = manager.replicas();
+        if (replicas != null) {
+            List<ReplicaRouter.ReplicaStats> replicaStats = replicas.stats();
+            out.append("# HELP db_replica_up Whether the read replica passed its last health check\n");
+            out.append("# TYPE db_replica_up gauge\n");
+            for (ReplicaRouter.ReplicaStats replica : replicaStats) {
+                out.append("db_replica_up{replica=\"").append(escape(replica.name())).append("\"} ").append(replica.healthy() ? 1 : 0).append('\n');
+            }
+            out.append("# HELP db_replica_lag_seconds Replication lag reported by the last health check\n");
+            out.append("# TYPE db_replica_lag_seconds gauge\n");
+            for (ReplicaRouter.ReplicaStats replica : replicaStats) {
+                out.append("db_replica_lag_seconds{replica=\"").append(escape(replica.name())).append("\"} ").append(replica.lagMillis() / 1000.0).append('\n');
+            }
+            out.append("# HELP db_replica_connections_total Connections routed to the read replica\n");
+            out.append("# TYPE db_replica_connections_total counter\n");
+            for (ReplicaRouter.ReplicaStats replica : replicaStats) {
+                out.append("db_replica_connections_total{replica=\"").append(escape(replica.name())).append("\"} ").append(replica.routed()).append('\n');
+            }
+            out.append("# HELP db_replica_fallbacks_total Reads sent to the primary because no replica was usable\n");
+            out.append("# TYPE db_replica_fallbacks_total counter\n");
+            out.append("db_replica_fallbacks_total ").append(replicas.fallbacks()).append('\n');
+        }
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, long value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(" gauge\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static String routeLabels(RouteMetrics metrics) {
+        return "method=\"" + escape(metrics.method) + "\",route=\"" + escape(metrics.route) + "\"";
+    }
+
+    /**
+     * 转义标签值中的反斜杠、双引号和换行
+     */
+    static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,68 @@
+package site.xiweihai.framework.metrics;
+
+import org.noear.solon.annotation.Component;
+import org.noear.solon.core.handle.Action;
+import org.noear.solon.core.handle.Context;
+import org.noear.solon.core.handle.Handler;
+import org.noear.solon.core.handle.ModelAndView;
+import org.noear.solon.core.route.RouterInterceptor;
+import org.noear.solon.core.route.RouterInterceptorChain;
+
+/**
+ * 请求指标拦截器
+ * 以控制器映射的路径（如 /plugin/file/{pluginId}）作为路由名，避免路径参数导致指标数量膨胀；
+ * 控制器返回结果后记录时间点，返回视图时把之后的耗时计入模板渲染阶段
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+@Component
+public class MetricsInterceptor implements RouterInterceptor {
+
+    /**
+     * 请求上下文中保存控制器返回时间的属性名
+     */
+    private static final String RESULT_ATTR = "metrics.result";
+
+    /**
+     * 没有匹配到控制器（静态资源、404）的请求使用的路由名
+     */
+    private static final String UNMATCHED = "unmatched";
+
+    @Override
+    public void doIntercept(Context ctx, Handler mainHandler, RouterInterceptorChain chain) throws Throwable {
+        StartupPhases.global().firstRequest();
+        String route = mainHandler instanceof Action action ? action.fullName() : UNMATCHED;
+        ctx.attrSet(Metrics.ROUTE_ATTR, route);
+        Metrics.RouteMetrics metrics = Metrics.global().route(ctx.method(), route);
+        metrics.inFlight.increment();
+        long start = System.nanoTime();
+        boolean failed = false;
+        try {
+            chain.doIntercept(ctx, mainHandler);
+        } catch (Throwable e) {
+            failed = true;
+            throw e;
+        } finally {
+            long end = System.nanoTime();
+            metrics.inFlight.decrement();
+            metrics.latency.record(end - start);
+            if (failed || ctx.status() >= 500) {
+                metrics.errors.increment();
+            }
+            Object resultAt = ctx.attr(RESULT_ATTR);
+            if (resultAt instanceof Long at) {
+                Metrics.global().recordStage(Metrics.STAGE_TEMPLATE, route, end - at);
+            }
+        }
+    }
+
+    @Override
+    public Object postResult(Context ctx, Object result) throws Throwable {
+        // 视图在控制器返回之后渲染
+        if (result instanceof ModelAndView) {
+            ctx.attrSet(RESULT_ATTR, System.nanoTime());
+        }
+        return result;
+    }
+}
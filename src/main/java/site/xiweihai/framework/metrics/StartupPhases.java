@@ -0,0 +1,145 @@
+package site.xiweihai.framework.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 启动阶段计时
+ * 记录启动过程中各阶段的耗时，以及从进程启动到开始监听（就绪）、到处理第一个请求的时长。
+ * 就绪之前的阶段在主线程上执行，之后的阶段（连接池预热、表结构检查、加载插件等）在后台执行，
+ * 全部完成后输出一条汇总日志，并由 /metrics 输出
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+@Slf4j
+public class StartupPhases {
+
+    private static final StartupPhases global = new StartupPhases(ManagementFactory.getRuntimeMXBean().getStartTime());
+
+    private final long processStart;
+    private final List<Phase> phases = new CopyOnWriteArrayList<>();
+    private volatile long readyMillis = -1;
+    private volatile long firstRequestMillis = -1;
+
+    /**
+     * 阶段耗时
+     *
+     * @param name       阶段名称
+     * @param millis     耗时（毫秒）
+     * @param background 是否在就绪之后的后台执行
+     */
+    public record Phase(String name, long millis, boolean background) {
+    }
+
+    /**
+     * 阶段计时器，关闭时记录耗时
+     */
+    public final class Step implements AutoCloseable {
+        private final String name;
+        private final long start = System.nanoTime();
+
+        private Step(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void close() {
+            phases.add(new Phase(name, (System.nanoTime() - start) / 1_000_000, readyMillis >= 0));
+        }
+    }
+
+    /**
+     * 创建启动阶段计时
+     *
+     * @param processStart 进程启动时间（毫秒时间戳）
+     */
+    public StartupPhases(long processStart) {
+        this.processStart = processStart;
+    }
+
+    /**
+     * 获取全局的启动阶段计时，起点为 JVM 启动时间
+     *
+     * @return 启动阶段计时
+     */
+    public static StartupPhases global() {
+        return global;
+    }
+
+    /**
+     * 开始为一个阶段计时，配合 try-with-resources 使用
+     *
+     * @param name 阶段名称
+     * @return 计时器
+     */
+    public Step begin(String name) {
+        return new Step(name);
+    }
+
+    /**
+     * 标记应用已就绪（开始监听请求）
+     */
+    public void ready() {
+        readyMillis = System.currentTimeMillis() - processStart;
+        log.info("Ready in {} ms", readyMillis);
+    }
+
+    /**
+     * 记录第一个请求的到达时间，只有第一次调用生效
+     */
+    public void firstRequest() {
+        if (firstRequestMillis < 0) {
+            synchronized (this) {
+                if (firstRequestMillis < 0) {
+                    firstRequestMillis = System.currentTimeMillis() - processStart;
+                }
+            }
+        }
+    }
+
+    /**
+     * 后台阶段全部完成时输出汇总日志
+     */
+    public void finish() {
+        StringBuilder summary = new StringBuilder();
+        for (Phase phase : phases) {
+            summary.append(summary.isEmpty() ? "" : ", ").append(phase.name()).append('=').append(phase.millis()).append("ms");
+            if (phase.background()) {
+                summary.append("(bg)");
+            }
+        }
+        log.info("Startup finished in {} ms (ready {} ms): {}", System.currentTimeMillis() - processStart, readyMillis, summary);
+    }
+
+    /**
+     * 已记录的阶段
+     *
+     * @return 阶段耗时列表，按完成顺序
+     */
+    public List<Phase> phases() {
+        return new ArrayList<>(phases);
+    }
+
+    /**
+     * 从进程启动到就绪的时长
+     *
+     * @return 毫秒，尚未就绪时为 -1
+     */
+    public long readyMillis() {
+        return readyMillis;
+    }
+
+    /**
+     * 从进程启动到第一个请求到达的时长
+     *
+     * @return 毫秒，尚未收到请求时为 -1
+     */
+    public long firstRequestMillis() {
+        return firstRequestMillis;
+    }
+}
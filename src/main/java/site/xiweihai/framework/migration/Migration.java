@@ -0,0 +1,68 @@
+package site.xiweihai.framework.migration;
+
+import org.anyline.service.AnylineService;
+
+import java.sql.Connection;
+import java.sql.Statement;
+
+/**
+ * 数据库迁移步骤
+ * 每个步骤有唯一递增的版本号，只执行一次，执行后记录到版本表。
+ * SQL 步骤只在迁移引擎传入的连接上执行，数据库支持事务性DDL时连续的 SQL 步骤合并在一个事务中提交；
+ * 需要按数据库方言生成DDL的步骤（如建表）通过数据库框架执行，不在事务中，应当可以重复执行
+ *
+ * @param version       版本号，从1开始递增
+ * @param description   说明
+ * @param transactional 是否只使用传入的连接，可以与其他步骤合并在一个事务中
+ * @param step          迁移内容
+ * @author hai
+ * @since 2026/10/18
+ */
+public record Migration(int version, String description, boolean transactional, Step step) {
+
+    /**
+     * 迁移内容
+     */
+    @FunctionalInterface
+    public interface Step {
+
+        /**
+         * 执行迁移
+         *
+         * @param service    数据库服务，用于按方言执行DDL
+         * @param connection 迁移连接，事务性步骤的全部语句都应在该连接上执行
+         * @throws Exception 迁移失败
+         */
+        void apply(AnylineService service, Connection connection) throws Exception;
+    }
+
+    /**
+     * 创建由 SQL 语句组成的迁移步骤，语句应当在各数据库上通用，例如 CREATE INDEX
+     *
+     * @param version     版本号
+     * @param description 说明
+     * @param statements  SQL 语句
+     * @return 迁移步骤
+     */
+    public static Migration sql(int version, String description, String... statements) {
+        return new Migration(version, description, true, (service, connection) -> {
+            try (Statement statement = connection.createStatement()) {
+                for (String sql : statements) {
+                    statement.execute(sql);
+                }
+            }
+        });
+    }
+
+    /**
+     * 创建通过数据库框架执行的迁移步骤，步骤失败后会再次执行，应当可以重复执行
+     *
+     * @param version     版本号
+     * @param description 说明
+     * @param step        迁移内容
+     * @return 迁移步骤
+     */
+    public static Migration managed(int version, String description, Step step) {
+        return new Migration(version, description, false, step);
+    }
+}
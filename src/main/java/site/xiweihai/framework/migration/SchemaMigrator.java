@@ -0,0 +1,225 @@
+package site.xiweihai.framework.migration;
+
+import lombok.extern.slf4j.Slf4j;
+import org.anyline.service.AnylineService;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 数据库迁移引擎
+ * 已执行的步骤记录在版本表中，启动时只查询一次当前版本：已是最新版本时直接返回，不读取任何表结构元数据；
+ * 否则按版本号依次执行未执行的步骤。数据库支持事务性DDL（如 PostgreSQL、SQLite）时，连续的 SQL 步骤及其版本记录
+ * 在一个事务中提交，失败时整体回滚；不支持时（如 MySQL，DDL会隐式提交）每个步骤执行后立即记录版本，
+ * 失败时已完成的步骤不会重复执行。多个节点同时迁移时，版本号主键保证每个版本只记录一次：
+ * 步骤或版本记录失败后重新查询版本表，其他节点已记录这些版本时视为已执行，不作为失败
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+@Slf4j
+public class SchemaMigrator {
+
+    /**
+     * 版本表
+     */
+    public static final String VERSION_TABLE = "FRAMEWORK_SCHEMA_VERSION";
+
+    private final DataSource dataSource;
+    private final AnylineService service;
+    private final List<Migration> migrations;
+
+    /**
+     * 迁移结果
+     *
+     * @param from    迁移前的版本
+     * @param to      迁移后的版本
+     * @param applied 本次执行的步骤数
+     */
+    public record Result(int from, int to, int applied) {
+    }
+
+    /**
+     * 创建迁移引擎
+     *
+     * @param dataSource 数据源
+     * @param service    数据库服务，供需要按方言生成DDL的步骤使用
+     * @param migrations 全部迁移步骤，版本号不能重复
+     */
+    public SchemaMigrator(DataSource dataSource, AnylineService service, List<Migration> migrations) {
+        this.dataSource = dataSource;
+        this.service = service;
+        this.migrations = new ArrayList<>(migrations);
+        this.migrations.sort(Comparator.comparingInt(Migration::version));
+        for (int i = 1; i < this.migrations.size(); i++) {
+            if (this.migrations.get(i).version() == this.migrations.get(i - 1).version()) {
+                throw new IllegalArgumentException("Duplicate migration version " + this.migrations.get(i).version());
+            }
+        }
+    }
+
+    /**
+     * 最新的版本号
+     *
+     * @return 最后一个迁移步骤的版本号，没有步骤时为0
+     */
+    public int latest() {
+        return migrations.isEmpty() ? 0 : migrations.get(migrations.size() - 1).version();
+    }
+
+    /**
+     * 执行未执行的迁移步骤
+     *
+     * @return 迁移结果
+     * @throws Exception 查询版本或执行迁移失败，失败之前已提交的步骤保留
+     */
+    public Result migrate() throws Exception {
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(true);
+            try {
+                int current = currentVersion(connection);
+                if (current >= latest()) {
+                    return new Result(current, current, 0);
+                }
+                boolean ddlTransactions = connection.getMetaData().supportsDataDefinitionAndDataManipulationTransactions();
+                int version = current;
+                int applied = 0;
+                List<Migration> batch = new ArrayList<>();
+                for (Migration migration : migrations) {
+                    if (migration.version() <= current) {
+                        continue;
+                    }
+                    if (migration.transactional() && ddlTransactions) {
+                        batch.add(migration);
+                        continue;
+                    }
+                    // 不能合并到事务中的步骤执行前，先提交之前积累的事务性步骤
+                    version = commit(connection, batch, version);
+                    applied += batch.size();
+                    batch.clear();
+                    version = applyOnce(connection, migration);
+                    applied++;
+                }
+                version = commit(connection, batch, version);
+                applied += batch.size();
+                log.info("Schema migrated from version {} to {}, {} step(s) applied", current, version, applied);
+                return new Result(current, version, applied);
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    /**
+     * 在一个事务中执行一批步骤并记录版本
+     *
+     * @return 提交后的版本号
+     */
+    private int commit(Connection connection, List<Migration> batch, int version) throws Exception {
+        if (batch.isEmpty()) {
+            return version;
+        }
+        int target = batch.get(batch.size() - 1).version();
+        connection.setAutoCommit(false);
+        try {
+            for (Migration migration : batch) {
+                apply(connection, migration);
+            }
+            connection.commit();
+        } catch (Exception e) {
+            connection.rollback();
+            connection.setAutoCommit(true);
+            appliedElsewhere(connection, target, e);
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        return target;
+    }
+
+    /**
+     * 在自动提交模式下执行一个不能合并到事务中的步骤
+     *
+     * @return 执行后的版本号
+     */
+    private int applyOnce(Connection connection, Migration migration) throws Exception {
+        try {
+            apply(connection, migration);
+        } catch (Exception e) {
+            appliedElsewhere(connection, migration.version(), e);
+        }
+        return migration.version();
+    }
+
+    /**
+     * 步骤执行或版本记录失败后重新查询版本表：其他节点同时迁移并已记录到目标版本时视为已执行（如版本号主键冲突、
+     * 索引已被对方创建），否则抛出原来的异常
+     */
+    private static void appliedElsewhere(Connection connection, int target, Exception e) throws Exception {
+        int recorded;
+        try {
+            recorded = currentVersion(connection);
+        } catch (SQLException check) {
+            e.addSuppressed(check);
+            throw e;
+        }
+        if (recorded < target) {
+            throw e;
+        }
+        log.info("Schema migration {} already applied by another node: {}", target, e.getMessage());
+    }
+
+    /**
+     * 执行一个步骤并写入版本记录，自动提交模式下立即生效
+     */
+    private void apply(Connection connection, Migration migration) throws Exception {
+        long start = System.nanoTime();
+        migration.step().apply(service, connection);
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO " + VERSION_TABLE + " (VERSION, DESCRIPTION, INSTALLED_AT) VALUES (?, ?, ?)")) {
+            statement.setInt(1, migration.version());
+            statement.setString(2, migration.description());
+            statement.setLong(3, System.currentTimeMillis());
+            statement.executeUpdate();
+        }
+        log.info("Schema migration {} ({}) applied in {} ms", migration.version(), migration.description(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * 查询当前版本，版本表不存在时创建并返回0
+     *
+     * @param connection 连接
+     * @return 当前版本
+     * @throws SQLException 创建版本表失败
+     */
+    private static int currentVersion(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT MAX(VERSION) FROM " + VERSION_TABLE)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        } catch (SQLException e) {
+            // 版本表不存在：首次迁移，或从没有迁移引擎的版本升级
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE " + VERSION_TABLE
+                        + " (VERSION INT NOT NULL PRIMARY KEY, DESCRIPTION VARCHAR(200), INSTALLED_AT BIGINT)");
+            } catch (SQLException create) {
+                // 其他节点同时创建了版本表
+                try (Statement statement = connection.createStatement();
+                     ResultSet rs = statement.executeQuery("SELECT MAX(VERSION) FROM " + VERSION_TABLE)) {
+                    return rs.next() ? rs.getInt(1) : 0;
+                } catch (SQLException retry) {
+                    create.addSuppressed(retry);
+                    throw create;
+                }
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package site.xiweihai.framework.plugin;
+
+import lombok.extern.slf4j.Slf4j;
+import org.noear.solon.core.Plugin;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 已加载到运行时中的插件
+ * 持有插件独立的类加载器以及插件包中声明的 Solon 插件实例
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+@Slf4j
+public class LoadedPlugin implements Closeable {
+
+    private final long pluginId;
+    private final String path;
+    private final PluginClassLoader classLoader;
+    private final List<Plugin> plugins;
+    private final long loadMillis;
+
+    public LoadedPlugin(long pluginId, String path, PluginClassLoader classLoader, List<Plugin> plugins, long loadMillis) {
+        this.pluginId = pluginId;
+        this.path = path;
+        this.classLoader = classLoader;
+        this.plugins = plugins;
+        this.loadMillis = loadMillis;
+    }
+
+    public long getPluginId() {
+        return pluginId;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public PluginClassLoader getClassLoader() {
+        return classLoader;
+    }
+
+    public List<Plugin> getPlugins() {
+        return plugins;
+    }
+
+    public long getLoadMillis() {
+        return loadMillis;
+    }
+
+    /**
+     * 停止插件并释放类加载器
+     * 先对所有 Solon 插件执行 prestop，再逐个 stop，最后关闭类加载器以释放 jar 文件句柄。
+     * 插件在 start 中注册的 Bean 和路由不会被自动移除，需由插件在 stop 中自行移除
+     */
+    @Override
+    public void close() throws IOException {
+        for (Plugin plugin : plugins) {
+            try {
+                plugin.prestop();
+            } catch (Throwable e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+        for (Plugin plugin : plugins) {
+            try {
+                plugin.stop();
+            } catch (Throwable e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+        classLoader.close();
+    }
+}
@@ -0,0 +1,102 @@
+package site.xiweihai.framework.plugin;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * 插件类加载器
+ * 采用子优先（child-first）的委派顺序，插件包内的类优先于宿主应用加载，
+ * 使不同插件可以依赖同一个库的不同版本；JDK 和框架共享的包仍然委派给父加载器，
+ * 保证插件与宿主之间交换的类型（如 Solon 的 Plugin 接口）是同一份
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+public class PluginClassLoader extends URLClassLoader {
+
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    /**
+     * 始终由父加载器加载的包前缀
+     */
+    private static final String[] PARENT_FIRST_PACKAGES = {
+            "java.", "javax.", "jdk.", "sun.", "com.sun.",
+            "org.noear.solon.", "org.noear.snack.",
+            "org.slf4j.", "ch.qos.logback.",
+            "org.anyline.",
+            "site.xiweihai.framework."
+    };
+
+    private final long pluginId;
+
+    /**
+     * 创建插件类加载器
+     *
+     * @param pluginId 插件编号
+     * @param urls     插件包地址
+     * @param parent   父加载器，一般为宿主应用的类加载器
+     */
+    public PluginClassLoader(long pluginId, URL[] urls, ClassLoader parent) {
+        super("plugin-" + pluginId, urls, parent);
+        this.pluginId = pluginId;
+    }
+
+    public long getPluginId() {
+        return pluginId;
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+        if (isParentFirst(name)) {
+            return super.loadClass(name, resolve);
+        }
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> clazz = findLoadedClass(name);
+            if (clazz == null) {
+                try {
+                    // 优先从插件包中查找
+                    clazz = findClass(name);
+                } catch (ClassNotFoundException e) {
+                    // 插件包中没有时再委派给父加载器
+                    clazz = getParent().loadClass(name);
+                }
+            }
+            if (resolve) {
+                resolveClass(clazz);
+            }
+            return clazz;
+        }
+    }
+
+    @Override
+    public URL getResource(String name) {
+        URL url = findResource(name);
+        return url != null ? url : super.getResource(name);
+    }
+
+    @Override
+    public Enumeration<URL> getResources(String name) throws IOException {
+        // 插件自己的资源排在前面
+        List<URL> urls = new ArrayList<>(Collections.list(findResources(name)));
+        if (getParent() != null) {
+            urls.addAll(Collections.list(getParent().getResources(name)));
+        }
+        return Collections.enumeration(urls);
+    }
+
+    private static boolean isParentFirst(String name) {
+        for (String prefix : PARENT_FIRST_PACKAGES) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
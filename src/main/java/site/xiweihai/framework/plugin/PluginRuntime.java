@@ -0,0 +1,334 @@
+package site.xiweihai.framework.plugin;
+
+import lombok.extern.slf4j.Slf4j;
+import org.anyline.entity.DataRow;
+import org.anyline.entity.DataSet;
+import org.anyline.proxy.ServiceProxy;
+import org.anyline.service.AnylineService;
+import org.noear.solon.Solon;
+import org.noear.solon.core.Plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * 插件运行时
+ * 负责把已启用的插件包加载到各自独立的类加载器中，并启动包中声明的 Solon 插件。
+ * 应用启动时在虚拟线程上并行加载全部已启用插件，启用/禁用插件时热加载/卸载单个插件，无需重启应用。
+ * 卸载时运行时只依次执行插件的 prestop、stop 并关闭类加载器，不跟踪插件在 start 中注册到容器的 Bean 和路由，
+ * 插件必须在 stop 中自行移除这些注册（如 Solon.app().router().remove(...)），否则卸载后仍会引用旧的类加载器
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+@Slf4j
+public class PluginRuntime {
+
+    /**
+     * Solon 插件声明文件所在目录
+     */
+    private static final String SOLON_META_DIR = "META-INF/solon/";
+
+    private static final PluginRuntime global = new PluginRuntime();
+
+    private final Map<Long, LoadedPlugin> loaded = new ConcurrentHashMap<>();
+
+    /**
+     * 每个插件一把锁，同一插件的加载和卸载依次执行，不同插件互不影响
+     */
+    private final Map<Long, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+    private volatile LoadReport lastReport;
+
+    /**
+     * 批量加载的统计结果
+     *
+     * @param total      需要加载的插件数
+     * @param loaded     加载成功的插件数
+     * @param failed     加载失败的插件数
+     * @param wallMillis 整体耗时（毫秒）
+     * @param sumMillis  各插件加载耗时之和（毫秒），与整体耗时的比值即并行度
+     * @param maxMillis  单个插件的最大加载耗时（毫秒）
+     */
+    public record LoadReport(int total, int loaded, int failed, long wallMillis, long sumMillis, long maxMillis) {
+    }
+
+    /**
+     * 获取全局的插件运行时
+     *
+     * @return 插件运行时
+     */
+    public static PluginRuntime global() {
+        return global;
+    }
+
+    /**
+     * 从数据库读取所有已启用的插件并并行加载
+     *
+     * @return 加载统计结果，数据库未初始化时返回 null
+     */
+    public LoadReport loadEnabled() {
+        AnylineService service = ServiceProxy.service("db");
+        if (service == null) {
+            return null;
+        }
+        try {
+            DataSet rows = service.querys("FRAMEWORK_PLUGIN", "PLUGIN_STATUS:1");
+            return loadAll(rows);
+        } catch (Exception e) {
+            // 插件表尚未创建等情况下不影响应用启动
+            log.error(e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * 在虚拟线程上并行加载一批插件，单个插件加载失败不影响其他插件
+     *
+     * @param rows 插件数据行，需包含 ID 和 PLUGIN_PATH，缺少时计为加载失败
+     * @return 加载统计结果
+     */
+    public LoadReport loadAll(Collection<DataRow> rows) {
+        long start = System.nanoTime();
+        List<Future<LoadedPlugin>> futures = new ArrayList<>();
+        int invalid = 0;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (DataRow row : rows) {
+                Long pluginId = row.getLong("ID", (Long) null);
+                String path = row.getString("PLUGIN_PATH");
+                if (pluginId == null || path == null) {
+                    log.warn("Skipping plugin row without ID or PLUGIN_PATH: {}", row);
+                    invalid++;
+                    continue;
+                }
+                futures.add(executor.submit(() -> load(pluginId, path)));
+            }
+        }
+        int success = 0;
+        long sumMillis = 0;
+        long maxMillis = 0;
+        for (Future<LoadedPlugin> future : futures) {
+            try {
+                LoadedPlugin plugin = future.get();
+                success++;
+                sumMillis += plugin.getLoadMillis();
+                maxMillis = Math.max(maxMillis, plugin.getLoadMillis());
+            } catch (Exception e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+        long wallMillis = (System.nanoTime() - start) / 1_000_000;
+        int total = futures.size() + invalid;
+        LoadReport report = new LoadReport(total, success, total - success, wallMillis, sumMillis, maxMillis);
+        lastReport = report;
+        log.info("Plugin runtime loaded {}/{} plugins in {} ms (sum {} ms, max {} ms, failed {})",
+                report.loaded(), report.total(), report.wallMillis(), report.sumMillis(), report.maxMillis(), report.failed());
+        return report;
+    }
+
+    /**
+     * 加载单个插件；插件已加载时先卸载旧的实例。同一插件并发加载时依次执行，只保留最后一个实例
+     *
+     * @param pluginId 插件编号
+     * @param path     插件包路径
+     * @return 已加载的插件
+     */
+    public LoadedPlugin load(long pluginId, String path) {
+        ReentrantLock lock = lock(pluginId);
+        try {
+            doUnload(pluginId);
+            return doLoad(pluginId, path);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private LoadedPlugin doLoad(long pluginId, String path) {
+        long start = System.nanoTime();
+        File jar = new File(path);
+        if (!jar.isFile()) {
+            throw new IllegalStateException("Plugin jar not found: " + path);
+        }
+        PluginClassLoader classLoader = null;
+        List<Plugin> started = new ArrayList<>();
+        try {
+            classLoader = new PluginClassLoader(pluginId, new URL[]{jar.toURI().toURL()}, PluginRuntime.class.getClassLoader());
+            for (String className : findPluginClasses(jar)) {
+                Plugin plugin = (Plugin) classLoader.loadClass(className).getDeclaredConstructor().newInstance();
+                plugin.start(Solon.context());
+                started.add(plugin);
+            }
+            long loadMillis = (System.nanoTime() - start) / 1_000_000;
+            LoadedPlugin plugin = new LoadedPlugin(pluginId, path, classLoader, started, loadMillis);
+            loaded.put(pluginId, plugin);
+            log.info("Plugin {} loaded from {} in {} ms", pluginId, path, loadMillis);
+            return plugin;
+        } catch (Throwable e) {
+            // 启动失败时回收已启动的部分，避免类加载器泄漏
+            if (classLoader != null) {
+                try {
+                    new LoadedPlugin(pluginId, path, classLoader, started, 0).close();
+                } catch (IOException ex) {
+                    e.addSuppressed(ex);
+                }
+            }
+            throw new RuntimeException("Plugin " + pluginId + " load failed: " + path, e);
+        }
+    }
+
+    /**
+     * 卸载插件，插件未加载时不做任何操作
+     *
+     * @param pluginId 插件编号
+     */
+    public void unload(long pluginId) {
+        ReentrantLock lock = lock(pluginId);
+        try {
+            doUnload(pluginId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 卸载插件并丢弃插件的锁，插件删除后调用
+     *
+     * @param pluginId 插件编号
+     */
+    public void remove(long pluginId) {
+        ReentrantLock lock = lock(pluginId);
+        try {
+            doUnload(pluginId);
+            // 等待这把锁的线程拿到锁后会发现锁已移除，改用新的锁
+            locks.remove(pluginId, lock);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void doUnload(long pluginId) {
+        LoadedPlugin plugin = loaded.remove(pluginId);
+        if (plugin != null) {
+            try {
+                plugin.close();
+                log.info("Plugin {} unloaded", pluginId);
+            } catch (IOException e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 当前已加载的插件数
+     *
+     * @return 插件数
+     */
+    public int loadedCount() {
+        return loaded.size();
+    }
+
+    /**
+     * 判断插件是否已加载
+     *
+     * @param pluginId 插件编号
+     * @return 是否已加载
+     */
+    public boolean isLoaded(long pluginId) {
+        return loaded.containsKey(pluginId);
+    }
+
+    /**
+     * 获取已加载的插件
+     *
+     * @param pluginId 插件编号
+     * @return 已加载的插件，未加载时返回 null
+     */
+    public LoadedPlugin get(long pluginId) {
+        return loaded.get(pluginId);
+    }
+
+    /**
+     * 获取最近一次批量加载的统计结果
+     *
+     * @return 统计结果，尚未批量加载时返回 null
+     */
+    public LoadReport getLastReport() {
+        return lastReport;
+    }
+
+    /**
+     * 卸载全部插件，应用停止时调用
+     */
+    public void unloadAll() {
+        for (Long pluginId : new ArrayList<>(loaded.keySet())) {
+            unload(pluginId);
+        }
+    }
+
+    /**
+     * 获取并锁定插件的锁；锁在等待期间被 remove 丢弃时重新获取
+     */
+    private ReentrantLock lock(long pluginId) {
+        while (true) {
+            // 加载过程会阻塞在文件读取和插件启动上，用 ReentrantLock 避免固定虚拟线程的载体线程
+            ReentrantLock lock = locks.computeIfAbsent(pluginId, id -> new ReentrantLock());
+            lock.lock();
+            if (locks.get(pluginId) == lock) {
+                return lock;
+            }
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 读取插件包中 META-INF/solon/*.properties 声明的 Solon 插件类，按优先级从高到低排序
+     */
+    private static List<String> findPluginClasses(File jar) throws IOException {
+        List<Properties> declarations = new ArrayList<>();
+        try (JarFile jarFile = new JarFile(jar)) {
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (name.startsWith(SOLON_META_DIR) && name.endsWith(".properties")) {
+                    Properties props = new Properties();
+                    try (InputStream in = jarFile.getInputStream(entry)) {
+                        props.load(in);
+                    }
+                    if (props.getProperty("solon.plugin") != null) {
+                        declarations.add(props);
+                    }
+                }
+            }
+        }
+        declarations.sort((a, b) -> Integer.compare(priority(b), priority(a)));
+        List<String> classNames = new ArrayList<>();
+        for (Properties props : declarations) {
+            classNames.add(props.getProperty("solon.plugin").trim());
+        }
+        return classNames;
+    }
+
+    private static int priority(Properties props) {
+        try {
+            return Integer.parseInt(props.getProperty("solon.plugin.priority", "0").trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package site.xiweihai.framework.service;
+
+/**
+ * 批量操作中单个插件的处理结果
+ *
+ * @param pluginId 插件编号
+ * @param success  是否处理成功
+ * @param message  结果消息的国际化键，与单个操作重定向时的 errorMsg 相同
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+public record BulkItem(long pluginId, boolean success, String message) {
+
+    static BulkItem ok(long pluginId, String message) {
+        return new BulkItem(pluginId, true, message);
+    }
+
+    static BulkItem fail(long pluginId, String message) {
+        return new BulkItem(pluginId, false, message);
+    }
+}
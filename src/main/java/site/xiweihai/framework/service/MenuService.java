@@ -0,0 +1,514 @@
+package site.xiweihai.framework.service;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.anyline.data.param.ConfigStore;
+import org.anyline.data.param.init.DefaultConfigStore;
+import org.anyline.entity.Compare;
+import org.anyline.entity.DataRow;
+import org.anyline.entity.DataSet;
+import org.anyline.proxy.ServiceProxy;
+import org.anyline.service.AnylineService;
+import site.xiweihai.framework.datasource.DataSourceManager;
+import site.xiweihai.framework.utils.LongMap;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 菜单服务
+ * 首次访问时一次性加载 FRAMEWORK_MENU，在内存中按菜单编号和父菜单编号建立索引（以 long 为键，不装箱），
+ * 并预先生成按 MENU_ORDER 排序、只包含启用菜单的菜单树及其 JSON，请求时直接返回，不再访问数据库。
+ * 菜单变化时只重新生成变化节点到根节点路径上的部分，其余子树沿用已生成的结果。
+ * 增量刷新的水位线只由从数据库读到的数据行推进，并向前回看 {@link #REFRESH_WINDOW_MILLIS}
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+@Slf4j
+public class MenuService {
+
+    /**
+     * 菜单表名
+     */
+    public static final String TABLE = "FRAMEWORK_MENU";
+
+    /**
+     * 启用状态
+     */
+    public static final int STATUS_ENABLED = 1;
+
+    /**
+     * 顶级菜单的父菜单编号
+     */
+    private static final long ROOT = 0;
+
+    /**
+     * 增量刷新的回看时间（毫秒），与 {@link PluginRegistry#REFRESH_WINDOW_MILLIS} 相同
+     */
+    static final long REFRESH_WINDOW_MILLIS = PluginRegistry.REFRESH_WINDOW_MILLIS;
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private static final Comparator<Node> ORDER = Comparator.<Node>comparingInt(node -> node.order).thenComparingLong(node -> node.id);
+
+    private static final MenuService global = new MenuService("db");
+
+    private final String datasource;
+    private LongMap<Node> nodes = new LongMap<>();
+    private LongMap<List<Node>> children = new LongMap<>();
+    private volatile Snapshot snapshot = new Snapshot(Collections.emptyList(), "[]", 0);
+    private volatile boolean loaded;
+    private Date lastUpdateTime;
+    private ScheduledExecutorService refresher;
+
+    /**
+     * 菜单树节点
+     *
+     * @param id       菜单编号
+     * @param name     菜单名称
+     * @param url      菜单URL
+     * @param icon     菜单图标
+     * @param type     菜单类型
+     * @param order    菜单排序
+     * @param children 已排序的启用子菜单
+     */
+    public record Menu(long id, String name, String url, String icon, int type, int order, List<Menu> children) {
+    }
+
+    /**
+     * 对外发布的菜单树，生成后不再修改
+     */
+    private record Snapshot(List<Menu> tree, String json, long version) {
+    }
+
+    /**
+     * 菜单索引节点，menu 和 json 为缓存的子树结果，为 null 时表示需要重新生成
+     */
+    private static final class Node {
+        final long id;
+        DataRow row;
+        long parentId;
+        int order;
+        boolean enabled;
+        Menu menu;
+        String json;
+
+        Node(long id) {
+            this.id = id;
+        }
+    }
+
+    /**
+     * 创建菜单服务
+     *
+     * @param datasource 数据源标识
+     */
+    public MenuService(String datasource) {
+        this.datasource = datasource;
+    }
+
+    /**
+     * 获取全局的菜单服务
+     *
+     * @return 菜单服务
+     */
+    public static MenuService global() {
+        return global;
+    }
+
+    /**
+     * 获取启用的菜单树
+     *
+     * @return 按 MENU_ORDER 排序的顶级菜单，不可修改
+     */
+    public List<Menu> tree() {
+        ensureLoaded();
+        return snapshot.tree();
+    }
+
+    /**
+     * 获取预先序列化的启用菜单树 JSON
+     *
+     * @return 菜单树 JSON 数组
+     */
+    public String treeJson() {
+        ensureLoaded();
+        return snapshot.json();
+    }
+
+    /**
+     * 获取菜单树版本号，菜单每变化一次加一
+     *
+     * @return 菜单树版本号
+     */
+    public long version() {
+        return snapshot.version();
+    }
+
+    /**
+     * 根据菜单编号获取菜单，返回的是副本，修改后需调用 {@link #update(DataRow)} 才会生效
+     *
+     * @param menuId 菜单编号
+     * @return 菜单数据行，不存在时返回 null
+     */
+    public synchronized DataRow get(long menuId) {
+        ensureLoaded();
+        Node node = nodes.get(menuId);
+        return node != null ? copy(node.row) : null;
+    }
+
+    /**
+     * 新增菜单，插入数据库后更新菜单树
+     *
+     * @param row 菜单数据行
+     */
+    public synchronized void add(DataRow row) {
+        ensureLoaded();
+        row.put("UPDATE_TIME", LocalDateTime.now());
+        service().insert(TABLE, row);
+        cache(row);
+        publish();
+    }
+
+    /**
+     * 修改菜单，更新数据库后更新菜单树
+     *
+     * @param row 菜单数据行，需包含 ID
+     */
+    public synchronized void update(DataRow row) {
+        ensureLoaded();
+        row.put("UPDATE_TIME", LocalDateTime.now());
+        service().update(TABLE, row);
+        cache(row);
+        publish();
+    }
+
+    /**
+     * 删除菜单，删除数据库记录后更新菜单树，其子菜单随之从菜单树中隐藏
+     *
+     * @param row 菜单数据行，需包含 ID
+     */
+    public synchronized void delete(DataRow row) {
+        ensureLoaded();
+        service().delete(TABLE, row);
+        evict(row.getLong("ID"));
+        publish();
+    }
+
+    /**
+     * 丢弃内存中的数据，下次访问时重新从数据库加载。
+     * 重新加载完成前仍发布原来的菜单树，不会出现空菜单
+     */
+    public synchronized void invalidate() {
+        loaded = false;
+    }
+
+    /**
+     * 从数据库增量刷新：拉取 UPDATE_TIME 不早于水位线减去回看时间的数据行，更新时间不晚于内存中的行跳过，
+     * 没有变化时不重新发布菜单树，版本号不变；再比较数据库与内存中的菜单编号，
+     * 不一致（其他节点删除了菜单）时从主库全量重新加载。增量查询读只读副本
+     */
+    public synchronized void refresh() {
+        if (!loaded) {
+            ensureLoaded();
+            return;
+        }
+        boolean changed = false;
+        if (lastUpdateTime != null) {
+            ConfigStore configs = new DefaultConfigStore();
+            configs.and(Compare.GREAT_EQUAL, "UPDATE_TIME", new Date(lastUpdateTime.getTime() - REFRESH_WINDOW_MILLIS));
+            DataSet rows = reader().querys(TABLE, configs);
+            for (DataRow row : rows) {
+                if (!isCurrent(row)) {
+                    cache(row);
+                    changed = true;
+                }
+                advance(row);
+            }
+        }
+        try {
+            if (!sameIds(ids())) {
+                invalidate();
+                ensureLoaded();
+                return;
+            }
+        } catch (SQLException e) {
+            log.warn("Menu ids not compared: {}", e.getMessage());
+        }
+        if (changed) {
+            publish();
+        }
+    }
+
+    /**
+     * 判断数据行是否不比内存中的新：更新时间不晚于内存中的行。
+     * 回看窗口内的行每次都会被查回来，相同的行不能再触发重新生成；副本延迟返回的旧数据行也不覆盖内存
+     */
+    private boolean isCurrent(DataRow row) {
+        Node node = nodes.get(row.getLong("ID"));
+        if (node == null || node.row == null) {
+            return false;
+        }
+        Date updateTime = row.getDate("UPDATE_TIME");
+        Date currentUpdateTime = node.row.getDate("UPDATE_TIME");
+        return updateTime != null && currentUpdateTime != null && !updateTime.after(currentUpdateTime);
+    }
+
+    /**
+     * 读取数据库中的全部菜单编号，只查询主键列。
+     * 读主库：本节点的新增和删除立即写入内存，副本有延迟时两边的编号总是不一致，每次刷新都会全量重新加载
+     */
+    private long[] ids() throws SQLException {
+        DataSource dataSource = DataSourceManager.global().dataSource();
+        List<Long> ids = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT ID FROM " + TABLE)) {
+            while (rs.next()) {
+                ids.add(rs.getLong(1));
+            }
+        }
+        return ids.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private boolean sameIds(long[] ids) {
+        if (ids.length != nodes.size()) {
+            return false;
+        }
+        for (long id : ids) {
+            if (nodes.get(id) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 开启定时刷新，用于多节点部署时感知其他节点的写入
+     *
+     * @param intervalMillis 刷新间隔（毫秒），小于等于0时不开启
+     */
+    public synchronized void startRefresh(long intervalMillis) {
+        if (intervalMillis <= 0 || refresher != null) {
+            return;
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().daemon().name("menu-refresh").factory());
+        refresher.scheduleWithFixedDelay(() -> {
+            try {
+                if (ServiceProxy.service(datasource) != null) {
+                    refresh();
+                }
+            } catch (Exception e) {
+                log.error(e.getMessage(), e);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 首次访问时从数据库全量加载并生成菜单树。
+     * 在新的索引中生成完整的菜单树后才发布，重新加载期间读操作仍拿到原来的菜单树
+     */
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            DataSet rows = service().querys(TABLE);
+            nodes = new LongMap<>();
+            children = new LongMap<>();
+            lastUpdateTime = null;
+            for (DataRow row : rows) {
+                cache(row);
+                advance(row);
+            }
+            publish();
+            loaded = true;
+            log.info("Menu tree loaded {} menus", nodes.size());
+        }
+    }
+
+    /**
+     * 写入或替换菜单节点，并把节点原位置和新位置到根节点路径上的缓存结果标记为需要重新生成
+     */
+    private void cache(DataRow row) {
+        DataRow value = copy(row);
+        long menuId = value.getLong("ID");
+        Node node = nodes.get(menuId);
+        if (node == null) {
+            node = new Node(menuId);
+            nodes.put(menuId, node);
+        } else {
+            siblings(node.parentId).remove(node);
+            invalidatePath(node.parentId);
+        }
+        node.row = value;
+        node.parentId = parentOf(value, menuId);
+        node.order = value.getInt("MENU_ORDER", 0);
+        node.enabled = value.getInt("MENU_STATUS", 0) == STATUS_ENABLED;
+        node.menu = null;
+        node.json = null;
+        insertSorted(siblings(node.parentId), node);
+        invalidatePath(node.parentId);
+    }
+
+    /**
+     * 按从数据库读到的数据行推进增量刷新的水位线，本节点写入时取自本机时钟的更新时间不推进水位线
+     */
+    private void advance(DataRow row) {
+        Date updateTime = row.getDate("UPDATE_TIME");
+        if (updateTime != null && (lastUpdateTime == null || updateTime.after(lastUpdateTime))) {
+            lastUpdateTime = updateTime;
+        }
+    }
+
+    private void evict(long menuId) {
+        Node node = nodes.remove(menuId);
+        if (node != null) {
+            siblings(node.parentId).remove(node);
+            invalidatePath(node.parentId);
+        }
+    }
+
+    /**
+     * 从指定节点向上清除缓存结果，步数不超过节点总数，数据中存在环时也能结束
+     */
+    private void invalidatePath(long menuId) {
+        long current = menuId;
+        for (int steps = 0; current != ROOT && steps <= nodes.size(); steps++) {
+            Node node = nodes.get(current);
+            if (node == null) {
+                return;
+            }
+            node.menu = null;
+            node.json = null;
+            current = node.parentId;
+        }
+    }
+
+    /**
+     * 从顶级菜单开始生成菜单树，缓存结果仍有效的子树直接复用。
+     * 只有从根节点可达的节点会被访问，数据中的环不会导致无限递归
+     */
+    private void publish() {
+        List<Menu> tree = new ArrayList<>();
+        StringBuilder json = new StringBuilder("[");
+        for (Node root : childrenOf(ROOT)) {
+            if (root.enabled) {
+                render(root);
+                tree.add(root.menu);
+                json.append(tree.size() > 1 ? "," : "").append(root.json);
+            }
+        }
+        json.append(']');
+        snapshot = new Snapshot(Collections.unmodifiableList(tree), json.toString(), snapshot.version() + 1);
+    }
+
+    private void render(Node node) {
+        if (node.menu != null) {
+            return;
+        }
+        List<Node> visible = new ArrayList<>();
+        List<Menu> menus = new ArrayList<>();
+        for (Node child : childrenOf(node.id)) {
+            if (child.enabled) {
+                render(child);
+                visible.add(child);
+                menus.add(child.menu);
+            }
+        }
+        DataRow row = node.row;
+        node.menu = new Menu(node.id, row.getString("MENU_NAME"), row.getString("MENU_URL"), row.getString("MENU_ICON"),
+                row.getInt("MENU_TYPE", 0), node.order, Collections.unmodifiableList(menus));
+        node.json = toJson(node.menu, visible);
+    }
+
+    /**
+     * 序列化单个菜单，子菜单直接拼接已序列化的结果
+     */
+    private static String toJson(Menu menu, List<Node> visible) {
+        StringWriter writer = new StringWriter();
+        try (JsonGenerator generator = jsonFactory.createGenerator(writer)) {
+            generator.writeStartObject();
+            generator.writeNumberField("id", menu.id());
+            generator.writeStringField("name", menu.name());
+            generator.writeStringField("url", menu.url());
+            generator.writeStringField("icon", menu.icon());
+            generator.writeNumberField("type", menu.type());
+            generator.writeNumberField("order", menu.order());
+            generator.writeArrayFieldStart("children");
+            for (Node child : visible) {
+                generator.writeRawValue(child.json);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    private List<Node> siblings(long parentId) {
+        List<Node> list = children.get(parentId);
+        if (list == null) {
+            list = new ArrayList<>();
+            children.put(parentId, list);
+        }
+        return list;
+    }
+
+    private List<Node> childrenOf(long parentId) {
+        List<Node> list = children.get(parentId);
+        return list != null ? list : Collections.emptyList();
+    }
+
+    private static void insertSorted(List<Node> list, Node node) {
+        int index = Collections.binarySearch(list, node, ORDER);
+        list.add(index < 0 ? -index - 1 : index, node);
+    }
+
+    /**
+     * 父菜单编号为空、为0或指向自身时视为顶级菜单
+     */
+    private static long parentOf(DataRow row, long menuId) {
+        long parentId = row.getLong("PARENT_ID", ROOT);
+        return parentId == menuId ? ROOT : parentId;
+    }
+
+    private AnylineService service() {
+        return ServiceProxy.service(datasource);
+    }
+
+    /**
+     * 能容忍复制延迟的查询使用的服务：默认数据源配置了只读副本时读副本
+     */
+    private AnylineService reader() {
+        return ServiceProxy.service(DataSourceManager.DEFAULT_KEY.equals(datasource) ? DataSourceManager.global().readKey() : datasource);
+    }
+
+    private static DataRow copy(DataRow row) {
+        DataRow copy = new DataRow();
+        copy.putAll(row);
+        return copy;
+    }
+}
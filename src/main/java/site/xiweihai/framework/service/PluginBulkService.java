@@ -0,0 +1,229 @@
+package site.xiweihai.framework.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.anyline.entity.DataRow;
+import site.xiweihai.framework.plugin.PluginRuntime;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 插件批量操作
+ * 批量启用、禁用、删除插件时，数据库修改在一个事务中以一条批量语句完成，不再每个插件查询一次、整行更新一次；
+ * 删除时事务提交后插件文件在虚拟线程上并行删除。每个插件的处理结果单独返回，单个插件失败不影响其他插件
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+@Slf4j
+public class PluginBulkService {
+
+    private static final PluginBulkService global = new PluginBulkService(PluginRegistry.global(), PluginRuntime.global());
+
+    private final PluginRegistry registry;
+    private final PluginRuntime runtime;
+
+    /**
+     * 创建插件批量操作服务
+     *
+     * @param registry 插件注册表
+     * @param runtime  插件运行时
+     */
+    public PluginBulkService(PluginRegistry registry, PluginRuntime runtime) {
+        this.registry = registry;
+        this.runtime = runtime;
+    }
+
+    /**
+     * 获取全局的插件批量操作服务
+     *
+     * @return 插件批量操作服务
+     */
+    public static PluginBulkService global() {
+        return global;
+    }
+
+    /**
+     * 批量启用插件：先逐个热加载，加载成功的插件在一个事务中修改为启用状态；事务失败时撤销本次加载
+     *
+     * @param pluginIds 插件编号，重复的编号只处理一次
+     * @return 每个插件的处理结果，顺序与传入的编号一致
+     */
+    public List<BulkItem> enable(List<Long> pluginIds) {
+        Map<Long, BulkItem> results = new LinkedHashMap<>();
+        List<Long> loaded = new ArrayList<>();
+        for (long pluginId : distinct(pluginIds)) {
+            DataRow row = registry.get(pluginId);
+            if (row == null) {
+                results.put(pluginId, BulkItem.fail(pluginId, "plugin.not_exist"));
+                continue;
+            }
+            if (isVerifying(row)) {
+                results.put(pluginId, BulkItem.fail(pluginId, "plugin.verifying"));
+                continue;
+            }
+            try {
+                runtime.load(pluginId, row.getString("PLUGIN_PATH"));
+                loaded.add(pluginId);
+                results.put(pluginId, null);
+            } catch (Exception e) {
+                log.error(e.getMessage(), e);
+                results.put(pluginId, BulkItem.fail(pluginId, "plugin.enable_fail"));
+            }
+        }
+        try {
+            Set<Long> updated = new HashSet<>(registry.updateStatus(loaded, 1));
+            for (long pluginId : loaded) {
+                if (updated.contains(pluginId)) {
+                    results.put(pluginId, BulkItem.ok(pluginId, "plugin.enable_success"));
+                } else {
+                    // 加载期间被其他请求删除
+                    runtime.unload(pluginId);
+                    results.put(pluginId, BulkItem.fail(pluginId, "plugin.not_exist"));
+                }
+            }
+        } catch (Exception e) {
+            // 状态保存失败时撤销加载，保持运行时与数据库一致
+            log.error(e.getMessage(), e);
+            for (long pluginId : loaded) {
+                runtime.unload(pluginId);
+                results.put(pluginId, BulkItem.fail(pluginId, "plugin.enable_fail"));
+            }
+        }
+        return new ArrayList<>(results.values());
+    }
+
+    /**
+     * 批量禁用插件：在一个事务中修改为禁用状态，提交后逐个热卸载
+     *
+     * @param pluginIds 插件编号，重复的编号只处理一次
+     * @return 每个插件的处理结果，顺序与传入的编号一致
+     */
+    public List<BulkItem> disable(List<Long> pluginIds) {
+        List<Long> ids = distinct(pluginIds);
+        List<BulkItem> results = new ArrayList<>(ids.size());
+        try {
+            Set<Long> updated = new HashSet<>(registry.updateStatus(ids, 0));
+            for (long pluginId : ids) {
+                if (updated.contains(pluginId)) {
+                    runtime.unload(pluginId);
+                    results.add(BulkItem.ok(pluginId, "plugin.disable_success"));
+                } else {
+                    // 安装中的插件不会被批量语句修改
+                    DataRow row = registry.get(pluginId);
+                    results.add(BulkItem.fail(pluginId, row != null && isVerifying(row) ? "plugin.verifying" : "plugin.not_exist"));
+                }
+            }
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+            for (long pluginId : ids) {
+                results.add(BulkItem.fail(pluginId, "plugin.disable_fail"));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 批量删除插件：先在一个事务中删除数据库记录，提交后卸载并在虚拟线程上并行删除插件文件，
+     * 最后释放不再被任何插件引用的内容文件。事务失败时插件和文件都保持原样
+     *
+     * @param pluginIds 插件编号，重复的编号只处理一次
+     * @return 每个插件的处理结果，顺序与传入的编号一致
+     */
+    public List<BulkItem> delete(List<Long> pluginIds) {
+        Map<Long, BulkItem> results = new LinkedHashMap<>();
+        Map<Long, DataRow> rows = new LinkedHashMap<>();
+        for (long pluginId : distinct(pluginIds)) {
+            DataRow row = registry.get(pluginId);
+            if (row == null) {
+                results.put(pluginId, BulkItem.fail(pluginId, "plugin.not_exist"));
+            } else if (isVerifying(row)) {
+                results.put(pluginId, BulkItem.fail(pluginId, "plugin.verifying"));
+            } else {
+                results.put(pluginId, null);
+                rows.put(pluginId, row);
+            }
+        }
+
+        // 数据库记录删除失败时不动文件，避免记录还在而插件包已经删除
+        List<Long> deleted = new ArrayList<>(rows.size());
+        try {
+            Set<Long> affected = new HashSet<>(registry.deleteAll(new ArrayList<>(rows.keySet())));
+            for (long pluginId : rows.keySet()) {
+                if (affected.contains(pluginId)) {
+                    deleted.add(pluginId);
+                } else {
+                    results.put(pluginId, BulkItem.fail(pluginId, "plugin.not_exist"));
+                }
+            }
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+            for (long pluginId : rows.keySet()) {
+                results.put(pluginId, BulkItem.fail(pluginId, "plugin.delete_fail"));
+            }
+            return new ArrayList<>(results.values());
+        }
+
+        // 先卸载插件，释放jar文件句柄，再并行删除插件文件
+        Map<Long, Future<?>> futures = new LinkedHashMap<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long pluginId : deleted) {
+                String pluginPath = rows.get(pluginId).getString("PLUGIN_PATH");
+                futures.put(pluginId, executor.submit(() -> {
+                    runtime.remove(pluginId);
+                    Files.deleteIfExists(Path.of(pluginPath));
+                    return null;
+                }));
+            }
+        }
+        Set<String> digests = new LinkedHashSet<>();
+        for (Map.Entry<Long, Future<?>> entry : futures.entrySet()) {
+            long pluginId = entry.getKey();
+            PluginConfigService.global().evict(pluginId);
+            String digest = rows.get(pluginId).getString("PLUGIN_DIGEST");
+            if (digest != null) {
+                digests.add(digest);
+            }
+            try {
+                entry.getValue().get();
+                results.put(pluginId, BulkItem.ok(pluginId, "plugin.delete_success"));
+            } catch (Exception e) {
+                // 数据库记录已删除，残留的插件文件不再被引用
+                log.error(e.getMessage(), e);
+                results.put(pluginId, BulkItem.fail(pluginId, "plugin.delete_file_fail"));
+            }
+        }
+
+        // 内容不再被任何插件引用时删除内容文件
+        for (String digest : digests) {
+            try {
+                if (registry.countByDigest(digest) == 0) {
+                    PluginStore.release(digest);
+                    PluginIndex.global().remove(digest);
+                }
+            } catch (Exception e) {
+                // 内容文件留待下次释放
+                log.error(e.getMessage(), e);
+            }
+        }
+        return new ArrayList<>(results.values());
+    }
+
+    private static boolean isVerifying(DataRow row) {
+        return row.getInt("PLUGIN_STATUS", -1) == PluginRegistry.STATUS_VERIFYING;
+    }
+
+    private static List<Long> distinct(List<Long> pluginIds) {
+        return new ArrayList<>(new LinkedHashSet<>(pluginIds));
+    }
+}
@@ -0,0 +1,474 @@
+package site.xiweihai.framework.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.anyline.entity.DataRow;
+import org.noear.solon.Utils;
+import site.xiweihai.framework.utils.FileIndex;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+import java.util.stream.Stream;
+
+/**
+ * 插件配置服务
+ * 插件目录下的 .properties、.yml/.yaml 和 .json 文件第一次访问时解析为扁平的键值，组成不可变的配置快照；
+ * 之后的读取直接返回快照，不再访问磁盘。通过文件管理保存或上传文件、磁盘上的文件发生变化时只重新解析变化的文件，
+ * 整体替换快照，读取方要么看到旧快照要么看到新快照；内容确有变化时按顺序通知订阅者。
+ * 只缓存已访问过的插件，解析失败的文件保留上一次的内容
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+@Slf4j
+public class PluginConfigService implements FileIndex.Listener {
+
+    /**
+     * 解析的配置文件扩展名，其余可编辑的文件（.xml、.html、.js）不是键值配置
+     */
+    public static final List<String> EXTENSIONS = List.of(".properties", ".yml", ".yaml", ".json");
+
+    /**
+     * 订阅全部插件的配置变化时使用的插件编号
+     */
+    public static final long ALL = -1;
+
+    /**
+     * 超过该大小的文件不解析（字节）
+     */
+    private static final long MAX_FILE_SIZE = 1024 * 1024;
+
+    /**
+     * 查找配置文件的最大目录深度
+     */
+    private static final int MAX_DEPTH = 4;
+
+    /**
+     * 文件修改时间的精度余量（毫秒），部分文件系统只精确到秒
+     */
+    private static final long MTIME_SLACK = 2000;
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private static final PluginConfigService global = new PluginConfigService(PluginConfigService::pluginDir);
+
+    private final LongFunction<Path> dirs;
+    private final Map<Long, PluginConfig> snapshots = new ConcurrentHashMap<>();
+    private final Map<Path, Long> loaded = new ConcurrentHashMap<>();
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final AtomicLong versions = new AtomicLong();
+    private final LongAdder reloads = new LongAdder();
+    private final ExecutorService notifier = Executors.newSingleThreadExecutor(
+            Thread.ofVirtual().name("plugin-config-events").factory());
+
+    /**
+     * 插件的配置快照，创建后不再修改
+     *
+     * @param pluginId 插件编号
+     * @param version  快照版本，每次替换递增
+     * @param files    配置文件（相对插件目录的路径，按路径排序）及其扁平化后的键值
+     */
+    public record PluginConfig(long pluginId, long version, Map<String, Map<String, String>> files) {
+
+        /**
+         * 按路径顺序在全部配置文件中查找配置项
+         *
+         * @param key 配置键，嵌套的键用 . 连接，数组元素为 key[0]
+         * @return 第一个包含该键的文件中的值，不存在时返回 null
+         */
+        public String get(String key) {
+            for (Map<String, String> values : files.values()) {
+                String value = values.get(key);
+                if (value != null) {
+                    return value;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * 查找指定配置文件中的配置项
+         *
+         * @param file 相对插件目录的文件路径
+         * @param key  配置键
+         * @return 配置值，文件或键不存在时返回 null
+         */
+        public String get(String file, String key) {
+            return file(file).get(key);
+        }
+
+        /**
+         * 指定配置文件的全部配置项
+         *
+         * @param file 相对插件目录的文件路径
+         * @return 配置项，文件不存在时为空
+         */
+        public Map<String, String> file(String file) {
+            return files.getOrDefault(file, Collections.emptyMap());
+        }
+    }
+
+    /**
+     * 配置变化事件
+     *
+     * @param pluginId    插件编号
+     * @param file        变化的文件，相对插件目录
+     * @param previous    变化前的快照
+     * @param current     变化后的快照
+     * @param changedKeys 新增、修改或删除的配置键
+     */
+    public record ConfigChange(long pluginId, String file, PluginConfig previous, PluginConfig current,
+                               Set<String> changedKeys) {
+    }
+
+    private record Subscription(long pluginId, Consumer<ConfigChange> listener) {
+    }
+
+    /**
+     * 创建插件配置服务
+     *
+     * @param dirs 按插件编号查找插件目录，插件不存在时返回 null
+     */
+    public PluginConfigService(LongFunction<Path> dirs) {
+        this.dirs = dirs;
+    }
+
+    /**
+     * 获取全局的插件配置服务
+     *
+     * @return 插件配置服务
+     */
+    public static PluginConfigService global() {
+        return global;
+    }
+
+    /**
+     * 获取插件的配置快照，第一次访问时解析插件目录下的配置文件
+     *
+     * @param pluginId 插件编号
+     * @return 配置快照，插件不存在时返回 null
+     */
+    public PluginConfig get(long pluginId) {
+        PluginConfig config = snapshots.get(pluginId);
+        if (config != null) {
+            return config;
+        }
+        Path dir = dirs.apply(pluginId);
+        if (dir == null) {
+            return null;
+        }
+        Path base = dir.toAbsolutePath().normalize();
+        long scanStart = System.currentTimeMillis();
+        Map<String, Map<String, String>> files = new TreeMap<>();
+        if (Files.isDirectory(base)) {
+            try (Stream<Path> paths = Files.walk(base, MAX_DEPTH)) {
+                for (Iterator<Path> it = paths.filter(PluginConfigService::isConfigFile).iterator(); it.hasNext(); ) {
+                    Path file = it.next();
+                    Map<String, String> values = parseQuietly(file);
+                    if (values != null) {
+                        files.put(relativize(base, file), values);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warn("Failed to scan config of plugin {}: {}", pluginId, e.getMessage());
+            }
+        }
+        // 并发的首次访问只保留一个快照；先安装快照再登记目录，登记之后的文件变化按快照替换
+        PluginConfig created = new PluginConfig(pluginId, versions.incrementAndGet(), Collections.unmodifiableMap(files));
+        config = snapshots.computeIfAbsent(pluginId, id -> created);
+        if (config == created) {
+            loaded.put(base, pluginId);
+            // 解析期间到登记之前发生的文件变化没有被处理，按修改时间找出这些文件重新解析
+            recheck(pluginId, base, scanStart - MTIME_SLACK);
+        }
+        return snapshots.get(pluginId);
+    }
+
+    /**
+     * 获取插件的配置项
+     *
+     * @param pluginId 插件编号
+     * @param key      配置键
+     * @return 配置值，插件或配置项不存在时返回 null
+     */
+    public String get(long pluginId, String key) {
+        PluginConfig config = get(pluginId);
+        return config != null ? config.get(key) : null;
+    }
+
+    /**
+     * 重新解析一个配置文件并替换所属插件的快照，所属插件还没有被访问过时忽略
+     *
+     * @param path 变化的文件，已删除时从快照中移除
+     */
+    public void reload(Path path) {
+        Path file = path.toAbsolutePath().normalize();
+        if (!isConfigName(file)) {
+            return;
+        }
+        for (Map.Entry<Path, Long> entry : loaded.entrySet()) {
+            if (file.startsWith(entry.getKey())) {
+                reload(entry.getValue(), relativize(entry.getKey(), file), file);
+                return;
+            }
+        }
+    }
+
+    private void reload(long pluginId, String name, Path file) {
+        Map<String, String> values;
+        if (Files.isRegularFile(file)) {
+            values = parseQuietly(file);
+            if (values == null) {
+                // 解析失败（如编辑器写了一半）时保留上一次的内容
+                return;
+            }
+        } else {
+            values = null;
+        }
+        PluginConfig[] swapped = new PluginConfig[2];
+        snapshots.computeIfPresent(pluginId, (id, previous) -> {
+            Map<String, String> old = previous.files().get(name);
+            if (Objects.equals(old, values)) {
+                return previous;
+            }
+            Map<String, Map<String, String>> files = new TreeMap<>(previous.files());
+            if (values == null) {
+                files.remove(name);
+            } else {
+                files.put(name, values);
+            }
+            swapped[0] = previous;
+            swapped[1] = new PluginConfig(id, versions.incrementAndGet(), Collections.unmodifiableMap(files));
+            return swapped[1];
+        });
+        if (swapped[1] == null) {
+            return;
+        }
+        reloads.increment();
+        Set<String> changed = changedKeys(swapped[0].file(name), swapped[1].file(name));
+        log.debug("Plugin {} config {} reloaded, {} keys changed", pluginId, name, changed.size());
+        publish(new ConfigChange(pluginId, name, swapped[0], swapped[1], changed));
+    }
+
+    /**
+     * 订阅配置变化，事件在单独的线程上按发生顺序逐个通知
+     *
+     * @param pluginId 插件编号，{@link #ALL} 表示全部插件
+     * @param listener 监听器
+     * @return 调用 close 取消订阅
+     */
+    public AutoCloseable subscribe(long pluginId, Consumer<ConfigChange> listener) {
+        Subscription subscription = new Subscription(pluginId, listener);
+        subscriptions.add(subscription);
+        return () -> subscriptions.remove(subscription);
+    }
+
+    /**
+     * 移除插件的配置快照，插件删除后调用
+     *
+     * @param pluginId 插件编号
+     */
+    public void evict(long pluginId) {
+        loaded.values().removeIf(id -> id == pluginId);
+        snapshots.remove(pluginId);
+    }
+
+    /**
+     * 已缓存配置的插件数量
+     *
+     * @return 插件数量
+     */
+    public int size() {
+        return snapshots.size();
+    }
+
+    /**
+     * 配置文件变化后替换快照的次数
+     *
+     * @return 替换次数
+     */
+    public long reloads() {
+        return reloads.sum();
+    }
+
+    @Override
+    public void changed(Path path) {
+        reload(path);
+    }
+
+    @Override
+    public void rescanned() {
+        // 无法得知期间变化了哪些文件，重新解析全部已缓存的插件
+        for (Map.Entry<Path, Long> entry : loaded.entrySet()) {
+            recheck(entry.getValue(), entry.getKey(), Long.MIN_VALUE);
+        }
+    }
+
+    /**
+     * 重新解析插件目录下在指定时间之后修改过的配置文件，以及快照中已不存在的文件
+     *
+     * @param pluginId 插件编号
+     * @param base     插件目录
+     * @param since    修改时间下限（毫秒时间戳），{@link Long#MIN_VALUE} 表示全部文件
+     */
+    private void recheck(long pluginId, Path base, long since) {
+        Set<String> names = new HashSet<>();
+        PluginConfig config = snapshots.get(pluginId);
+        if (config != null) {
+            names.addAll(config.files().keySet());
+        }
+        try (Stream<Path> paths = Files.walk(base, MAX_DEPTH)) {
+            paths.filter(PluginConfigService::isConfigFile).forEach(file -> names.add(relativize(base, file)));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to rescan config in {}: {}", base, e.getMessage());
+        }
+        for (String name : names) {
+            Path file = base.resolve(name).normalize();
+            if (since != Long.MIN_VALUE && modifiedBefore(file, since)) {
+                continue;
+            }
+            reload(pluginId, name, file);
+        }
+    }
+
+    /**
+     * 文件存在且修改时间早于指定时间，读取失败时按已修改处理
+     */
+    private static boolean modifiedBefore(Path file, long time) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis() < time;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void publish(ConfigChange change) {
+        for (Subscription subscription : subscriptions) {
+            if (subscription.pluginId() != ALL && subscription.pluginId() != change.pluginId()) {
+                continue;
+            }
+            notifier.execute(() -> {
+                try {
+                    subscription.listener().accept(change);
+                } catch (RuntimeException e) {
+                    log.warn("Config listener failed for plugin {}: {}", change.pluginId(), e.getMessage(), e);
+                }
+            });
+        }
+    }
+
+    private static Set<String> changedKeys(Map<String, String> previous, Map<String, String> current) {
+        Set<String> changed = new HashSet<>();
+        for (Map.Entry<String, String> entry : current.entrySet()) {
+            if (!entry.getValue().equals(previous.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (String key : previous.keySet()) {
+            if (!current.containsKey(key)) {
+                changed.add(key);
+            }
+        }
+        return Collections.unmodifiableSet(changed);
+    }
+
+    private static Map<String, String> parseQuietly(Path file) {
+        try {
+            return parse(file);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to parse config {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 解析配置文件为扁平的键值
+     *
+     * @param file 配置文件
+     * @return 不可变的键值
+     * @throws IOException 读取或解析失败
+     */
+    static Map<String, String> parse(Path file) throws IOException {
+        if (Files.size(file) > MAX_FILE_SIZE) {
+            throw new IOException("Config file too large");
+        }
+        String name = file.getFileName().toString();
+        Map<String, String> values = new TreeMap<>();
+        if (name.endsWith(".json")) {
+            flatten("", JSON.readTree(file.toFile()), values);
+        } else {
+            Properties properties;
+            if (name.endsWith(".properties")) {
+                properties = new Properties();
+                try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                    properties.load(reader);
+                }
+            } else {
+                // yml 与应用配置使用同一个加载器
+                properties = Utils.loadProperties(file.toUri().toURL());
+                if (properties == null) {
+                    throw new IOException("Unsupported config format");
+                }
+            }
+            for (String key : properties.stringPropertyNames()) {
+                values.put(key, properties.getProperty(key));
+            }
+        }
+        return Collections.unmodifiableMap(values);
+    }
+
+    private static void flatten(String prefix, JsonNode node, Map<String, String> values) {
+        if (node.isObject()) {
+            for (Iterator<Map.Entry<String, JsonNode>> it = node.fields(); it.hasNext(); ) {
+                Map.Entry<String, JsonNode> field = it.next();
+                flatten(prefix.isEmpty() ? field.getKey() : prefix + "." + field.getKey(), field.getValue(), values);
+            }
+        } else if (node.isArray()) {
+            for (int i = 0; i < node.size(); i++) {
+                flatten(prefix + "[" + i + "]", node.get(i), values);
+            }
+        } else if (!node.isNull() && !prefix.isEmpty()) {
+            values.put(prefix, node.asText());
+        }
+    }
+
+    private static boolean isConfigFile(Path path) {
+        return isConfigName(path) && Files.isRegularFile(path);
+    }
+
+    private static boolean isConfigName(Path path) {
+        Path name = path.getFileName();
+        return name != null && EXTENSIONS.stream().anyMatch(name.toString()::endsWith);
+    }
+
+    private static String relativize(Path base, Path file) {
+        return base.relativize(file).toString().replace('\\', '/');
+    }
+
+    private static Path pluginDir(long pluginId) {
+        DataRow row = PluginRegistry.global().get(pluginId);
+        String pluginPath = row != null ? row.getString("PLUGIN_PATH") : null;
+        return pluginPath != null ? Path.of(pluginPath).getParent() : null;
+    }
+}
@@ -0,0 +1,358 @@
+package site.xiweihai.framework.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.anyline.entity.DataRow;
+import org.anyline.proxy.ServiceProxy;
+import site.xiweihai.framework.datasource.DataSourceManager;
+import site.xiweihai.framework.utils.JarScanner;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Attributes;
+
+/**
+ * 插件包索引
+ * 插件包上传时扫描一次，把清单属性、包名、服务注册、Solon 插件声明和控制器类写入 FRAMEWORK_PLUGIN_INDEX。
+ * 索引按插件包MD5保存，内容相同的插件包只索引一次，通过 PLUGIN_DIGEST 与 FRAMEWORK_PLUGIN 关联；
+ * 查找提供某个类或服务的插件、检测包冲突都是带索引的查询，不需要打开插件包；配置了只读副本时这些查询读副本
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+@Slf4j
+public class PluginIndex {
+
+    /**
+     * 插件包索引表名
+     */
+    public static final String TABLE = "FRAMEWORK_PLUGIN_INDEX";
+
+    /**
+     * 条目类型：插件包信息（大小、条目数），同时标记该内容已建立索引
+     */
+    public static final String TYPE_JAR = "JAR";
+
+    /**
+     * 条目类型：清单主属性
+     */
+    public static final String TYPE_MANIFEST = "MANIFEST";
+
+    /**
+     * 条目类型：包名
+     */
+    public static final String TYPE_PACKAGE = "PACKAGE";
+
+    /**
+     * 条目类型：服务注册，键为服务接口，值为实现类
+     */
+    public static final String TYPE_SERVICE = "SERVICE";
+
+    /**
+     * 条目类型：Solon 插件类
+     */
+    public static final String TYPE_SOLON_PLUGIN = "SOLON_PLUGIN";
+
+    /**
+     * 条目类型：带 @Controller 注解的类
+     */
+    public static final String TYPE_CONTROLLER = "CONTROLLER";
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private static final int MAX_VALUE_LENGTH = 500;
+
+    private static final String PROVIDER_SQL = "SELECT P.ID, P.PLUGIN_NAME, P.PLUGIN_VERSION, P.PLUGIN_STATUS, I.ENTRY_TYPE, I.ENTRY_KEY, I.ENTRY_VALUE"
+            + " FROM " + TABLE + " I JOIN " + PluginRegistry.TABLE + " P ON P.PLUGIN_DIGEST = I.PLUGIN_DIGEST"
+            + " WHERE I.ENTRY_TYPE = ? AND I.ENTRY_KEY = ? ORDER BY P.ID";
+
+    /**
+     * 同一个包、Solon 插件类或控制器类出现在不同内容的插件包中视为冲突；服务接口允许多个实现，不算冲突
+     */
+    private static final String CONFLICT_SQL = "SELECT DISTINCT P.ID, P.PLUGIN_NAME, P.PLUGIN_VERSION, P.PLUGIN_STATUS, O.ENTRY_TYPE, O.ENTRY_KEY, O.ENTRY_VALUE"
+            + " FROM " + TABLE + " I JOIN " + TABLE + " O ON O.ENTRY_TYPE = I.ENTRY_TYPE AND O.ENTRY_KEY = I.ENTRY_KEY AND O.PLUGIN_DIGEST <> I.PLUGIN_DIGEST"
+            + " JOIN " + PluginRegistry.TABLE + " P ON P.PLUGIN_DIGEST = O.PLUGIN_DIGEST"
+            + " WHERE I.PLUGIN_DIGEST = ? AND I.ENTRY_TYPE IN ('" + TYPE_PACKAGE + "', '" + TYPE_SOLON_PLUGIN + "', '" + TYPE_CONTROLLER + "')"
+            + " ORDER BY P.ID, O.ENTRY_TYPE, O.ENTRY_KEY";
+
+    private static final PluginIndex global = new PluginIndex(PluginRegistry.global());
+
+    private final PluginRegistry registry;
+
+    /**
+     * 索引条目的提供者
+     *
+     * @param pluginId      插件编号
+     * @param pluginName    插件名称
+     * @param pluginVersion 插件版本
+     * @param pluginStatus  插件状态
+     * @param type          条目类型
+     * @param key           条目键
+     * @param value         条目值
+     */
+    public record Provider(long pluginId, String pluginName, String pluginVersion, int pluginStatus,
+                           String type, String key, String value) {
+    }
+
+    /**
+     * 创建插件包索引
+     *
+     * @param registry 插件注册表，用于回填已有插件包的索引
+     */
+    public PluginIndex(PluginRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * 获取全局的插件包索引
+     *
+     * @return 插件包索引
+     */
+    public static PluginIndex global() {
+        return global;
+    }
+
+    /**
+     * 写入插件包扫描结果，内容已建立索引时不重复写入；全部条目在一个事务中批量插入
+     *
+     * @param scan 插件包扫描结果
+     * @throws SQLException 写入失败，事务已回滚
+     */
+    public void index(JarScanner.JarScan scan) throws SQLException {
+        if (indexed(scan.md5())) {
+            return;
+        }
+        List<String[]> entries = new ArrayList<>();
+        entries.add(new String[]{TYPE_JAR, "size", String.valueOf(scan.size())});
+        entries.add(new String[]{TYPE_JAR, "entries", String.valueOf(scan.entryCount())});
+        if (scan.manifest() != null) {
+            for (Map.Entry<Object, Object> attribute : scan.manifest().getMainAttributes().entrySet()) {
+                entries.add(new String[]{TYPE_MANIFEST, ((Attributes.Name) attribute.getKey()).toString(), String.valueOf(attribute.getValue())});
+            }
+        }
+        for (String pkg : scan.packages()) {
+            entries.add(new String[]{TYPE_PACKAGE, pkg, null});
+        }
+        for (Map.Entry<String, List<String>> service : scan.services().entrySet()) {
+            for (String provider : service.getValue()) {
+                entries.add(new String[]{TYPE_SERVICE, service.getKey(), provider});
+            }
+        }
+        for (String pluginClass : scan.solonPlugins()) {
+            entries.add(new String[]{TYPE_SOLON_PLUGIN, pluginClass, null});
+        }
+        for (String controller : scan.controllers()) {
+            entries.add(new String[]{TYPE_CONTROLLER, controller, null});
+        }
+
+        try (Connection connection = dataSource().getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (PreparedStatement delete = connection.prepareStatement("DELETE FROM " + TABLE + " WHERE PLUGIN_DIGEST = ?");
+                 PreparedStatement insert = connection.prepareStatement("INSERT INTO " + TABLE
+                         + " (PLUGIN_DIGEST, ENTRY_TYPE, ENTRY_KEY, ENTRY_VALUE) VALUES (?, ?, ?, ?)")) {
+                // 清除并发写入的半成品，保证同一内容只有一份索引
+                delete.setString(1, scan.md5());
+                delete.executeUpdate();
+                for (String[] entry : entries) {
+                    insert.setString(1, scan.md5());
+                    insert.setString(2, entry[0]);
+                    insert.setString(3, truncate(entry[1], MAX_KEY_LENGTH));
+                    insert.setString(4, truncate(entry[2], MAX_VALUE_LENGTH));
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+        log.info("Plugin jar {} indexed: {} packages, {} services, {} controllers",
+                scan.md5(), scan.packages().size(), scan.services().size(), scan.controllers().size());
+    }
+
+    /**
+     * 内容尚未建立索引时扫描插件包并写入索引，用于只登记元数据的插件和升级前上传的插件包
+     *
+     * @param digest 插件包MD5
+     * @param jar    插件包文件
+     * @throws IOException  读取插件包失败
+     * @throws SQLException 写入失败
+     */
+    public void ensureIndexed(String digest, Path jar) throws IOException, SQLException {
+        if (digest == null || indexed(digest) || !Files.isRegularFile(jar)) {
+            return;
+        }
+        JarScanner.JarScan scan;
+        try (InputStream in = Files.newInputStream(jar)) {
+            scan = JarScanner.scan(in, OutputStream.nullOutputStream());
+        }
+        if (!digest.equals(scan.md5())) {
+            log.warn("Plugin jar {} digest mismatch: expected {}, actual {}", jar, digest, scan.md5());
+            return;
+        }
+        index(scan);
+    }
+
+    /**
+     * 在后台为已登记但尚未建立索引的插件包补建索引
+     */
+    public void startBackfill() {
+        if (ServiceProxy.service(DataSourceManager.DEFAULT_KEY) == null) {
+            return;
+        }
+        Thread.ofVirtual().name("plugin-index-backfill").start(() -> {
+            try {
+                Set<String> digests = new LinkedHashSet<>();
+                for (DataRow row : registry.list()) {
+                    String digest = row.getString("PLUGIN_DIGEST");
+                    if (digest != null) {
+                        digests.add(digest);
+                    }
+                }
+                for (String digest : digests) {
+                    try {
+                        ensureIndexed(digest, PluginStore.blobPath(digest));
+                    } catch (IOException e) {
+                        log.warn("Plugin jar {} not indexed: {}", digest, e.getMessage());
+                    }
+                }
+            } catch (Exception e) {
+                // 插件表或索引表尚未创建等情况下不影响应用运行
+                log.error(e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * 删除插件包的索引，内容文件释放后调用；删除失败时只记录日志，残留的索引不会关联到任何插件
+     *
+     * @param digest 插件包MD5
+     */
+    public void remove(String digest) {
+        try (Connection connection = dataSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement("DELETE FROM " + TABLE + " WHERE PLUGIN_DIGEST = ?")) {
+            statement.setString(1, digest);
+            statement.executeUpdate();
+        } catch (SQLException | RuntimeException e) {
+            log.warn("Plugin jar {} index not removed: {}", digest, e.getMessage());
+        }
+    }
+
+    /**
+     * 判断插件包是否已建立索引
+     *
+     * @param digest 插件包MD5
+     * @return 是否已建立索引
+     * @throws SQLException 查询失败
+     */
+    public boolean indexed(String digest) throws SQLException {
+        try (Connection connection = dataSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT 1 FROM " + TABLE + " WHERE PLUGIN_DIGEST = ? AND ENTRY_TYPE = ?")) {
+            statement.setString(1, digest);
+            statement.setString(2, TYPE_JAR);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    /**
+     * 查找提供指定条目的插件
+     *
+     * @param type 条目类型
+     * @param key  条目键，如包名、服务接口、类名
+     * @return 提供者列表，按插件编号排序
+     * @throws SQLException 查询失败
+     */
+    public List<Provider> providers(String type, String key) throws SQLException {
+        return query(DataSourceManager.global().readDataSource(), PROVIDER_SQL, type, key);
+    }
+
+    /**
+     * 查找提供指定类的插件：按类名匹配 Solon 插件类和控制器类，按包名匹配其他类
+     *
+     * @param className 类的全限定名
+     * @return 提供者列表
+     * @throws SQLException 查询失败
+     */
+    public List<Provider> findClass(String className) throws SQLException {
+        List<Provider> providers = new ArrayList<>(providers(TYPE_CONTROLLER, className));
+        providers.addAll(providers(TYPE_SOLON_PLUGIN, className));
+        if (providers.isEmpty()) {
+            int dot = className.lastIndexOf('.');
+            providers.addAll(providers(TYPE_PACKAGE, dot < 0 ? "" : className.substring(0, dot)));
+        }
+        return providers;
+    }
+
+    /**
+     * 检测插件包与其他插件包的冲突：相同的包、Solon 插件类或控制器类
+     *
+     * @param digest 插件包MD5
+     * @return 冲突的条目及其所在的插件
+     * @throws SQLException 查询失败
+     */
+    public List<Provider> conflicts(String digest) throws SQLException {
+        return conflicts(digest, false);
+    }
+
+    /**
+     * 检测插件包与其他插件包的冲突
+     *
+     * @param digest  插件包MD5
+     * @param primary 是否查询主库，刚写入索引后检测时使用主库，避免副本尚未同步
+     * @return 冲突的条目及其所在的插件
+     * @throws SQLException 查询失败
+     */
+    public List<Provider> conflicts(String digest, boolean primary) throws SQLException {
+        return query(primary ? dataSource() : DataSourceManager.global().readDataSource(), CONFLICT_SQL, digest);
+    }
+
+    private List<Provider> query(DataSource dataSource, String sql, String... params) throws SQLException {
+        if (dataSource == null) {
+            throw new IllegalStateException("Datasource " + DataSourceManager.DEFAULT_KEY + " is not started");
+        }
+        List<Provider> providers = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                statement.setString(i + 1, params[i]);
+            }
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    providers.add(new Provider(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getInt(4),
+                            rs.getString(5), rs.getString(6), rs.getString(7)));
+                }
+            }
+        }
+        return providers;
+    }
+
+    private static DataSource dataSource() {
+        DataSource dataSource = DataSourceManager.global().dataSource();
+        if (dataSource == null) {
+            throw new IllegalStateException("Datasource " + DataSourceManager.DEFAULT_KEY + " is not started");
+        }
+        return dataSource;
+    }
+
+    private static String truncate(String value, int maxLength) {
+        return value != null && value.length() > maxLength ? value.substring(0, maxLength) : value;
+    }
+}
@@ -0,0 +1,374 @@
+package site.xiweihai.framework.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.anyline.entity.DataRow;
+import org.anyline.proxy.ServiceProxy;
+import org.noear.solon.Solon;
+import org.noear.solon.core.handle.UploadedFile;
+import site.xiweihai.framework.datasource.DataSourceManager;
+import site.xiweihai.framework.metrics.Metrics;
+import site.xiweihai.framework.utils.JarScanner;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarFile;
+import java.util.zip.ZipException;
+
+/**
+ * 插件异步安装流水线
+ * 上传请求负责接收和校验：读取上传内容一遍，同时计算摘要、校验 zip 结构、CRC 和 MANIFEST.MF 并写入接收目录，
+ * 然后以“安装中”状态登记插件，随即返回任务编号；
+ * 之后在虚拟线程上依次完成收录（按内容去重保存并建立链接，写入插件包索引）、登记（写入插件包MD5并改为未启用），
+ * 失败时撤销已建立的链接和不再被引用的内容文件。同时执行的任务数和排队的任务数都有上限。
+ * 任务状态只保存在内存中，完成后保留一段时间供查询
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+@Slf4j
+public class PluginInstaller {
+
+    /**
+     * 安装阶段
+     */
+    public enum Stage {
+        /**
+         * 已接收并校验，等待执行
+         */
+        RECEIVED,
+        /**
+         * 收录插件包
+         */
+        INDEXING,
+        /**
+         * 登记插件
+         */
+        REGISTERING,
+        /**
+         * 安装完成
+         */
+        DONE,
+        /**
+         * 安装失败
+         */
+        FAILED
+    }
+
+    /**
+     * 安装任务状态
+     *
+     * @param jobId    任务编号
+     * @param pluginId 插件编号
+     * @param stage    当前阶段
+     * @param progress 进度百分比
+     * @param message  结果消息的国际化键，未结束时为 null
+     * @param done     是否已结束（完成或失败）
+     */
+    public record InstallStatus(String jobId, long pluginId, Stage stage, int progress, String message, boolean done) {
+    }
+
+    private static volatile PluginInstaller global;
+
+    private final PluginRegistry registry;
+    private final Semaphore permits;
+    private final int maxPending;
+    private final long retentionMillis;
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("plugin-install-", 0).factory());
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * 创建安装流水线
+     *
+     * @param registry        插件注册表
+     * @param concurrency     同时执行的任务数上限
+     * @param maxPending      未结束的任务数上限，超过时拒绝新的安装
+     * @param retentionMillis 任务结束后状态的保留时间（毫秒）
+     */
+    public PluginInstaller(PluginRegistry registry, int concurrency, int maxPending, long retentionMillis) {
+        this.registry = registry;
+        this.permits = new Semaphore(Math.max(1, concurrency));
+        this.maxPending = Math.max(1, maxPending);
+        this.retentionMillis = retentionMillis;
+    }
+
+    /**
+     * 获取全局的安装流水线，由 plugin.install.concurrency、plugin.install.maxPending、plugin.install.retention 配置
+     *
+     * @return 安装流水线
+     */
+    public static PluginInstaller global() {
+        if (global == null) {
+            synchronized (PluginInstaller.class) {
+                if (global == null) {
+                    boolean started = Solon.app() != null;
+                    global = new PluginInstaller(PluginRegistry.global(),
+                            started ? Solon.cfg().getInt("plugin.install.concurrency", 4) : 4,
+                            started ? Solon.cfg().getInt("plugin.install.maxPending", 64) : 64,
+                            started ? Solon.cfg().getLong("plugin.install.retention", 600_000) : 600_000);
+                }
+            }
+        }
+        return global;
+    }
+
+    /**
+     * 接收上传的插件包并提交安装任务；插件以安装中状态登记后立即返回
+     *
+     * @param pluginName    插件名称
+     * @param pluginDesc    插件描述
+     * @param pluginVersion 插件版本
+     * @param savePath      插件包保存路径
+     * @param file          上传的插件包，由调用方删除
+     * @return 任务状态，排队的任务已满时返回 null；名称和版本已存在时返回已结束的失败状态
+     * @throws ZipException 上传的不是合法的 jar 文件
+     * @throws IOException  转存上传文件失败
+     * @throws SQLException 登记插件失败
+     */
+    public InstallStatus submit(String pluginName, String pluginDesc, String pluginVersion, String savePath, UploadedFile file) throws IOException, SQLException {
+        prune();
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            return null;
+        }
+        Path staged = null;
+        try {
+            // 上传文件在请求结束后会被删除，读取一遍转存到接收目录，同时计算摘要并校验
+            staged = PluginStore.staging();
+            JarScanner.JarScan scan;
+            try (Metrics.Timer ignored = Metrics.time(Metrics.STAGE_FS);
+                 InputStream in = file.getContent()) {
+                scan = JarScanner.scan(in, staged);
+            }
+            if (scan.manifest() == null) {
+                throw new ZipException("Missing " + JarFile.MANIFEST_NAME);
+            }
+            DataRow row = new DataRow();
+            row.put("PLUGIN_NAME", pluginName);
+            row.put("PLUGIN_DESC", pluginDesc);
+            row.put("PLUGIN_PATH", savePath);
+            row.put("PLUGIN_VERSION", pluginVersion);
+            row.put("PLUGIN_STATUS", PluginRegistry.STATUS_VERIFYING);
+            Job job;
+            // 登记和创建任务与清理遗留安装互斥，清理时不会把刚登记、任务尚未创建的插件当作遗留
+            synchronized (jobs) {
+                if (!registry.addIfAbsent(row)) {
+                    // 同名同版本的插件已存在，保存路径相同，不能覆盖其插件包
+                    pending.decrementAndGet();
+                    Files.deleteIfExists(staged);
+                    return new InstallStatus(null, 0, Stage.FAILED, 100, "plugin.exists", true);
+                }
+                job = new Job(UUID.randomUUID().toString(), row.getLong("ID"));
+                jobs.put(job.id, job);
+            }
+            Path jar = staged;
+            executor.submit(() -> run(job, jar, scan, Path.of(savePath)));
+            return job.status();
+        } catch (IOException | SQLException | RuntimeException e) {
+            pending.decrementAndGet();
+            if (staged != null) {
+                Files.deleteIfExists(staged);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 查询安装任务状态
+     *
+     * @param jobId 任务编号
+     * @return 任务状态，任务不存在或已过保留时间时返回 null
+     */
+    public InstallStatus status(String jobId) {
+        Job job = jobId != null ? jobs.get(jobId) : null;
+        return job != null ? job.status() : null;
+    }
+
+    /**
+     * 清理上次运行遗留的安装中插件：任务状态只在内存中，应用重启后这些插件不会再完成安装。
+     * 应用就绪后才执行清理，此时可能已经接收了新的上传，从数据库查询安装中的插件，跳过本次运行中未结束的任务登记的插件
+     */
+    public void recover() {
+        if (ServiceProxy.service(DataSourceManager.DEFAULT_KEY) == null) {
+            return;
+        }
+        try {
+            synchronized (jobs) {
+                Set<Long> owned = new HashSet<>();
+                for (Job job : jobs.values()) {
+                    if (job.finishedAt == 0) {
+                        owned.add(job.pluginId);
+                    }
+                }
+                List<Long> orphans = new ArrayList<>();
+                for (long pluginId : registry.idsByStatus(PluginRegistry.STATUS_VERIFYING)) {
+                    if (!owned.contains(pluginId)) {
+                        orphans.add(pluginId);
+                    }
+                }
+                if (!orphans.isEmpty()) {
+                    log.warn("Removing unfinished plugin installs {}", orphans);
+                    registry.deleteAll(orphans);
+                }
+            }
+        } catch (Exception e) {
+            // 插件表尚未创建等情况下不影响应用启动
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 依次执行收录、登记，失败时删除登记的插件并撤销收录
+     */
+    private void run(Job job, Path staged, JarScanner.JarScan scan, Path target) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(job, "plugin.add_fail");
+            deleteStaged(staged);
+            return;
+        }
+        boolean adopted = false;
+        try {
+            job.stage = Stage.INDEXING;
+            try (Metrics.Timer ignored = Metrics.time(Metrics.STAGE_FS)) {
+                PluginStore.adopt(staged, scan.md5(), target);
+            }
+            adopted = true;
+            // 扫描结果写入插件包索引，之后查找类、服务和检测冲突不再打开插件包
+            PluginIndex.global().index(scan);
+
+            job.stage = Stage.REGISTERING;
+            if (!registry.verified(job.pluginId, scan.md5())) {
+                // 安装期间插件被删除，撤销收录
+                release(target, scan.md5());
+                finish(job, Stage.FAILED, "plugin.not_exist");
+                return;
+            }
+            // 登记后插件已安装，之后的步骤失败不影响安装结果
+            finish(job, Stage.DONE, "plugin.install_success");
+            log.info("Plugin {} installed to {}", job.pluginId, target);
+            try {
+                for (PluginIndex.Provider conflict : PluginIndex.global().conflicts(scan.md5(), true)) {
+                    log.warn("Plugin {} conflicts with plugin {} ({} {}) on {} {}", job.pluginId, conflict.pluginId(),
+                            conflict.pluginName(), conflict.pluginVersion(), conflict.type(), conflict.key());
+                }
+            } catch (Exception e) {
+                log.warn("Conflicts of plugin {} not checked: {}", job.pluginId, e.getMessage());
+            }
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+            fail(job, "plugin.add_fail");
+            if (adopted && registry.get(job.pluginId) == null) {
+                // 登记的插件已删除，撤销收录，与安装期间插件被删除时相同
+                release(target, scan.md5());
+            }
+        } finally {
+            permits.release();
+            deleteStaged(staged);
+        }
+    }
+
+    /**
+     * 撤销收录：删除目标位置的链接，内容不再被任何插件引用时删除内容文件和插件包索引
+     */
+    private void release(Path target, String md5) {
+        try {
+            Files.deleteIfExists(target);
+            if (registry.countByDigest(md5) == 0) {
+                PluginStore.release(md5);
+                PluginIndex.global().remove(md5);
+            }
+        } catch (Exception e) {
+            log.warn("Plugin jar {} not released: {}", target, e.getMessage());
+        }
+    }
+
+    /**
+     * 删除接收目录中的临时文件，收录时已移动为内容文件的不存在
+     */
+    private static void deleteStaged(Path staged) {
+        try {
+            Files.deleteIfExists(staged);
+        } catch (IOException e) {
+            log.warn("Failed to delete staged plugin jar {}: {}", staged, e.getMessage());
+        }
+    }
+
+    /**
+     * 安装失败时删除以安装中状态登记的插件
+     */
+    private void fail(Job job, String message) {
+        try {
+            DataRow row = registry.get(job.pluginId);
+            if (row != null && row.getInt("PLUGIN_STATUS", -1) == PluginRegistry.STATUS_VERIFYING) {
+                registry.delete(row);
+            }
+        } catch (Exception e) {
+            log.error(e.getMessage(), e);
+        }
+        finish(job, Stage.FAILED, message);
+    }
+
+    private void finish(Job job, Stage stage, String message) {
+        job.message = message;
+        job.finishedAt = System.currentTimeMillis();
+        job.stage = stage;
+        pending.decrementAndGet();
+    }
+
+    /**
+     * 删除超过保留时间的已结束任务
+     */
+    private void prune() {
+        long expiredBefore = System.currentTimeMillis() - retentionMillis;
+        jobs.values().removeIf(job -> job.finishedAt > 0 && job.finishedAt < expiredBefore);
+    }
+
+    /**
+     * 安装任务，阶段和进度由执行线程修改、查询线程读取
+     */
+    private static final class Job {
+
+        final String id;
+        final long pluginId;
+        volatile Stage stage = Stage.RECEIVED;
+        volatile String message;
+        volatile long finishedAt;
+
+        Job(String id, long pluginId) {
+            this.id = id;
+            this.pluginId = pluginId;
+        }
+
+        /**
+         * 接收和校验完成计50%，收录和登记各计一部分
+         */
+        InstallStatus status() {
+            Stage current = stage;
+            int progress = switch (current) {
+                case RECEIVED -> 50;
+                case INDEXING -> 75;
+                case REGISTERING -> 90;
+                case DONE, FAILED -> 100;
+            };
+            boolean done = current == Stage.DONE || current == Stage.FAILED;
+            return new InstallStatus(id, pluginId, current, progress, message, done);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package site.xiweihai.framework.service;
+
+import org.anyline.entity.DataRow;
+
+import java.util.List;
+
+/**
+ * 插件列表的一页数据
+ *
+ * @param rows       当前页的插件，只读
+ * @param nextCursor 下一页的游标，没有下一页时为 null
+ * @param size       每页条数
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+public record PluginPage(List<DataRow> rows, String nextCursor, int size) {
+
+    /**
+     * 是否还有下一页
+     *
+     * @return 是否还有下一页
+     */
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,876 @@
+package site.xiweihai.framework.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.anyline.data.param.ConfigStore;
+import org.anyline.data.param.init.DefaultConfigStore;
+import org.anyline.entity.Compare;
+import org.anyline.entity.DataRow;
+import org.anyline.entity.DataSet;
+import org.anyline.proxy.ServiceProxy;
+import org.anyline.service.AnylineService;
+import site.xiweihai.framework.datasource.DataSourceManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 插件注册表
+ * 在内存中缓存 FRAMEWORK_PLUGIN 的全部数据行，首次访问时从数据库加载一次，
+ * 之后所有读操作直接命中内存；新增、修改、删除均先写数据库再同步更新内存（写穿透）。
+ * 多节点部署时可开启定时刷新，按 UPDATE_TIME 增量拉取其他节点写入的数据；
+ * 增量拉取的水位线只由从数据库读到的数据行推进，并向前回看 {@link #REFRESH_WINDOW_MILLIS}
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+@Slf4j
+public class PluginRegistry {
+
+    /**
+     * 插件表名
+     */
+    public static final String TABLE = "FRAMEWORK_PLUGIN";
+
+    /**
+     * 按插件编号倒序排序
+     */
+    public static final String SORT_ID = "id";
+
+    /**
+     * 按更新时间倒序排序
+     */
+    public static final String SORT_TIME = "time";
+
+    /**
+     * 每页最大条数
+     */
+    public static final int MAX_PAGE_SIZE = 100;
+
+    /**
+     * 插件状态：未启用
+     */
+    public static final int STATUS_DISABLED = 0;
+
+    /**
+     * 插件状态：已启用
+     */
+    public static final int STATUS_ENABLED = 1;
+
+    /**
+     * 插件状态：安装中，插件包校验、登记完成前不能启用、禁用或删除
+     */
+    public static final int STATUS_VERIFYING = 2;
+
+    /**
+     * 行版本号列，插件信息每修改一次加一，用于乐观锁
+     */
+    public static final String ROW_VERSION = "ROW_VERSION";
+
+    /**
+     * 增量刷新的回看时间（毫秒）：其他节点的写入可能因提交较晚、时钟偏差或副本延迟，
+     * 在更新时间更晚的行之后才可见，每次刷新从水位线往前多拉取这段时间内的数据行
+     */
+    static final long REFRESH_WINDOW_MILLIS = 60_000;
+
+    private static final PluginRegistry global = new PluginRegistry("db");
+
+    private final String datasource;
+    private volatile Indexes indexes = new Indexes();
+    private final AtomicLong version = new AtomicLong();
+    private volatile boolean loaded;
+    private volatile Date lastUpdateTime;
+    private ScheduledExecutorService refresher;
+
+    /**
+     * 创建插件注册表
+     *
+     * @param datasource 数据源标识
+     */
+    public PluginRegistry(String datasource) {
+        this.datasource = datasource;
+    }
+
+    /**
+     * 获取全局的插件注册表
+     *
+     * @return 插件注册表
+     */
+    public static PluginRegistry global() {
+        return global;
+    }
+
+    /**
+     * 根据插件编号获取插件，返回的是副本，修改后需调用 {@link #update(DataRow)} 才会生效
+     *
+     * @param pluginId 插件编号
+     * @return 插件数据行，不存在时返回 null
+     */
+    public DataRow get(long pluginId) {
+        ensureLoaded();
+        DataRow row = indexes.byId.get(pluginId);
+        return row != null ? copy(row) : null;
+    }
+
+    /**
+     * 根据插件名称和版本获取插件
+     *
+     * @param pluginName    插件名称
+     * @param pluginVersion 插件版本
+     * @return 插件数据行，不存在时返回 null
+     */
+    public DataRow get(String pluginName, String pluginVersion) {
+        ensureLoaded();
+        Indexes current = indexes;
+        Long pluginId = current.byNameVersion.get(nameVersionKey(pluginName, pluginVersion));
+        DataRow row = pluginId != null ? current.byId.get(pluginId) : null;
+        return row != null ? copy(row) : null;
+    }
+
+    /**
+     * 根据插件包MD5获取引用该内容的任意一个插件
+     *
+     * @param digest 插件包MD5
+     * @return 插件数据行，不存在时返回 null
+     */
+    public DataRow findByDigest(String digest) {
+        ensureLoaded();
+        for (DataRow row : indexes.byId.values()) {
+            if (digest != null && digest.equals(row.getString("PLUGIN_DIGEST"))) {
+                return copy(row);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 统计引用指定插件包内容的插件数量
+     *
+     * @param digest 插件包MD5
+     * @return 引用数量
+     */
+    public int countByDigest(String digest) {
+        ensureLoaded();
+        int count = 0;
+        for (DataRow row : indexes.byId.values()) {
+            if (digest != null && digest.equals(row.getString("PLUGIN_DIGEST"))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 按插件编号升序获取全部插件，返回的是副本，修改后需调用 {@link #update(DataRow)} 才会生效
+     *
+     * @return 全部插件
+     */
+    public Collection<DataRow> list() {
+        ensureLoaded();
+        Indexes current = indexes;
+        List<DataRow> rows = new ArrayList<>(current.byId.size());
+        for (DataRow row : current.byId.values()) {
+            rows.add(copy(row));
+        }
+        return rows;
+    }
+
+    /**
+     * 按游标分页查询插件（keyset 分页）
+     * 游标记录上一页最后一行的排序键，下一页直接从有序索引中该键之后开始读取，不需要跳过前面的数据。
+     * 有序索引是注册表在内存中维护的 byId、byTime，以及按状态分组的同样两种顺序，分页不查询数据库。
+     * 不过滤或只按状态过滤时，翻到任意一页的开销只与页大小有关；按名称关键字过滤时逐行匹配，
+     * 开销与取满一页之前扫描的行数成正比，关键字命中少时最多扫描该状态（或全部）的插件
+     *
+     * @param name   插件名称关键字，为空时不过滤
+     * @param status 插件状态，为 null 时不过滤
+     * @param sort   排序方式，{@link #SORT_ID} 或 {@link #SORT_TIME}
+     * @param cursor 上一页返回的游标，为空时从第一页开始
+     * @param size   每页条数
+     * @return 一页插件数据
+     */
+    public PluginPage page(String name, Integer status, String sort, String cursor, int size) {
+        ensureLoaded();
+        Indexes current = indexes;
+        int limit = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        String keyword = name == null || name.isBlank() ? null : name.trim().toLowerCase();
+        // 多取一条用于判断是否还有下一页
+        List<DataRow> rows = new ArrayList<>(limit + 1);
+        if (SORT_TIME.equals(sort)) {
+            TimeKey from = TimeKey.parse(cursor);
+            NavigableSet<TimeKey> order = status == null ? current.byTime : current.byStatusTime(status);
+            NavigableSet<TimeKey> keys = from == null ? order.descendingSet() : order.headSet(from, false).descendingSet();
+            for (TimeKey key : keys) {
+                DataRow row = current.byId.get(key.id());
+                if (row != null && matches(row, keyword, status) && collect(rows, row, limit)) {
+                    break;
+                }
+            }
+        } else {
+            Long from = parseId(cursor);
+            NavigableSet<Long> order = status == null ? current.byId.navigableKeySet() : current.byStatusId(status);
+            NavigableSet<Long> ids = from == null ? order.descendingSet() : order.headSet(from, false).descendingSet();
+            for (long pluginId : ids) {
+                DataRow row = current.byId.get(pluginId);
+                if (row != null && matches(row, keyword, status) && collect(rows, row, limit)) {
+                    break;
+                }
+            }
+        }
+        String nextCursor = null;
+        if (rows.size() > limit) {
+            rows.remove(limit);
+            DataRow last = rows.get(limit - 1);
+            nextCursor = SORT_TIME.equals(sort) ? TimeKey.of(last).toString() : String.valueOf(last.getLong("ID"));
+        }
+        return new PluginPage(Collections.unmodifiableList(rows), nextCursor, limit);
+    }
+
+    /**
+     * 获取数据版本号，注册表内容每变化一次加一
+     *
+     * @return 数据版本号
+     */
+    public long version() {
+        return version.get();
+    }
+
+    /**
+     * 新增插件，插入数据库后写入注册表
+     *
+     * @param row 插件数据行
+     */
+    public synchronized void add(DataRow row) {
+        ensureLoaded();
+        row.put("UPDATE_TIME", LocalDateTime.now());
+        row.put(ROW_VERSION, 0);
+        service().insert(TABLE, row);
+        // 插入后主键已回填到数据行中
+        cache(row);
+    }
+
+    /**
+     * 新增插件，名称和版本已被其他插件使用时不新增。
+     * 查重读主库（其他节点可能刚新增了同名同版本的插件），由名称版本索引支撑
+     *
+     * @param row 插件数据行
+     * @return 是否新增，名称和版本已存在时返回 false
+     * @throws SQLException 查重失败
+     */
+    public synchronized boolean addIfAbsent(DataRow row) throws SQLException {
+        ensureLoaded();
+        if (exists(row.getString("PLUGIN_NAME"), row.getString("PLUGIN_VERSION"))) {
+            return false;
+        }
+        add(row);
+        return true;
+    }
+
+    /**
+     * 查询指定状态的插件编号，查询主库，由状态索引支撑
+     *
+     * @param status 插件状态
+     * @return 插件编号，升序
+     * @throws SQLException 查询失败
+     */
+    public List<Long> idsByStatus(int status) throws SQLException {
+        List<Long> ids = new ArrayList<>();
+        try (Connection connection = dataSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT ID FROM " + TABLE + " WHERE PLUGIN_STATUS = ? ORDER BY ID")) {
+            statement.setInt(1, status);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getLong(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * 判断名称和版本是否已被使用，查询主库
+     *
+     * @param pluginName    插件名称
+     * @param pluginVersion 插件版本
+     * @return 是否已存在
+     * @throws SQLException 查询失败
+     */
+    public boolean exists(String pluginName, String pluginVersion) throws SQLException {
+        try (Connection connection = dataSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT COUNT(*) FROM " + TABLE + " WHERE PLUGIN_NAME = ? AND PLUGIN_VERSION = ?")) {
+            statement.setString(1, pluginName);
+            statement.setString(2, pluginVersion);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() && rs.getLong(1) > 0;
+            }
+        }
+    }
+
+    /**
+     * 修改插件，更新数据库后同步注册表
+     *
+     * @param row 插件数据行，需包含 ID
+     */
+    public synchronized void update(DataRow row) {
+        ensureLoaded();
+        row.put("UPDATE_TIME", LocalDateTime.now());
+        service().update(TABLE, row);
+        cache(row);
+    }
+
+    /**
+     * 删除插件，删除数据库记录后从注册表中移除
+     *
+     * @param row 插件数据行，需包含 ID
+     */
+    public synchronized void delete(DataRow row) {
+        ensureLoaded();
+        service().delete(TABLE, row);
+        evict(row.getLong("ID"));
+    }
+
+    /**
+     * 条件修改插件状态，只有数据库中的当前状态与预期一致时才修改，一条语句完成判断和修改
+     *
+     * @param pluginId 插件编号
+     * @param from     预期的当前状态
+     * @param to       目标状态
+     * @return 是否修改成功，插件不存在或状态已被其他请求修改时返回 false
+     * @throws SQLException 执行失败
+     */
+    public synchronized boolean transition(long pluginId, int from, int to) throws SQLException {
+        ensureLoaded();
+        LocalDateTime now = LocalDateTime.now();
+        int count = executeUpdate("UPDATE " + TABLE + " SET PLUGIN_STATUS = ?, UPDATE_TIME = ? WHERE ID = ? AND PLUGIN_STATUS = ?",
+                to, Timestamp.valueOf(now), pluginId, from);
+        DataRow row = indexes.byId.get(pluginId);
+        if (count == 0) {
+            // 内存中的状态可能落后于数据库（其他节点的写入），下次访问时重新加载
+            if (row != null && row.getInt("PLUGIN_STATUS", -1) == from) {
+                invalidate();
+            }
+            return false;
+        }
+        if (row != null) {
+            row = copy(row);
+            row.put("PLUGIN_STATUS", to);
+            row.put("UPDATE_TIME", now);
+            cache(row);
+        }
+        return true;
+    }
+
+    /**
+     * 插件包校验完成后登记插件包MD5，并把状态从安装中改为未启用
+     *
+     * @param pluginId 插件编号
+     * @param digest   插件包MD5
+     * @return 是否登记成功，插件在安装期间被删除时返回 false
+     * @throws SQLException 执行失败
+     */
+    public synchronized boolean verified(long pluginId, String digest) throws SQLException {
+        ensureLoaded();
+        LocalDateTime now = LocalDateTime.now();
+        int count = executeUpdate("UPDATE " + TABLE + " SET PLUGIN_DIGEST = ?, PLUGIN_STATUS = ?, UPDATE_TIME = ? WHERE ID = ? AND PLUGIN_STATUS = ?",
+                digest, STATUS_DISABLED, Timestamp.valueOf(now), pluginId, STATUS_VERIFYING);
+        DataRow row = indexes.byId.get(pluginId);
+        if (count == 0) {
+            return false;
+        }
+        if (row != null) {
+            row = copy(row);
+            row.put("PLUGIN_DIGEST", digest);
+            row.put("PLUGIN_STATUS", STATUS_DISABLED);
+            row.put("UPDATE_TIME", now);
+            cache(row);
+        }
+        return true;
+    }
+
+    /**
+     * 以乐观锁修改插件信息，只写入非空的字段，行版本号与预期一致时才修改并把版本号加一
+     *
+     * @param pluginId        插件编号
+     * @param expectedVersion 读取插件信息时的行版本号
+     * @param fields          要修改的列和值，值为空的列不修改
+     * @return 是否修改成功，插件不存在或已被其他请求修改时返回 false
+     * @throws SQLException 执行失败
+     */
+    public synchronized boolean updateMetadata(long pluginId, long expectedVersion, Map<String, String> fields) throws SQLException {
+        ensureLoaded();
+        LocalDateTime now = LocalDateTime.now();
+        StringBuilder sql = new StringBuilder("UPDATE ").append(TABLE).append(" SET ");
+        List<Object> params = new ArrayList<>();
+        Map<String, String> changed = new LinkedHashMap<>();
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            if (field.getValue() != null && !field.getValue().isEmpty()) {
+                sql.append(field.getKey()).append(" = ?, ");
+                params.add(field.getValue());
+                changed.put(field.getKey(), field.getValue());
+            }
+        }
+        // 旧版本升级补齐的列可能为空，按0处理
+        sql.append("UPDATE_TIME = ?, ").append(ROW_VERSION).append(" = ? WHERE ID = ? AND COALESCE(").append(ROW_VERSION).append(", 0) = ?");
+        params.add(Timestamp.valueOf(now));
+        params.add(expectedVersion + 1);
+        params.add(pluginId);
+        params.add(expectedVersion);
+        if (executeUpdate(sql.toString(), params.toArray()) == 0) {
+            DataRow row = indexes.byId.get(pluginId);
+            if (row != null && row.getLong(ROW_VERSION, 0L) == expectedVersion) {
+                invalidate();
+            }
+            return false;
+        }
+        DataRow row = indexes.byId.get(pluginId);
+        if (row != null) {
+            row = copy(row);
+            row.putAll(changed);
+            row.put("UPDATE_TIME", now);
+            row.put(ROW_VERSION, expectedVersion + 1);
+            cache(row);
+        }
+        return true;
+    }
+
+    /**
+     * 批量修改插件状态，在一个事务中以一条批量语句更新数据库，提交后同步注册表
+     *
+     * @param pluginIds 插件编号
+     * @param status    插件状态
+     * @return 数据库中实际更新的插件编号
+     * @throws SQLException 更新失败，事务已回滚，注册表不变
+     */
+    public synchronized List<Long> updateStatus(List<Long> pluginIds, int status) throws SQLException {
+        ensureLoaded();
+        LocalDateTime now = LocalDateTime.now();
+        // 安装中的插件不修改状态
+        int[] counts = batch("UPDATE " + TABLE + " SET PLUGIN_STATUS = ?, UPDATE_TIME = ? WHERE ID = ? AND PLUGIN_STATUS <> ?", pluginIds, (statement, pluginId) -> {
+            statement.setInt(1, status);
+            statement.setTimestamp(2, Timestamp.valueOf(now));
+            statement.setLong(3, pluginId);
+            statement.setInt(4, STATUS_VERIFYING);
+        });
+        List<Long> updated = affected(pluginIds, counts);
+        for (long pluginId : updated) {
+            DataRow row = indexes.byId.get(pluginId);
+            if (row != null) {
+                row = copy(row);
+                row.put("PLUGIN_STATUS", status);
+                row.put("UPDATE_TIME", now);
+                cache(row);
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * 批量删除插件，在一个事务中以一条批量语句删除数据库记录，提交后从注册表中移除
+     *
+     * @param pluginIds 插件编号
+     * @return 数据库中实际删除的插件编号
+     * @throws SQLException 删除失败，事务已回滚，注册表不变
+     */
+    public synchronized List<Long> deleteAll(List<Long> pluginIds) throws SQLException {
+        ensureLoaded();
+        int[] counts = batch("DELETE FROM " + TABLE + " WHERE ID = ?", pluginIds, (statement, pluginId) -> statement.setLong(1, pluginId));
+        List<Long> deleted = affected(pluginIds, counts);
+        for (long pluginId : deleted) {
+            evict(pluginId);
+        }
+        return deleted;
+    }
+
+    /**
+     * 标记内存中的数据已过期，下次访问时重新从数据库加载。
+     * 不清空正在使用的索引，重新加载完成后整体替换，并发的读操作看到的是旧数据或新数据，不会看到空的注册表
+     */
+    public synchronized void invalidate() {
+        loaded = false;
+        version.incrementAndGet();
+    }
+
+    /**
+     * 从数据库增量刷新：拉取 UPDATE_TIME 不早于水位线减去回看窗口的数据行，与内存中相同的行不重复写入，
+     * 没有变化时数据版本号不变；再比较数据库与内存中的插件编号，不一致（其他节点删除了插件，
+     * 或新增的行更新时间早于上次刷新时间）时从主库全量重新加载。
+     * 增量查询读只读副本，副本延迟返回的旧数据行（行版本或更新时间早于内存中的）不覆盖内存；
+     * 延迟超过 db.replicas.maxLag 的副本不参与读，延迟内稍后可见的行由回看窗口在之后的刷新中拉取。编号比较读主库
+     */
+    public synchronized void refresh() {
+        if (!loaded) {
+            ensureLoaded();
+            return;
+        }
+        AnylineService reader = reader();
+        if (lastUpdateTime != null) {
+            ConfigStore configs = new DefaultConfigStore();
+            // 回看窗口内的行每次都会重新拉取，与内存相同的行在 isCurrent 中跳过
+            configs.and(Compare.GREAT_EQUAL, "UPDATE_TIME", new Date(lastUpdateTime.getTime() - REFRESH_WINDOW_MILLIS));
+            DataSet rows = reader.querys(TABLE, configs);
+            for (DataRow row : rows) {
+                if (!isCurrent(row)) {
+                    cache(row);
+                }
+                advance(row);
+            }
+        }
+        try {
+            if (!ids().equals(indexes.byId.keySet())) {
+                invalidate();
+                ensureLoaded();
+            }
+        } catch (SQLException e) {
+            log.warn("Plugin ids not compared: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 判断数据行是否不比内存中的新：行版本更小，或行版本相同且更新时间不晚于内存中的
+     */
+    private boolean isCurrent(DataRow row) {
+        DataRow current = indexes.byId.get(row.getLong("ID"));
+        if (current == null) {
+            return false;
+        }
+        long version = row.getLong(ROW_VERSION, 0L);
+        long currentVersion = current.getLong(ROW_VERSION, 0L);
+        if (version != currentVersion) {
+            return version < currentVersion;
+        }
+        Date updateTime = row.getDate("UPDATE_TIME");
+        Date currentUpdateTime = current.getDate("UPDATE_TIME");
+        return updateTime != null && currentUpdateTime != null && !updateTime.after(currentUpdateTime);
+    }
+
+    /**
+     * 读取数据库中的全部插件编号，只查询主键列。
+     * 读主库：本节点的新增和删除立即写入内存，副本有延迟时两边的编号总是不一致，每次刷新都会全量重新加载
+     */
+    private Set<Long> ids() throws SQLException {
+        Set<Long> ids = new HashSet<>();
+        try (Connection connection = dataSource().getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT ID FROM " + TABLE)) {
+            while (rs.next()) {
+                ids.add(rs.getLong(1));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * 开启定时刷新，用于多节点部署时感知其他节点的写入
+     *
+     * @param intervalMillis 刷新间隔（毫秒），小于等于0时不开启
+     */
+    public synchronized void startRefresh(long intervalMillis) {
+        if (intervalMillis <= 0 || refresher != null) {
+            return;
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().daemon().name("plugin-registry-refresh").factory());
+        refresher.scheduleWithFixedDelay(() -> {
+            try {
+                if (ServiceProxy.service(datasource) != null) {
+                    refresh();
+                }
+            } catch (Exception e) {
+                log.error(e.getMessage(), e);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 首次访问时从数据库全量加载
+     */
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            DataSet rows = service().querys(TABLE);
+            // 在新的索引中加载完成后再替换，读操作不会看到加载了一半的数据
+            Indexes next = new Indexes();
+            lastUpdateTime = null;
+            for (DataRow row : rows) {
+                next.put(copy(row));
+                advance(row);
+            }
+            indexes = next;
+            version.incrementAndGet();
+            loaded = true;
+            log.info("Plugin registry loaded {} plugins", next.byId.size());
+        }
+    }
+
+    /**
+     * 写入或替换注册表中的数据行，同时维护名称版本索引
+     */
+    private void cache(DataRow row) {
+        indexes.put(copy(row));
+        version.incrementAndGet();
+    }
+
+    /**
+     * 按从数据库读到的数据行推进增量刷新的水位线。
+     * 本节点写入时的更新时间取自本机时钟，不推进水位线，否则其他节点更新时间更早、稍后才可见的写入会被跳过
+     */
+    private void advance(DataRow row) {
+        Date updateTime = row.getDate("UPDATE_TIME");
+        if (updateTime != null && (lastUpdateTime == null || updateTime.after(lastUpdateTime))) {
+            lastUpdateTime = updateTime;
+        }
+    }
+
+    private void evict(long pluginId) {
+        if (indexes.remove(pluginId)) {
+            version.incrementAndGet();
+        }
+    }
+
+    private AnylineService service() {
+        return ServiceProxy.service(datasource);
+    }
+
+    /**
+     * 能容忍复制延迟的查询使用的服务：默认数据源配置了只读副本时读副本
+     */
+    private AnylineService reader() {
+        return ServiceProxy.service(DataSourceManager.DEFAULT_KEY.equals(datasource) ? DataSourceManager.global().readKey() : datasource);
+    }
+
+    /**
+     * 在一个事务中执行批量语句，每个插件编号绑定一组参数，整批一次发送到数据库
+     * 失败时回滚整个事务
+     *
+     * @return 每组参数影响的行数
+     */
+    private int[] batch(String sql, List<Long> pluginIds, Binder binder) throws SQLException {
+        if (pluginIds.isEmpty()) {
+            return new int[0];
+        }
+        try (Connection connection = dataSource().getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                for (long pluginId : pluginIds) {
+                    binder.bind(statement, pluginId);
+                    statement.addBatch();
+                }
+                int[] counts = statement.executeBatch();
+                connection.commit();
+                return counts;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    /**
+     * 执行单条更新语句
+     *
+     * @return 影响的行数
+     */
+    private int executeUpdate(String sql, Object... params) throws SQLException {
+        try (Connection connection = dataSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                statement.setObject(i + 1, params[i]);
+            }
+            return statement.executeUpdate();
+        }
+    }
+
+    /**
+     * 数据源管理器的连接池，批量语句和条件更新直接在连接池上执行
+     */
+    private DataSource dataSource() {
+        DataSource dataSource = DataSourceManager.global().dataSource();
+        if (dataSource == null) {
+            throw new IllegalStateException("Datasource " + datasource + " is not started");
+        }
+        return dataSource;
+    }
+
+    /**
+     * 根据批量语句的返回值筛选出有数据行受影响的插件编号，驱动不返回行数时视为受影响
+     */
+    private static List<Long> affected(List<Long> pluginIds, int[] counts) {
+        List<Long> affected = new ArrayList<>(pluginIds.size());
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0 || counts[i] == Statement.SUCCESS_NO_INFO) {
+                affected.add(pluginIds.get(i));
+            }
+        }
+        return affected;
+    }
+
+    /**
+     * 为批量语句绑定一个插件编号对应的参数
+     */
+    @FunctionalInterface
+    private interface Binder {
+        void bind(PreparedStatement statement, long pluginId) throws SQLException;
+    }
+
+    /**
+     * 把数据行加入当前页，已取满 limit+1 条时返回 true
+     */
+    private static boolean collect(List<DataRow> rows, DataRow row, int limit) {
+        rows.add(row);
+        return rows.size() > limit;
+    }
+
+    private static boolean matches(DataRow row, String keyword, Integer status) {
+        if (status != null && status.intValue() != row.getInt("PLUGIN_STATUS", -1)) {
+            return false;
+        }
+        if (keyword != null) {
+            String pluginName = row.getString("PLUGIN_NAME");
+            return pluginName != null && pluginName.toLowerCase().contains(keyword);
+        }
+        return true;
+    }
+
+    private static Long parseId(String cursor) {
+        try {
+            return cursor == null || cursor.isEmpty() ? null : Long.parseLong(cursor);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String nameVersionKey(String pluginName, String pluginVersion) {
+        return pluginName + '\u0000' + pluginVersion;
+    }
+
+    /**
+     * 注册表在内存中的索引：按编号、名称版本和更新时间，以及按状态分组的编号和更新时间顺序（按状态分页用）。
+     * 单行的写入在当前索引上修改，重新加载时构建新的索引后整体替换
+     */
+    private static final class Indexes {
+
+        final NavigableMap<Long, DataRow> byId = new ConcurrentSkipListMap<>();
+        final Map<String, Long> byNameVersion = new ConcurrentHashMap<>();
+        final NavigableSet<TimeKey> byTime = new ConcurrentSkipListSet<>();
+        final Map<Integer, NavigableSet<Long>> statusIds = new ConcurrentHashMap<>();
+        final Map<Integer, NavigableSet<TimeKey>> statusTimes = new ConcurrentHashMap<>();
+
+        NavigableSet<Long> byStatusId(int status) {
+            return statusIds.computeIfAbsent(status, key -> new ConcurrentSkipListSet<>());
+        }
+
+        NavigableSet<TimeKey> byStatusTime(int status) {
+            return statusTimes.computeIfAbsent(status, key -> new ConcurrentSkipListSet<>());
+        }
+
+        /**
+         * 写入或替换数据行，同时维护名称版本索引和更新时间索引
+         */
+        void put(DataRow value) {
+            long pluginId = value.getLong("ID");
+            DataRow previous = byId.put(pluginId, value);
+            if (previous != null) {
+                unindex(previous, pluginId);
+            }
+            byNameVersion.put(nameVersionKey(value.getString("PLUGIN_NAME"), value.getString("PLUGIN_VERSION")), pluginId);
+            byTime.add(TimeKey.of(value));
+            int status = value.getInt("PLUGIN_STATUS", -1);
+            byStatusId(status).add(pluginId);
+            byStatusTime(status).add(TimeKey.of(value));
+        }
+
+        /**
+         * 移除数据行
+         *
+         * @return 是否存在
+         */
+        boolean remove(long pluginId) {
+            DataRow previous = byId.remove(pluginId);
+            if (previous == null) {
+                return false;
+            }
+            unindex(previous, pluginId);
+            return true;
+        }
+
+        private void unindex(DataRow previous, long pluginId) {
+            byNameVersion.remove(nameVersionKey(previous.getString("PLUGIN_NAME"), previous.getString("PLUGIN_VERSION")), pluginId);
+            byTime.remove(TimeKey.of(previous));
+            int status = previous.getInt("PLUGIN_STATUS", -1);
+            byStatusId(status).remove(pluginId);
+            byStatusTime(status).remove(TimeKey.of(previous));
+        }
+    }
+
+    /**
+     * 更新时间排序键，时间相同时按插件编号排序，保证顺序稳定
+     */
+    private record TimeKey(long time, long id) implements Comparable<TimeKey> {
+
+        static TimeKey of(DataRow row) {
+            Date updateTime = row.getDate("UPDATE_TIME");
+            return new TimeKey(updateTime != null ? updateTime.getTime() : 0, row.getLong("ID"));
+        }
+
+        static TimeKey parse(String cursor) {
+            if (cursor == null) {
+                return null;
+            }
+            int split = cursor.indexOf('_');
+            try {
+                return split < 0 ? null : new TimeKey(Long.parseLong(cursor.substring(0, split)), Long.parseLong(cursor.substring(split + 1)));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public int compareTo(TimeKey other) {
+            int result = Long.compare(time, other.time);
+            return result != 0 ? result : Long.compare(id, other.id);
+        }
+
+        @Override
+        public String toString() {
+            return time + "_" + id;
+        }
+    }
+
+    private static DataRow copy(DataRow row) {
+        DataRow copy = new DataRow();
+        copy.putAll(row);
+        return copy;
+    }
+}
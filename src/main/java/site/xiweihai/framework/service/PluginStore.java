@@ -0,0 +1,209 @@
+package site.xiweihai.framework.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.noear.solon.Solon;
+import site.xiweihai.framework.utils.FileDigestCache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+
+/**
+ * 插件包存储
+ * 插件包按内容（MD5）存放在 plugins/.blobs 下，同一份内容只保存一次；
+ * plugins/&lt;名称&gt;/&lt;版本&gt;/&lt;文件名&gt; 是指向内容文件的硬链接（文件系统不支持硬链接时退化为复制），
+ * 数据库中的 PLUGIN_DIGEST 记录引用的内容。
+ * 上传的插件包只读取一遍：边接收边计算摘要、校验 jar 结构并写入临时文件，
+ * 全部通过后原子重命名为内容文件；内容已存在时直接丢弃临时文件，只建立链接。
+ * 开启 server.request.useTempfile 时 Solon 在调用处理方法之前已把请求体写入自己的临时文件，
+ * 这里读取的是该临时文件，这次落盘不在本类的控制范围内
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+@Slf4j
+public class PluginStore {
+
+    /**
+     * 内容文件目录，位于插件根目录下
+     */
+    public static final String BLOB_DIR = ".blobs";
+
+    /**
+     * 接收中的临时文件目录，与内容文件在同一文件系统上，保证可以原子重命名
+     */
+    private static final String INCOMING_DIR = ".incoming";
+
+    /**
+     * 插件根目录的配置项，未配置时为工作目录下的 plugins
+     */
+    public static final String ROOT_KEY = "plugin.root";
+
+    private static volatile Path root;
+
+    /**
+     * 获取插件根目录
+     *
+     * @return 插件根目录
+     */
+    public static Path root() {
+        Path current = root;
+        if (current == null) {
+            String configured = Solon.app() != null ? Solon.cfg().get(ROOT_KEY, "plugins") : "plugins";
+            root = current = Path.of(configured);
+        }
+        return current;
+    }
+
+    /**
+     * 在接收目录下分配一个新的临时文件路径，用于暂存接收中的插件包
+     *
+     * @return 临时文件路径，文件尚未创建
+     * @throws IOException 创建接收目录失败
+     */
+    public static Path staging() throws IOException {
+        Path incoming = root().resolve(BLOB_DIR).resolve(INCOMING_DIR);
+        Files.createDirectories(incoming);
+        return incoming.resolve(UUID.randomUUID() + ".jar");
+    }
+
+    /**
+     * 把已校验的临时文件收为内容文件并在目标位置建立引用；
+     * 相同内容已经存在时不移动临时文件，由调用方删除
+     *
+     * @param staged 已校验的临时文件，位于 {@link #staging()} 分配的路径
+     * @param md5    插件包MD5
+     * @param target 插件包的保存路径
+     * @throws IOException 移动或建立链接失败
+     */
+    public static void adopt(Path staged, String md5, Path target) throws IOException {
+        Path blob = blobPath(md5);
+        if (Files.exists(blob)) {
+            // 相同内容已经存在，不再保存第二份
+            log.info("Plugin jar {} already stored as {}", target, blob);
+        } else {
+            Files.createDirectories(blob.getParent());
+            moveAtomic(staged, blob);
+            // 摘要在接收时已经算好，直接写入缓存，列目录时不再重新读取文件
+            FileDigestCache.global().put(blob.toFile(), md5);
+        }
+        link(blob, target);
+        FileDigestCache.global().put(target.toFile(), md5);
+    }
+
+    /**
+     * 为已存在的内容建立新的引用，只处理元数据，不需要上传文件
+     *
+     * @param md5    插件包MD5
+     * @param target 插件包的保存路径
+     * @return 内容存在并已建立引用时返回 true，内容不存在时返回 false
+     * @throws IOException 建立链接失败
+     */
+    public static boolean storeExisting(String md5, Path target) throws IOException {
+        if (!isValidDigest(md5)) {
+            return false;
+        }
+        Path blob = blobPath(md5);
+        if (!Files.isRegularFile(blob)) {
+            return false;
+        }
+        link(blob, target);
+        FileDigestCache.global().put(target.toFile(), md5);
+        return true;
+    }
+
+    /**
+     * 判断内容是否已保存
+     *
+     * @param md5 插件包MD5
+     * @return 是否已保存
+     */
+    public static boolean exists(String md5) {
+        return isValidDigest(md5) && Files.isRegularFile(blobPath(md5));
+    }
+
+    /**
+     * 删除不再被任何插件引用的内容文件
+     *
+     * @param md5 插件包MD5
+     * @throws IOException 删除失败
+     */
+    public static void release(String md5) throws IOException {
+        if (isValidDigest(md5) && Files.deleteIfExists(blobPath(md5))) {
+            log.info("Plugin blob {} released", md5);
+        }
+    }
+
+    /**
+     * 获取内容文件路径：.blobs/MD5前两位/MD5.jar，避免单个目录下文件过多
+     *
+     * @param md5 插件包MD5
+     * @return 内容文件路径
+     */
+    public static Path blobPath(String md5) {
+        return root().resolve(BLOB_DIR).resolve(md5.substring(0, 2)).resolve(md5 + ".jar");
+    }
+
+    /**
+     * 在目标位置建立指向内容文件的硬链接，先在同目录下建好再原子替换，
+     * 不支持硬链接（如跨文件系统）时复制一份
+     */
+    private static void link(Path blob, Path target) throws IOException {
+        Files.createDirectories(target.toAbsolutePath().getParent());
+        Path temp = target.resolveSibling(target.getFileName() + ".linking");
+        Files.deleteIfExists(temp);
+        try {
+            Files.createLink(temp, blob);
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            log.warn("Hard link not supported, copy {} to {}", blob, target);
+            Files.copy(blob, temp, StandardCopyOption.REPLACE_EXISTING);
+        }
+        try {
+            moveAtomic(temp, target);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * 以上传的内容替换文件：先写入同目录下的临时文件再原子重命名，
+     * 目标是硬链接时只替换目录项，不会改写其他链接共用的文件内容
+     *
+     * @param in     上传的数据流，由调用方关闭
+     * @param target 目标文件
+     * @throws IOException 读写失败
+     */
+    public static void replace(InputStream in, Path target) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".uploading");
+        try {
+            Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            moveAtomic(temp, target);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * 原子替换目标文件，文件系统不支持原子移动时退化为普通替换
+     */
+    static void moveAtomic(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            log.warn("Atomic move not supported, fallback to replace: {}", target);
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 摘要会拼接到文件路径中，只接受32位十六进制字符串
+     */
+    private static boolean isValidDigest(String md5) {
+        return md5 != null && md5.matches("[0-9a-f]{32}");
+    }
+}
@@ -0,0 +1,182 @@
+package site.xiweihai.framework.utils;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * 目录列表引擎
+ * 基于 {@link Files#newDirectoryStream(Path)} 流式遍历目录，每个条目只读取一次
+ * {@link BasicFileAttributes}（一次系统调用拿到大小、修改时间和类型）。
+ * 支持按名称、大小、修改时间排序以及游标分页：遍历时只保留当前页所需的条目（有界堆），
+ * 即使目录中有数万个文件也不会全部加载到内存中。已在文件索引中的目录可以直接对索引中的条目分页，不再读取磁盘
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+public class DirectoryLister {
+
+    /**
+     * 按名称排序
+     */
+    public static final String SORT_NAME = "name";
+
+    /**
+     * 按大小排序
+     */
+    public static final String SORT_SIZE = "size";
+
+    /**
+     * 按修改时间排序
+     */
+    public static final String SORT_TIME = "time";
+
+    /**
+     * 目录条目
+     *
+     * @param name         文件名
+     * @param size         文件大小
+     * @param lastModified 修改时间（毫秒）
+     * @param directory    是否目录
+     */
+    public record FileEntry(String name, long size, long lastModified, boolean directory) {
+    }
+
+    /**
+     * 一页目录条目
+     *
+     * @param entries    当前页的条目
+     * @param nextCursor 下一页的游标，没有下一页时为 null
+     */
+    public record Listing(List<FileEntry> entries, String nextCursor) {
+    }
+
+    /**
+     * 分页列出目录中的条目，目录排在文件前面，同类条目按指定方式升序排列
+     *
+     * @param dir    目录
+     * @param sort   排序方式，{@link #SORT_NAME}、{@link #SORT_SIZE} 或 {@link #SORT_TIME}
+     * @param cursor 上一页返回的游标，为空时从第一页开始
+     * @param size   每页条数
+     * @return 一页目录条目
+     * @throws IOException 读取目录失败
+     */
+    public static Listing list(Path dir, String sort, String cursor, int size) throws IOException {
+        Page page = new Page(sort, cursor, size);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path path : stream) {
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                } catch (IOException e) {
+                    // 遍历过程中被删除的文件直接跳过
+                    continue;
+                }
+                page.offer(new FileEntry(path.getFileName().toString(), attrs.size(),
+                        attrs.lastModifiedTime().toMillis(), attrs.isDirectory()));
+            }
+        }
+        return page.finish();
+    }
+
+    /**
+     * 对已读取的目录条目分页，排序和游标规则与 {@link #list(Path, String, String, int)} 相同
+     *
+     * @param entries 目录条目，例如文件索引中保存的条目
+     * @param sort    排序方式
+     * @param cursor  上一页返回的游标，为空时从第一页开始
+     * @param size    每页条数
+     * @return 一页目录条目
+     */
+    public static Listing list(Collection<FileEntry> entries, String sort, String cursor, int size) {
+        Page page = new Page(sort, cursor, size);
+        for (FileEntry entry : entries) {
+            page.offer(entry);
+        }
+        return page.finish();
+    }
+
+    /**
+     * 目录优先，再按排序字段升序，最后按名称保证顺序唯一
+     */
+    private static Comparator<FileEntry> comparator(String sort) {
+        Comparator<FileEntry> comparator = Comparator.comparing(entry -> !entry.directory());
+        if (SORT_SIZE.equals(sort)) {
+            comparator = comparator.thenComparingLong(FileEntry::size);
+        } else if (SORT_TIME.equals(sort)) {
+            comparator = comparator.thenComparingLong(FileEntry::lastModified);
+        }
+        return comparator.thenComparing(FileEntry::name);
+    }
+
+    /**
+     * 游标格式：是否目录|大小|修改时间|名称
+     */
+    private static String toCursor(FileEntry entry) {
+        return (entry.directory() ? "d" : "f") + "|" + entry.size() + "|" + entry.lastModified() + "|" + entry.name();
+    }
+
+    private static FileEntry parseCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        String[] parts = cursor.split("\\|", 4);
+        if (parts.length != 4) {
+            return null;
+        }
+        try {
+            return new FileEntry(parts[3], Long.parseLong(parts[1]), Long.parseLong(parts[2]), "d".equals(parts[0]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 分页过程：大顶堆只保留排序最靠前的 limit+1 个条目，多出的一个用于判断是否还有下一页
+     */
+    private static final class Page {
+
+        private final Comparator<FileEntry> comparator;
+        private final FileEntry after;
+        private final int limit;
+        private final PriorityQueue<FileEntry> heap;
+
+        Page(String sort, String cursor, int size) {
+            this.comparator = comparator(sort);
+            this.after = parseCursor(cursor);
+            this.limit = Math.max(1, size);
+            // 不分页时 size 为 Integer.MAX_VALUE，limit + 1 会溢出，先比较再加一
+            this.heap = new PriorityQueue<>(limit >= 1024 ? 1024 : limit + 1, comparator.reversed());
+        }
+
+        void offer(FileEntry entry) {
+            if (after != null && comparator.compare(entry, after) <= 0) {
+                return;
+            }
+            if (heap.size() <= limit) {
+                heap.offer(entry);
+            } else if (comparator.compare(entry, heap.peek()) < 0) {
+                heap.poll();
+                heap.offer(entry);
+            }
+        }
+
+        Listing finish() {
+            List<FileEntry> entries = new ArrayList<>(heap);
+            entries.sort(comparator);
+            String nextCursor = null;
+            if (entries.size() > limit) {
+                entries.remove(limit);
+                nextCursor = toCursor(entries.get(limit - 1));
+            }
+            return new Listing(entries, nextCursor);
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package site.xiweihai.framework.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import site.xiweihai.framework.service.PluginStore;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 文件摘要缓存
+ * 以 路径+大小+修改时间 作为键持久化文件MD5，避免每次列目录都重新读取整个文件。
+ * 缓存以追加日志的形式保存在插件根目录下，重启后自动加载；未命中的条目在后台线程中计算，
+ * 调用方立即得到 null（表示计算中），下次访问即可命中。
+ * 计算失败时在内存中记录失败标记（空摘要），文件大小或修改时间变化后才重新计算；失败标记不写入日志，重启后重试。
+ * 日志保持一个写入流，记录数超过有效条目的两倍时压缩，同时移除已删除文件的条目。
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+@Slf4j
+public class FileDigestCache {
+
+    /**
+     * 缓存文件名，位于插件根目录下
+     */
+    public static final String CACHE_FILE_NAME = ".digest-cache";
+
+    /**
+     * 同时计算摘要的线程数，限制磁盘并发读
+     */
+    private static final int DIGEST_THREADS = 2;
+
+    /**
+     * 日志记录数低于该值时不压缩
+     */
+    private static final int COMPACT_THRESHOLD = 1024;
+
+    private static volatile FileDigestCache global;
+
+    private final Path journal;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor;
+    private final Object writeLock = new Object();
+    private final int compactThreshold;
+    private BufferedWriter writer;
+    private int journalLines;
+
+    /**
+     * 缓存条目
+     *
+     * @param size         文件大小
+     * @param lastModified 文件修改时间
+     * @param md5          文件MD5，计算失败时为空字符串
+     */
+    public record Entry(long size, long lastModified, String md5) {
+    }
+
+    /**
+     * 创建摘要缓存
+     *
+     * @param root 插件根目录，缓存日志保存在该目录下
+     */
+    public FileDigestCache(Path root) {
+        this(root, COMPACT_THRESHOLD);
+    }
+
+    /**
+     * 创建摘要缓存
+     *
+     * @param root             插件根目录，缓存日志保存在该目录下
+     * @param compactThreshold 日志记录数低于该值时不压缩
+     */
+    FileDigestCache(Path root, int compactThreshold) {
+        this.journal = root.resolve(CACHE_FILE_NAME);
+        this.compactThreshold = compactThreshold;
+        this.executor = Executors.newFixedThreadPool(DIGEST_THREADS,
+                Thread.ofPlatform().daemon().name("file-digest-", 0).factory());
+        load();
+    }
+
+    /**
+     * 获取全局的摘要缓存，缓存目录为插件根目录
+     *
+     * @return 摘要缓存
+     */
+    public static FileDigestCache global() {
+        if (global == null) {
+            synchronized (FileDigestCache.class) {
+                if (global == null) {
+                    global = new FileDigestCache(PluginStore.root());
+                }
+            }
+        }
+        return global;
+    }
+
+    /**
+     * 获取文件MD5，未命中时提交后台计算并返回 null
+     *
+     * @param file         文件
+     * @param size         文件大小
+     * @param lastModified 文件修改时间
+     * @return 文件MD5，计算中时返回 null；计算失败时返回空字符串；日志文件本身不计算，始终返回空字符串
+     */
+    public String get(File file, long size, long lastModified) {
+        if (isJournal(file)) {
+            // 计算结果会追加到日志，日志的变化又会触发计算，不计算日志本身
+            return "";
+        }
+        String key = key(file);
+        Entry entry = entries.get(key);
+        if (entry != null && entry.size() == size && entry.lastModified() == lastModified) {
+            return entry.md5();
+        }
+        // 同一文件只提交一次计算任务
+        if (pending.add(key)) {
+            executor.execute(() -> compute(file, key));
+        }
+        return null;
+    }
+
+    /**
+     * 直接写入已知的摘要，例如上传时已经计算过的MD5
+     *
+     * @param file 文件
+     * @param md5  文件MD5
+     */
+    public void put(File file, String md5) {
+        String key = key(file);
+        Entry entry = new Entry(file.length(), file.lastModified(), md5);
+        entries.put(key, entry);
+        append(key, entry);
+    }
+
+    /**
+     * 判断是否为日志文件或压缩日志时的临时文件
+     */
+    private boolean isJournal(File file) {
+        Path path = file.toPath().toAbsolutePath().normalize();
+        Path current = journal.toAbsolutePath().normalize();
+        return path.equals(current) || path.equals(current.resolveSibling(CACHE_FILE_NAME + ".tmp"));
+    }
+
+    /**
+     * 在后台线程中计算文件摘要并记录
+     */
+    private void compute(File file, String key) {
+        try {
+            // 计算前后各取一次属性，计算过程中文件被修改则丢弃结果
+            long size = file.length();
+            long lastModified = file.lastModified();
+            String md5 = ToolUtils.getMD5(file);
+            if (size == file.length() && lastModified == file.lastModified()) {
+                // 计算失败时记录空摘要，文件变化前不再重复提交，也不会一直显示为计算中
+                Entry entry = new Entry(size, lastModified, md5);
+                entries.put(key, entry);
+                if (!md5.isEmpty()) {
+                    append(key, entry);
+                }
+            }
+        } finally {
+            pending.remove(key);
+        }
+    }
+
+    /**
+     * 从日志加载缓存，同一路径以最后一条记录为准；无效记录过多时压缩日志
+     */
+    private void load() {
+        if (!Files.exists(journal)) {
+            return;
+        }
+        try {
+            List<String> lines = Files.readAllLines(journal, StandardCharsets.UTF_8);
+            for (String line : lines) {
+                // 格式：大小\t修改时间\tMD5\t路径
+                String[] parts = line.split("\t", 4);
+                if (parts.length == 4) {
+                    try {
+                        entries.put(parts[3], new Entry(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2]));
+                    } catch (NumberFormatException ignored) {
+                        // 忽略损坏的记录
+                    }
+                }
+            }
+            journalLines = lines.size();
+            if (journalLines > entries.size() * 2) {
+                compact();
+            }
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 关闭日志写入流，之后的记录会重新打开
+     */
+    public void close() {
+        synchronized (writeLock) {
+            closeWriter();
+        }
+    }
+
+    /**
+     * 日志中的记录数
+     *
+     * @return 记录数
+     */
+    public int journalLines() {
+        synchronized (writeLock) {
+            return journalLines;
+        }
+    }
+
+    /**
+     * 缓存的条目数
+     *
+     * @return 条目数
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * 追加一条缓存记录到日志，被覆盖的旧记录过多时压缩
+     */
+    private void append(String key, Entry entry) {
+        synchronized (writeLock) {
+            try {
+                if (writer == null) {
+                    Files.createDirectories(journal.getParent());
+                    writer = Files.newBufferedWriter(journal, StandardCharsets.UTF_8,
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                }
+                writer.write(format(key, entry));
+                // 每条记录立即写出，进程退出时最多丢失正在写的一条
+                writer.flush();
+                journalLines++;
+                if (journalLines >= compactThreshold && journalLines > entries.size() * 2) {
+                    compact();
+                }
+            } catch (IOException e) {
+                log.error(e.getMessage(), e);
+                closeWriter();
+            }
+        }
+    }
+
+    /**
+     * 用当前内存中的条目重写日志，去掉已被覆盖的旧记录和失败标记；已删除的文件同时移出内存
+     */
+    private void compact() throws IOException {
+        synchronized (writeLock) {
+            closeWriter();
+            entries.keySet().removeIf(key -> !new File(key).isFile());
+            Path temp = journal.resolveSibling(CACHE_FILE_NAME + ".tmp");
+            int lines = 0;
+            try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Entry> item : entries.entrySet()) {
+                    if (item.getValue().md5().isEmpty()) {
+                        continue;
+                    }
+                    out.write(format(item.getKey(), item.getValue()));
+                    lines++;
+                }
+            }
+            Files.move(temp, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            journalLines = lines;
+        }
+    }
+
+    private void closeWriter() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                log.warn("Digest journal not closed: {}", e.getMessage());
+            }
+            writer = null;
+        }
+    }
+
+    private static String format(String key, Entry entry) {
+        return entry.size() + "\t" + entry.lastModified() + "\t" + entry.md5() + "\t" + key + "\n";
+    }
+
+    private static String key(File file) {
+        return file.getAbsoluteFile().toPath().normalize().toString();
+    }
+}
@@ -0,0 +1,173 @@
+package site.xiweihai.framework.utils;
+
+import org.noear.solon.core.handle.Context;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 文件下载工具
+ * 使用 {@link FileChannel#transferTo} 分段输出文件内容。Solon 的请求上下文只提供输出流，
+ * 目标是包装输出流得到的通道，JDK 在这种情况下经用户态缓冲区复制，不会走 sendfile 等零拷贝路径；
+ * 支持单段 Range 请求用于断点续传，支持基于文件摘要的 ETag/If-None-Match，未变化的文件直接返回 304
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+public class FileDownloader {
+
+    /**
+     * 下载文件
+     *
+     * @param ctx    请求上下文
+     * @param file   要下载的文件
+     * @param digest 文件MD5，未知时为 null，此时使用大小和修改时间生成弱 ETag
+     * @throws IOException 读取文件或写出响应失败
+     */
+    public static void send(Context ctx, File file, String digest) throws IOException {
+        long length = file.length();
+        String etag = digest != null && !digest.isEmpty()
+                ? "\"" + digest + "\""
+                : "W/\"" + Long.toHexString(length) + "-" + Long.toHexString(file.lastModified()) + "\"";
+
+        ctx.headerSet("ETag", etag);
+        ctx.headerSet("Accept-Ranges", "bytes");
+
+        // 客户端缓存的内容没有变化
+        String ifNoneMatch = ctx.header("If-None-Match");
+        if (ifNoneMatch != null && matches(ifNoneMatch, etag)) {
+            ctx.status(304);
+            return;
+        }
+
+        long start = 0;
+        long end = length - 1;
+        String range = ctx.header("Range");
+        String ifRange = ctx.header("If-Range");
+        // If-Range 与当前 ETag 不一致时说明文件已变化，忽略 Range 返回完整内容
+        if (range != null && ifRangeMatches(ifRange, etag)) {
+            long[] bounds = parseRange(range, length);
+            if (bounds == null) {
+                ctx.status(416);
+                ctx.headerSet("Content-Range", "bytes */" + length);
+                return;
+            }
+            if (bounds.length == 2) {
+                start = bounds[0];
+                end = bounds[1];
+                ctx.status(206);
+                ctx.headerSet("Content-Range", "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+
+        long count = Math.max(0, end - start + 1);
+        ctx.contentType("application/octet-stream");
+        ctx.headerSet("Content-Disposition", "attachment; filename*=UTF-8''"
+                + URLEncoder.encode(file.getName(), StandardCharsets.UTF_8).replace("+", "%20"));
+        ctx.contentLength(count);
+        if ("HEAD".equalsIgnoreCase(ctx.method())) {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            OutputStream out = ctx.outputStream();
+            // 包装输出流的通道不是套接字通道，transferTo 在这里按缓冲区读出再写入，只省去手写的复制循环
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = start;
+            long remaining = count;
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, target);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+                remaining -= sent;
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * 判断是否可以按 Range 返回部分内容：没有 If-Range 时可以；
+     * If-Range 只能用强比较，弱 ETag 不保证内容逐字节相同，拼接两次下载的片段可能得到损坏的文件，此时返回完整内容
+     *
+     * @param ifRange If-Range 请求头
+     * @param etag    当前 ETag
+     * @return 是否可以返回部分内容
+     */
+    static boolean ifRangeMatches(String ifRange, String etag) {
+        if (ifRange == null) {
+            return true;
+        }
+        return !etag.startsWith("W/") && ifRange.equals(etag);
+    }
+
+    /**
+     * 解析单段 Range 请求头
+     *
+     * @param range  Range 请求头，如 bytes=0-99、bytes=100-、bytes=-100
+     * @param length 文件长度
+     * @return 范围起止位置（含）；格式不支持（如多段）时返回空数组表示忽略 Range；范围无法满足时返回 null
+     */
+    static long[] parseRange(String range, long length) {
+        if (!range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+            return new long[0];
+        }
+        String spec = range.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return new long[0];
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                // bytes=-N 表示最后 N 个字节
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) {
+                    return null;
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+            }
+            if (start >= length || start > end) {
+                return null;
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+
+    /**
+     * 判断 If-None-Match 是否与当前 ETag 匹配，支持 * 和逗号分隔的多个值
+     */
+    private static boolean matches(String ifNoneMatch, String etag) {
+        String opaque = etag.startsWith("W/") ? etag.substring(2) : etag;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            if (value.equals("*")) {
+                return true;
+            }
+            if (value.startsWith("W/")) {
+                value = value.substring(2);
+            }
+            if (value.equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,406 @@
+package site.xiweihai.framework.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import site.xiweihai.framework.service.PluginStore;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * 插件目录文件索引
+ * 后台线程通过 {@link WatchService} 监听插件根目录下的每个目录，在内存中维护目录条目及其属性，
+ * 文件管理页面直接对索引中的条目分页，不再每次读取磁盘。文件变化时提交摘要缓存在后台重新计算MD5，
+ * 下次列目录即可命中。事件溢出（{@code OVERFLOW}）时丢失的变化无法得知，重新扫描整个插件根目录。
+ * 未建立索引的目录（监听未启动、扫描未完成或不在插件根目录下）由调用方回退为直接读取磁盘。
+ * 根目录下以 . 开头的条目（内容文件目录、摘要缓存日志等应用自身的数据）不建立索引，也不计算摘要，
+ * 否则摘要缓存追加日志引起的事件会再次计算日志的摘要，循环不止。
+ * 其他组件可以注册 {@link Listener} 感知磁盘上的变化
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+@Slf4j
+public class FileIndex {
+
+    private static volatile FileIndex global;
+
+    private final Path root;
+    private final Set<String> excluded;
+    private final FileDigestCache digests;
+    private final Map<Path, Dir> dirs = new ConcurrentHashMap<>();
+    private final AtomicLong versions = new AtomicLong();
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong rescans = new AtomicLong();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile WatchService watcher;
+
+    /**
+     * 文件变化监听器，在监听线程上回调，不应执行耗时操作
+     */
+    public interface Listener {
+
+        /**
+         * 磁盘上的文件或目录发生了新增、修改或删除
+         *
+         * @param path 变化的路径
+         */
+        void changed(Path path);
+
+        /**
+         * 事件溢出后重新扫描了整个根目录，期间的变化无法逐个得知
+         */
+        default void rescanned() {
+        }
+    }
+
+    /**
+     * 已建立索引的目录
+     */
+    private static final class Dir {
+
+        final Map<String, DirectoryLister.FileEntry> entries = new ConcurrentHashMap<>();
+        final WatchKey key;
+        volatile long version;
+
+        Dir(WatchKey key, long version) {
+            this.key = key;
+            this.version = version;
+        }
+    }
+
+    /**
+     * 创建文件索引
+     *
+     * @param root     监听的根目录
+     * @param excluded 根目录下不建立索引的子目录名称
+     * @param digests  文件变化时提交计算的摘要缓存，为 null 时不计算
+     */
+    public FileIndex(Path root, Set<String> excluded, FileDigestCache digests) {
+        this.root = root.toAbsolutePath().normalize();
+        this.excluded = excluded;
+        this.digests = digests;
+    }
+
+    /**
+     * 获取全局的文件索引，监听插件根目录，内容文件目录不在页面中展示，不建立索引
+     *
+     * @return 文件索引
+     */
+    public static FileIndex global() {
+        if (global == null) {
+            synchronized (FileIndex.class) {
+                if (global == null) {
+                    global = new FileIndex(PluginStore.root(), Set.of(PluginStore.BLOB_DIR), FileDigestCache.global());
+                }
+            }
+        }
+        return global;
+    }
+
+    /**
+     * 启动后台监听线程，线程启动后先完整扫描一次根目录；重复调用时忽略
+     */
+    public synchronized void start() {
+        if (watcher != null) {
+            return;
+        }
+        try {
+            Files.createDirectories(root);
+            watcher = root.getFileSystem().newWatchService();
+        } catch (IOException e) {
+            // 不支持监听时列目录直接读取磁盘
+            log.warn("File index disabled, watch service unavailable for {}: {}", root, e.getMessage());
+            return;
+        }
+        Thread.ofPlatform().daemon().name("plugin-file-watcher").start(this::watch);
+    }
+
+    /**
+     * 停止监听并清空索引
+     */
+    public synchronized void stop() {
+        WatchService current = watcher;
+        watcher = null;
+        dirs.clear();
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                log.warn("Failed to close file watcher: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 添加文件变化监听器，只通知监听事件引起的变化，应用自身通过 {@link #refresh(Path)} 更新的不通知
+     *
+     * @param listener 监听器
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 从索引中分页列出目录条目
+     *
+     * @param dir    目录
+     * @param sort   排序方式
+     * @param cursor 上一页返回的游标，为空时从第一页开始
+     * @param size   每页条数
+     * @return 一页目录条目，目录未建立索引时返回 null
+     */
+    public DirectoryLister.Listing list(Path dir, String sort, String cursor, int size) {
+        Dir node = dirs.get(normalize(dir));
+        return node != null ? DirectoryLister.list(node.entries.values(), sort, cursor, size) : null;
+    }
+
+    /**
+     * 获取目录的版本号，目录中的条目新增、删除、修改后都会变化，可用作页面缓存的版本
+     *
+     * @param dir 目录
+     * @return 版本号，目录未建立索引时返回 -1
+     */
+    public long version(Path dir) {
+        Dir node = dirs.get(normalize(dir));
+        return node != null ? node.version : -1;
+    }
+
+    /**
+     * 立即按磁盘状态更新一个条目，应用自身写入文件后调用，使随后的列目录不必等待监听事件
+     *
+     * @param path 新增、修改或删除的文件或目录
+     */
+    public void refresh(Path path) {
+        if (watcher != null) {
+            update(normalize(path), false);
+        }
+    }
+
+    /**
+     * 已建立索引的目录数
+     *
+     * @return 目录数
+     */
+    public int size() {
+        return dirs.size();
+    }
+
+    /**
+     * 已处理的监听事件数
+     *
+     * @return 事件数
+     */
+    public long events() {
+        return events.get();
+    }
+
+    /**
+     * 完整扫描的次数，包括启动时的首次扫描和事件溢出后的重新扫描
+     *
+     * @return 扫描次数
+     */
+    public long rescans() {
+        return rescans.get();
+    }
+
+    /**
+     * 监听线程：先完整扫描，再逐批处理目录的变化事件
+     */
+    private void watch() {
+        WatchService service = watcher;
+        rescan(service);
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                Path dir = (Path) key.watchable();
+                boolean overflow = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    events.incrementAndGet();
+                    if (event.kind() == OVERFLOW) {
+                        overflow = true;
+                    } else {
+                        update(dir.resolve((Path) event.context()), true);
+                    }
+                }
+                if (!key.reset()) {
+                    // 目录已被删除或不可访问
+                    drop(dir);
+                }
+                if (overflow) {
+                    log.warn("File watcher overflow in {}, rescanning {}", dir, root);
+                    rescan(service);
+                    for (Listener listener : listeners) {
+                        listener.rescanned();
+                    }
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // 已停止
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 完整扫描根目录，重建所有目录的条目，并移除已不存在的目录
+     */
+    private void rescan(WatchService service) {
+        rescans.incrementAndGet();
+        Set<Path> seen = new HashSet<>();
+        scan(service, root, seen);
+        for (Path dir : new ArrayList<>(dirs.keySet())) {
+            if (!seen.contains(dir)) {
+                Dir node = dirs.remove(dir);
+                if (node != null) {
+                    node.key.cancel();
+                }
+            }
+        }
+    }
+
+    /**
+     * 注册目录监听并读取目录条目，再递归扫描子目录。先注册后读取，读取期间发生的变化会以事件补上
+     */
+    private void scan(WatchService service, Path dir, Set<Path> seen) {
+        if (isExcluded(dir)) {
+            return;
+        }
+        Dir node;
+        List<Path> children = new ArrayList<>();
+        try {
+            node = new Dir(dir.register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), versions.incrementAndGet());
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path path : stream) {
+                    if (isHidden(path)) {
+                        continue;
+                    }
+                    DirectoryLister.FileEntry entry = read(path);
+                    if (entry != null) {
+                        node.entries.put(entry.name(), entry);
+                        if (entry.directory() && !Files.isSymbolicLink(path)) {
+                            children.add(path);
+                        }
+                    }
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            return;
+        } catch (IOException e) {
+            // 扫描期间被删除或无权访问的目录不建立索引，列目录时回退为读取磁盘
+            log.warn("Failed to index directory {}: {}", dir, e.getMessage());
+            return;
+        }
+        dirs.put(dir, node);
+        seen.add(dir);
+        for (Path child : children) {
+            scan(service, child, seen);
+        }
+    }
+
+    /**
+     * 按磁盘状态更新目录中的一个条目：新建的目录开始监听，已删除的目录移出索引；
+     * 由监听事件引起时提交摘要计算并通知监听器
+     *
+     * @param path  条目路径
+     * @param event 是否由监听事件引起
+     */
+    private void update(Path path, boolean event) {
+        Path parent = path.getParent();
+        Dir node = parent != null ? dirs.get(parent) : null;
+        if (node == null || isHidden(path)) {
+            return;
+        }
+        String name = path.getFileName().toString();
+        DirectoryLister.FileEntry entry = read(path);
+        if (entry == null) {
+            DirectoryLister.FileEntry removed = node.entries.remove(name);
+            if (removed != null && removed.directory()) {
+                drop(path);
+            }
+        } else {
+            node.entries.put(name, entry);
+            WatchService service = watcher;
+            if (entry.directory() && !dirs.containsKey(path) && service != null && !Files.isSymbolicLink(path)) {
+                scan(service, path, new HashSet<>());
+            } else if (!entry.directory() && event && digests != null) {
+                digests.get(path.toFile(), entry.size(), entry.lastModified());
+            }
+        }
+        node.version = versions.incrementAndGet();
+        if (event) {
+            for (Listener listener : listeners) {
+                try {
+                    listener.changed(path);
+                } catch (RuntimeException e) {
+                    log.warn("File listener failed for {}: {}", path, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * 移除目录及其所有子目录的索引
+     */
+    private void drop(Path dir) {
+        for (Path path : new ArrayList<>(dirs.keySet())) {
+            if (path.startsWith(dir)) {
+                Dir node = dirs.remove(path);
+                if (node != null) {
+                    node.key.cancel();
+                }
+            }
+        }
+    }
+
+    /**
+     * 根目录下以 . 开头的条目是应用自身的数据，不在页面中展示
+     */
+    private boolean isHidden(Path path) {
+        Path fileName = path.getFileName();
+        return root.equals(path.getParent()) && fileName != null && fileName.toString().startsWith(".");
+    }
+
+    private boolean isExcluded(Path dir) {
+        if (dir.equals(root)) {
+            return false;
+        }
+        return !dir.startsWith(root) || excluded.contains(root.relativize(dir).getName(0).toString());
+    }
+
+    /**
+     * 读取条目属性，与 {@link DirectoryLister} 一样跟随符号链接，但不递归监听链接指向的目录；条目不存在时返回 null
+     */
+    private static DirectoryLister.FileEntry read(Path path) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            return new DirectoryLister.FileEntry(path.getFileName().toString(), attrs.size(),
+                    attrs.lastModifiedTime().toMillis(), attrs.isDirectory());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static Path normalize(Path path) {
+        return path.toAbsolutePath().normalize();
+    }
+}
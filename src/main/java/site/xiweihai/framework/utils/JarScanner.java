@@ -0,0 +1,229 @@
+package site.xiweihai.framework.utils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+/**
+ * 插件包单次读取扫描器
+ * 上传的数据流只读一遍：读取过程中同时计算MD5、写入目标文件，并用 {@link ZipInputStream}
+ * 解析 jar 结构（逐个条目读完以校验CRC，并读取 MANIFEST.MF），不需要在保存后再次读取文件。
+ * 同一遍读取中收集包名、META-INF/services 服务注册、Solon 插件声明和带 @Controller 注解的类，用于建立插件包索引
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+public class JarScanner {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String SERVICES_DIR = "META-INF/services/";
+
+    private static final String SOLON_META_DIR = "META-INF/solon/";
+
+    /**
+     * Solon @Controller 注解在类文件常量池中的类型描述符
+     */
+    private static final byte[] CONTROLLER_DESCRIPTOR = "Lorg/noear/solon/annotation/Controller;".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * 扫描结果
+     *
+     * @param md5          文件MD5
+     * @param size         文件大小
+     * @param entryCount   jar 中的条目数
+     * @param manifest     jar 的清单，没有清单时为 null
+     * @param packages     类所在的包名，有序去重
+     * @param services     META-INF/services 中注册的服务，键为服务接口，值为实现类
+     * @param solonPlugins META-INF/solon 中声明的 Solon 插件类
+     * @param controllers  带 @Controller 注解的类
+     */
+    public record JarScan(String md5, long size, int entryCount, Manifest manifest,
+                          SortedSet<String> packages, Map<String, List<String>> services,
+                          List<String> solonPlugins, List<String> controllers) {
+    }
+
+    /**
+     * 读取输入流，写入目标文件的同时计算摘要并校验 jar 结构
+     *
+     * @param in     上传的数据流，由调用方关闭
+     * @param target 写入的目标文件，已存在时覆盖
+     * @return 扫描结果
+     * @throws ZipException 数据不是合法的 jar/zip 文件
+     * @throws IOException  读写失败
+     */
+    public static JarScan scan(InputStream in, Path target) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(target), BUFFER_SIZE)) {
+            return scan(in, out);
+        }
+    }
+
+    /**
+     * 读取输入流，写入输出流的同时计算摘要并校验 jar 结构；只校验不保存时传入 {@link OutputStream#nullOutputStream()}
+     *
+     * @param in  数据流，由调用方关闭
+     * @param out 写入的输出流，由调用方关闭
+     * @return 扫描结果
+     * @throws ZipException 数据不是合法的 jar/zip 文件
+     * @throws IOException  读写失败
+     */
+    public static JarScan scan(InputStream in, OutputStream out) throws IOException {
+        MessageDigest digest = md5();
+        // ZipInputStream 每次只读取很小的块，两端都加缓冲减少系统调用
+        TeeInputStream tee = new TeeInputStream(new DigestInputStream(new BufferedInputStream(in, BUFFER_SIZE), digest), out);
+        int entryCount = 0;
+        Manifest manifest = null;
+        // ZipInputStream 不能关闭，否则会关闭底层流，后续还需要读完中央目录
+        ZipInputStream zip = new ZipInputStream(tee);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        SortedSet<String> packages = new TreeSet<>();
+        Map<String, List<String>> services = new TreeMap<>();
+        List<String> solonPlugins = new ArrayList<>();
+        List<String> controllers = new ArrayList<>();
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            entryCount++;
+            String name = entry.getName();
+            if (JarFile.MANIFEST_NAME.equalsIgnoreCase(name)) {
+                manifest = new Manifest(zip);
+            } else if (entry.isDirectory()) {
+                // 目录条目没有内容
+            } else if (name.startsWith(SERVICES_DIR)) {
+                readServices(name.substring(SERVICES_DIR.length()), zip, services);
+            } else if (name.startsWith(SOLON_META_DIR) && name.endsWith(".properties")) {
+                Properties props = new Properties();
+                props.load(new ByteArrayInputStream(zip.readAllBytes()));
+                String pluginClass = props.getProperty("solon.plugin");
+                if (pluginClass != null && !pluginClass.isBlank()) {
+                    solonPlugins.add(pluginClass.trim());
+                }
+            } else if (name.endsWith(".class") && !name.startsWith("META-INF/") && !name.endsWith("module-info.class")) {
+                int slash = name.lastIndexOf('/');
+                packages.add(slash < 0 ? "" : name.substring(0, slash).replace('/', '.'));
+                // 类文件一般很小，整体读入后在常量池中查找注解的类型描述符
+                if (indexOf(zip.readAllBytes(), CONTROLLER_DESCRIPTOR) >= 0) {
+                    controllers.add(name.substring(0, name.length() - ".class".length()).replace('/', '.'));
+                }
+            }
+            // 读完条目数据，条目结束时 ZipInputStream 会校验CRC
+            while (zip.read(buffer) != -1) {
+                // 仅消费数据
+            }
+            zip.closeEntry();
+        }
+        if (entryCount == 0) {
+            throw new ZipException("No entries found in jar");
+        }
+        // 读完中央目录等剩余数据，保证文件完整且摘要覆盖全部内容
+        while (tee.read(buffer) != -1) {
+            // 仅消费数据
+        }
+        return new JarScan(HexFormat.of().formatHex(digest.digest()), tee.count, entryCount, manifest,
+                packages, services, solonPlugins, controllers);
+    }
+
+    /**
+     * 读取服务注册文件，每行一个实现类，忽略空行和 # 之后的注释
+     */
+    private static void readServices(String service, InputStream in, Map<String, List<String>> services) throws IOException {
+        String content = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        for (String line : content.split("\\R")) {
+            int comment = line.indexOf('#');
+            String provider = (comment >= 0 ? line.substring(0, comment) : line).trim();
+            if (!provider.isEmpty()) {
+                services.computeIfAbsent(service, k -> new ArrayList<>()).add(provider);
+            }
+        }
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern) {
+        outer:
+        for (int i = 0; i <= data.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 读取时把数据同时写入输出流的输入流
+     */
+    private static class TeeInputStream extends FilterInputStream {
+
+        private final OutputStream out;
+        private long count;
+
+        TeeInputStream(InputStream in, OutputStream out) {
+            super(in);
+            this.out = out;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                out.write(b);
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                out.write(b, off, n);
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // 跳过的数据也必须写入目标文件，这里改为读取
+            byte[] buffer = new byte[(int) Math.min(n, BUFFER_SIZE)];
+            int read = read(buffer, 0, buffer.length);
+            return Math.max(read, 0);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package site.xiweihai.framework.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 大文本文件分页读写工具
+ * 读取时通过内存映射只访问当前窗口附近的数据，并为每个文件建立稀疏行索引（每 {@link #LINE_STEP} 行记录一次偏移），
+ * 可以直接跳到任意行；保存时只替换窗口对应的字节区间，其余内容用 {@link FileChannel#transferTo} 拷贝到临时文件后原子替换。
+ * 无论文件多大，内存占用只与窗口大小有关
+ *
+ * @author hai
+ * @since 2026/10/18
+ */
+public class TextFileWindow {
+
+    /**
+     * 稀疏行索引的步长
+     */
+    public static final int LINE_STEP = 1024;
+
+    /**
+     * 单个窗口最多读取的字节数
+     */
+    public static final int MAX_WINDOW_BYTES = 1024 * 1024;
+
+    /**
+     * 建立行索引时每次映射的大小
+     */
+    private static final long MAP_CHUNK = 64L * 1024 * 1024;
+
+    /**
+     * 最多缓存的行索引数量
+     */
+    private static final int MAX_INDEXES = 64;
+
+    private static final Map<String, LineIndex> indexes = new ConcurrentHashMap<>();
+
+    /**
+     * 稀疏行索引
+     *
+     * @param size         建立索引时的文件大小
+     * @param lastModified 建立索引时的修改时间
+     * @param totalLines   总行数
+     * @param checkpoints  第 i 个元素为第 i*LINE_STEP 行的起始偏移
+     */
+    public record LineIndex(long size, long lastModified, long totalLines, long[] checkpoints) {
+    }
+
+    /**
+     * 文件窗口
+     *
+     * @param startLine    窗口第一行的行号（从0开始）
+     * @param totalLines   文件总行数
+     * @param startOffset  窗口起始字节偏移
+     * @param endOffset    窗口结束字节偏移（不含）
+     * @param fileSize     文件大小
+     * @param lastModified 文件修改时间，保存时用于检测并发修改
+     * @param content      窗口内容
+     * @param crlf         窗口内容是否使用 \r\n 换行
+     */
+    public record Window(long startLine, long totalLines, long startOffset, long endOffset,
+                         long fileSize, long lastModified, String content, boolean crlf) {
+
+        /**
+         * 是否还有下一页
+         *
+         * @return 是否还有下一页
+         */
+        public boolean hasNext() {
+            return endOffset < fileSize;
+        }
+    }
+
+    /**
+     * 获取指定行的起始字节偏移
+     *
+     * @param file 文件
+     * @param line 行号（从0开始），超出总行数时返回最后一行
+     * @return 起始字节偏移
+     * @throws IOException 读取文件失败
+     */
+    public static long offsetOfLine(Path file, long line) throws IOException {
+        LineIndex index = index(file);
+        long target = Math.max(0, Math.min(line, Math.max(0, index.totalLines() - 1)));
+        int checkpoint = (int) (target / LINE_STEP);
+        long offset = index.checkpoints()[checkpoint];
+        long current = (long) checkpoint * LINE_STEP;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // 从最近的检查点向后数换行符，最多扫描 LINE_STEP 行
+            while (current < target && offset < index.size()) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(MAP_CHUNK, index.size() - offset));
+                int i = 0;
+                while (current < target && i < buffer.limit()) {
+                    if (buffer.get(i++) == '\n') {
+                        current++;
+                    }
+                }
+                offset += i;
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * 从指定偏移读取一个窗口，窗口在行尾结束，超过 {@link #MAX_WINDOW_BYTES} 时在字符边界截断
+     *
+     * @param file     文件
+     * @param offset   起始字节偏移
+     * @param maxLines 最多读取的行数
+     * @return 文件窗口
+     * @throws IOException 读取文件失败
+     */
+    public static Window read(Path file, long offset, int maxLines) throws IOException {
+        LineIndex index = index(file);
+        long size = index.size();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long start = Math.max(0, Math.min(offset, size));
+            long length = Math.min(MAX_WINDOW_BYTES, size - start);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            // 起始位置落在多字节字符中间时后移到字符边界
+            int from = 0;
+            while (from < length && isContinuation(buffer.get(from))) {
+                from++;
+            }
+            int end = from;
+            int lines = 0;
+            while (end < length && lines < Math.max(1, maxLines)) {
+                if (buffer.get(end++) == '\n') {
+                    lines++;
+                }
+            }
+            // 窗口被字节上限截断时，最后一个字符不完整则退回到该字符之前
+            if (end == length && start + end < size) {
+                int lead = end - 1;
+                while (lead > from && isContinuation(buffer.get(lead))) {
+                    lead--;
+                }
+                if (end - lead < charLength(buffer.get(lead))) {
+                    end = lead;
+                }
+            }
+            byte[] bytes = new byte[end - from];
+            buffer.get(from, bytes);
+            String content = new String(bytes, StandardCharsets.UTF_8);
+            long startOffset = start + from;
+            return new Window(lineOf(channel, index, startOffset), index.totalLines(), startOffset, start + end,
+                    size, index.lastModified(), content, content.contains("\r\n"));
+        }
+    }
+
+    /**
+     * 用新内容替换文件中的一段字节区间
+     * 先把区间之前的内容、新内容、区间之后的内容依次写入同目录的临时文件，再原子替换原文件
+     *
+     * @param file         文件
+     * @param startOffset  区间起始偏移
+     * @param endOffset    区间结束偏移（不含）
+     * @param content      新内容
+     * @param expectedSize 读取窗口时的文件大小，与当前大小不一致说明文件已被修改
+     * @param expectedLastModified 读取窗口时的修改时间
+     * @return 替换成功返回 true，文件在读取后已被修改时返回 false
+     * @throws IOException 读写文件失败
+     */
+    public static boolean replace(Path file, long startOffset, long endOffset, String content,
+                                  long expectedSize, long expectedLastModified) throws IOException {
+        long size = Files.size(file);
+        if (size != expectedSize || Files.getLastModifiedTime(file).toMillis() != expectedLastModified
+                || startOffset < 0 || startOffset > endOffset || endOffset > size) {
+            return false;
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".saving");
+        try {
+            try (FileChannel source = FileChannel.open(file, StandardOpenOption.READ);
+                 FileChannel target = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                transfer(source, 0, startOffset, target);
+                ByteBuffer bytes = ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+                while (bytes.hasRemaining()) {
+                    target.write(bytes);
+                }
+                transfer(source, endOffset, size - endOffset, target);
+                target.force(false);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            indexes.remove(key(file));
+            return true;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * 获取文件的行索引，文件大小或修改时间变化后重新建立
+     */
+    static LineIndex index(Path file) throws IOException {
+        String key = key(file);
+        long size = Files.size(file);
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+        LineIndex index = indexes.get(key);
+        if (index != null && index.size() == size && index.lastModified() == lastModified) {
+            return index;
+        }
+        index = buildIndex(file, size, lastModified);
+        if (indexes.size() >= MAX_INDEXES) {
+            indexes.clear();
+        }
+        indexes.put(key, index);
+        return index;
+    }
+
+    /**
+     * 分块映射整个文件，统计行数并记录检查点
+     */
+    private static LineIndex buildIndex(Path file, long size, long lastModified) throws IOException {
+        long[] checkpoints = new long[16];
+        int count = 1;
+        long lines = 0;
+        byte last = '\n';
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (long position = 0; position < size; position += MAP_CHUNK) {
+                long length = Math.min(MAP_CHUNK, size - position);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                for (int i = 0; i < length; i++) {
+                    last = buffer.get(i);
+                    if (last == '\n') {
+                        lines++;
+                        if (lines % LINE_STEP == 0) {
+                            if (count == checkpoints.length) {
+                                checkpoints = Arrays.copyOf(checkpoints, count * 2);
+                            }
+                            checkpoints[count++] = position + i + 1;
+                        }
+                    }
+                }
+            }
+        }
+        // 最后一行没有换行符时也算一行
+        long totalLines = last == '\n' ? lines : lines + 1;
+        return new LineIndex(size, lastModified, totalLines, Arrays.copyOf(checkpoints, count));
+    }
+
+    /**
+     * 计算偏移所在的行号：先二分查找最近的检查点，再向后数换行符
+     */
+    private static long lineOf(FileChannel channel, LineIndex index, long offset) throws IOException {
+        long[] checkpoints = index.checkpoints();
+        int found = Arrays.binarySearch(checkpoints, offset);
+        int checkpoint = found >= 0 ? found : -found - 2;
+        long line = (long) checkpoint * LINE_STEP;
+        long position = checkpoints[checkpoint];
+        while (position < offset) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_CHUNK, offset - position));
+            for (int i = 0; i < buffer.limit(); i++) {
+                if (buffer.get(i) == '\n') {
+                    line++;
+                }
+            }
+            position += buffer.limit();
+        }
+        return line;
+    }
+
+    private static void transfer(FileChannel source, long position, long count, FileChannel target) throws IOException {
+        while (count > 0) {
+            long sent = source.transferTo(position, count, target);
+            if (sent <= 0) {
+                throw new IOException("Unexpected end of file while copying");
+            }
+            position += sent;
+            count -= sent;
+        }
+    }
+
+    private static boolean isContinuation(byte b) {
+        return (b & 0xC0) == 0x80;
+    }
+
+    /**
+     * 根据UTF-8首字节计算字符占用的字节数
+     */
+    private static int charLength(byte lead) {
+        if ((lead & 0x80) == 0) {
+            return 1;
+        }
+        if ((lead & 0xE0) == 0xC0) {
+            return 2;
+        }
+        if ((lead & 0xF0) == 0xE0) {
+            return 3;
+        }
+        return 4;
+    }
+
+    private static String key(Path file) {
+        return file.toAbsolutePath().normalize().toString();
+    }
+}
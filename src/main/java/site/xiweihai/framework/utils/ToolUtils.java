@@ -37,19 +37,38 @@ public class ToolUtils {
     }
 
     public static List<Map<String, Object>> getFileList(File targetFileOrDir) {
-        File[] files = targetFileOrDir.listFiles();
-        List<Map<String, Object>> fileList = new ArrayList<>();
-        for (File file : files) {
+        try {
+            return toFileInfo(targetFileOrDir, DirectoryLister.list(targetFileOrDir.toPath(), DirectoryLister.SORT_NAME, null, Integer.MAX_VALUE).entries());
+        } catch (IOException e) {
+            log.error(e.getMessage(), e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * 把目录条目转换为页面展示用的文件信息
+     *
+     * @param dir     条目所在目录
+     * @param entries 目录条目
+     * @return 文件信息列表
+     */
+    public static List<Map<String, Object>> toFileInfo(File dir, List<DirectoryLister.FileEntry> entries) {
+        List<Map<String, Object>> fileList = new ArrayList<>(entries.size());
+        for (DirectoryLister.FileEntry entry : entries) {
             Map<String, Object> fileInfo = new HashMap<>();
-            fileInfo.put("name", file.getName());
-            fileInfo.put("size", ToolUtils.formatFileSize(file.length()));
-            fileInfo.put("lastModified", new Date(file.lastModified()));
-            fileInfo.put("md5", getMD5(file));
-            fileInfo.put("isDirectory", file.isDirectory());
+            fileInfo.put("name", entry.name());
+            fileInfo.put("size", ToolUtils.formatFileSize(entry.size()));
+            fileInfo.put("lastModified", new Date(entry.lastModified()));
+            // 摘要从缓存中读取，未计算完成时标记为计算中
+            String md5 = entry.directory() ? "" : FileDigestCache.global().get(new File(dir, entry.name()), entry.size(), entry.lastModified());
+            fileInfo.put("md5", md5 != null ? md5 : "");
+            fileInfo.put("md5Pending", md5 == null);
+            fileInfo.put("isDirectory", entry.directory());
             fileList.add(fileInfo);
         }
         return fileList;
     }
+
     public static String getMD5(File file) {
         String md5 = "";
         if (file.isDirectory()) {
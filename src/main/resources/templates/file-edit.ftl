@@ -15,10 +15,32 @@
 </head>
 <body>
 <h1>${i18n.get("plugin.file_edit_title")}</h1>
+<#if errorMsg??>
+    <div style="color: red;">${i18n.get(errorMsg)}</div>
+</#if>
 
-<form action="/plugin/file/save/${pluginId}" method="post">
-    <textarea name="content" id="content" cols="50" rows="10">${fileContent}</textarea>
+<#assign windowUrl = "/plugin/file/save/" + pluginId?c + "?path=" + currentPath?url + "&lines=" + lines?c>
+<form action="/plugin/file/save/${pluginId?c}" method="get">
     <input type="hidden" name="path" value="${currentPath}">
+    <input type="hidden" name="lines" value="${lines?c}">
+    ${i18n.get("file.line")} ${startLine?c} / ${totalLines?c}
+    <input type="number" name="line" min="1" value="${startLine?c}">
+    <button type="submit">${i18n.get("file.goto_line")}</button>
+    <a href="${windowUrl}">${i18n.get("plugin.first_page")}</a>
+    <#if hasNext>
+        <a href="${windowUrl}&offset=${endOffset?c}">${i18n.get("plugin.next_page")}</a>
+    </#if>
+</form>
+
+<form action="/plugin/file/save/${pluginId?c}" method="post">
+    <textarea name="content" id="content" cols="50" rows="10">
+${fileContent?html}</textarea>
+    <input type="hidden" name="path" value="${currentPath}">
+    <input type="hidden" name="startOffset" value="${startOffset?c}">
+    <input type="hidden" name="endOffset" value="${endOffset?c}">
+    <input type="hidden" name="fileSize" value="${fileSize?c}">
+    <input type="hidden" name="lastModified" value="${lastModified?c}">
+    <input type="hidden" name="crlf" value="${crlf?c}">
     <button type="submit">${i18n.get("save")}</button>
 </form>
 
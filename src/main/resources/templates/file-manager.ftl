@@ -30,12 +30,13 @@
     <input type="file" name="files" multiple webkitdirectory/>
     <button type="submit">${i18n.get("plugin.upload_file")}</button>
 </form>
+<#assign listUrl = "/plugin/file/" + pluginId?c + "?path=" + currentPath?url + "&size=" + size?c>
 <table>
     <thead>
     <tr>
-        <th>${i18n.get("file.name")}</th>
-        <th>${i18n.get("file.size")}</th>
-        <th>${i18n.get("file.lastModified")}</th>
+        <th><a href="${listUrl}&sort=name">${i18n.get("file.name")}</a></th>
+        <th><a href="${listUrl}&sort=size">${i18n.get("file.size")}</a></th>
+        <th><a href="${listUrl}&sort=time">${i18n.get("file.lastModified")}</a></th>
         <th>${i18n.get("file.md5")}</th>
     </tr>
     </thead>
@@ -50,14 +51,23 @@
                 </#if>
                 <a href="/plugin/file/${pluginId}?path=${currentPath+"/"+file.name}">
                     ${file.name}
-                </a></td>
+                </a>
+                <#if !file.isDirectory>
+                    <a href="/plugin/file/download/${pluginId?c}?path=${(currentPath+"/"+file.name)?url}">${i18n.get("download")}</a>
+                </#if></td>
             <td>${file.size}</td>
             <td>${file.lastModified?string("yyyy-MM-dd HH:mm:ss")}</td>
-            <td>${file.md5}</td>
+            <td><#if file.md5Pending>${i18n.get("file.md5_pending")}<#else>${file.md5}</#if></td>
         </tr>
     </#list>
     </tbody>
 </table>
+<p>
+    <a href="${listUrl}&sort=${sort?url}">${i18n.get("plugin.first_page")}</a>
+    <#if nextCursor != "">
+        <a href="${listUrl}&sort=${sort?url}&cursor=${nextCursor?url}">${i18n.get("plugin.next_page")}</a>
+    </#if>
+</p>
 <#if parentPath??>
     <p><a href="/plugin/file/${pluginId}?path=${parentPath}">${i18n.get("back_to_parent")}</a></p>
 </#if>
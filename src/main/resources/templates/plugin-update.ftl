@@ -7,6 +7,7 @@
 <h1>${i18n.get("plugin.update_title")}</h1>
 <p>${i18n.get(errorMsg)}</p>
 <form method="post" action="/plugin/update/${pluginId}" enctype="multipart/form-data">
+    <input type="hidden" name="rowVersion" value="${rowVersion?c}"/>
     <div>
         <label for="plugin-name">${i18n.get("plugin.name")}</label>
         <input type="text" id="plugin-name" name="pluginName"
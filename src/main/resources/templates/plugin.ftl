@@ -42,12 +42,30 @@
         .status-disabled {
             color: red;
         }
+        .filter, .pager {
+            margin-top: 20px;
+        }
     </style>
 </head>
 <body>
 <h1>${i18n.get("plugin.title")}</h1>
 <p>${i18n.get(errorMsg)}</p>
 <a href="/plugin/add">${i18n.get("plugin.add_title")}</a>
+<form class="filter" action="/plugin" method="get">
+    <input type="text" name="name" value="${name?html}" placeholder="${i18n.get("plugin.name")}"/>
+    <select name="status">
+        <option value="" <#if status == "">selected</#if>>${i18n.get("plugin.all_status")}</option>
+        <option value="1" <#if status == "1">selected</#if>>${i18n.get("plugin.1")}</option>
+        <option value="0" <#if status == "0">selected</#if>>${i18n.get("plugin.0")}</option>
+        <option value="2" <#if status == "2">selected</#if>>${i18n.get("plugin.2")}</option>
+    </select>
+    <select name="sort">
+        <option value="id" <#if sort == "id">selected</#if>>${i18n.get("plugin.sort_id")}</option>
+        <option value="time" <#if sort == "time">selected</#if>>${i18n.get("plugin.sort_time")}</option>
+    </select>
+    <input type="hidden" name="size" value="${size}"/>
+    <button type="submit">${i18n.get("plugin.filter")}</button>
+</form>
 <table>
     <caption>${i18n.get("plugin.list")}</caption>
     <thead>
@@ -66,10 +84,10 @@
     <#list data as plugin>
         <tr>
             <td>${plugin.ID}</td>
-            <td>${plugin.PLUGIN_NAME}</td>
-            <td>${plugin.PLUGIN_VERSION}</td>
-            <td>${plugin.PLUGIN_DESC}</td>
-            <td>${plugin.PLUGIN_PATH}</td>
+            <td>${plugin.PLUGIN_NAME?html}</td>
+            <td>${plugin.PLUGIN_VERSION?html}</td>
+            <td>${plugin.PLUGIN_DESC?html}</td>
+            <td>${plugin.PLUGIN_PATH?html}</td>
             <td>
                 <#if plugin.PLUGIN_STATUS == 1>
                     <span class="status-enabled">${i18n.get("plugin."+plugin.PLUGIN_STATUS)}</span>
@@ -81,16 +99,24 @@
             <td>
                 <#if plugin.PLUGIN_STATUS == 0>
                     <a href="/plugin/enable/${plugin.ID}">${i18n.get("plugin.enable")}</a>
-                <#else>
+                <#elseif plugin.PLUGIN_STATUS == 1>
                     <a href="/plugin/disable/${plugin.ID}">${i18n.get("plugin.disable")}</a>
                 </#if>
                 <a href="/plugin/update/${plugin.ID}">${i18n.get("update")}</a>
                 <a href="/plugin/delete/${plugin.ID}">${i18n.get("delete")}</a>
                 <a href="/plugin/file/${plugin.ID}">${i18n.get("plugin.file_manage_button")}</a>
+                <a href="/plugin/file/download/${plugin.ID}">${i18n.get("download")}</a>
             </td>
         </tr>
     </#list>
     </tbody>
 </table>
+<#assign query = "name=" + name?url + "&status=" + status + "&sort=" + sort + "&size=" + size?c>
+<div class="pager">
+    <a href="/plugin?${query}">${i18n.get("plugin.first_page")}</a>
+    <#if nextCursor != "">
+        <a href="/plugin?${query}&cursor=${nextCursor?url}">${i18n.get("plugin.next_page")}</a>
+    </#if>
+</div>
 </body>
 </html>
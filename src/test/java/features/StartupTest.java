@@ -0,0 +1,74 @@
+package features;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import site.xiweihai.framework.App;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 从进程启动到处理第一个请求的时长，滚动发布时节点频繁重启，需要控制在预算之内。
+ * 在单独的进程中启动应用并从启动进程时开始计时，不受同一 JVM 中先运行的测试影响。
+ * 子进程的工作目录和插件、审计溢出文件目录都在临时目录中，不在工作区中留下文件
+ */
+public class StartupTest {
+
+    /**
+     * 预算（毫秒），包含 JVM 自身的启动时间，可用 -Dstartup.budget 调整
+     */
+    private static final long BUDGET_MILLIS = Long.getLong("startup.budget", 10_000);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void timeToFirstRequest() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        Path java = Path.of(System.getProperty("java.home"), "bin", "java");
+        ProcessBuilder builder = new ProcessBuilder(java.toString(), "-cp", System.getProperty("java.class.path"),
+                App.class.getName(), "--server.port=" + port,
+                "--plugin.root=" + dir.resolve("plugins"),
+                "--audit.spillFile=" + dir.resolve("audit").resolve("spill.jsonl"))
+                .directory(dir.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD);
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + port + "/hello?name=startup")).build();
+
+        long start = System.nanoTime();
+        Process process = builder.start();
+        try {
+            long deadline = start + Duration.ofMillis(BUDGET_MILLIS).toNanos();
+            String body = null;
+            while (body == null && System.nanoTime() < deadline && process.isAlive()) {
+                try {
+                    body = client.send(request, HttpResponse.BodyHandlers.ofString()).body();
+                } catch (IOException e) {
+                    // 尚未开始监听
+                    Thread.sleep(20);
+                }
+            }
+            long firstRequest = (System.nanoTime() - start) / 1_000_000;
+            assertTrue(process.isAlive() || body != null, () -> "application exited with " + process.exitValue());
+            assertNotNull(body, "no response within budget " + BUDGET_MILLIS + " ms");
+            assertTrue(body.contains("startup"));
+            assertTrue(firstRequest <= BUDGET_MILLIS, "time to first request " + firstRequest + " ms exceeds budget " + BUDGET_MILLIS + " ms");
+        } finally {
+            process.destroy();
+            process.waitFor(10, TimeUnit.SECONDS);
+        }
+    }
+}
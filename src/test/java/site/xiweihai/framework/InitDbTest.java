@@ -5,9 +5,15 @@ import org.anyline.proxy.ServiceProxy;
 import org.anyline.service.AnylineService;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.noear.solon.annotation.Import;
 import org.noear.solon.test.SolonTest;
+import site.xiweihai.framework.datasource.DataSourceManager;
+import site.xiweihai.framework.migration.SchemaMigrator;
 
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Statement;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -41,4 +47,19 @@ class InitDbTest {
         assertEquals(1,service.tables("FRAMEWORK_MENU").size());
         assertEquals(1,service.tables("FRAMEWORK_PLUGIN").size());
     }
-}
\ No newline at end of file
+
+    @Test
+    void indexStepsCanRunAgain(@TempDir Path dir) throws Exception {
+        InitDb.run("org.sqlite.JDBC", "jdbc:sqlite:" + dir.resolve("index.db"), "", "");
+        try (Connection connection = DataSourceManager.global().dataSource().getConnection();
+             Statement statement = connection.createStatement()) {
+            assertTrue(InitDb.indexExists(connection, "FRAMEWORK_MENU", "IDX_MENU_UPDATE_TIME"));
+            assertTrue(InitDb.indexExists(connection, "FRAMEWORK_PLUGIN", "IDX_PLUGIN_STATUS"));
+            assertFalse(InitDb.indexExists(connection, "FRAMEWORK_PLUGIN", "IDX_MENU_UPDATE_TIME"));
+            // 通过数据库框架执行的步骤建表、建索引后没有记录版本，再次执行时跳过已存在的表和索引
+            statement.execute("DELETE FROM " + SchemaMigrator.VERSION_TABLE + " WHERE VERSION = 5");
+        }
+        SchemaMigrator.Result result = InitDb.migrate(ServiceProxy.service("db"));
+        assertEquals(1, result.applied());
+    }
+}
@@ -0,0 +1,117 @@
+package site.xiweihai.framework.audit;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuditLogTest {
+
+    private static final String CREATE_TABLE = "CREATE TABLE " + AuditLog.TABLE + " (ID INTEGER PRIMARY KEY AUTOINCREMENT,"
+            + " EVENT_TIME BIGINT NOT NULL, ACTION VARCHAR(20) NOT NULL, PLUGIN_ID BIGINT, TARGET VARCHAR(500),"
+            + " RESULT VARCHAR(100), REMOTE_ADDR VARCHAR(64))";
+
+    @TempDir
+    Path dir;
+
+    private HikariDataSource dataSource;
+
+    @BeforeEach
+    void init() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:sqlite:" + dir.resolve("audit.db"));
+        dataSource.setMaximumPoolSize(2);
+    }
+
+    @AfterEach
+    void close() {
+        dataSource.close();
+    }
+
+    @Test
+    void writesEventsInBatches() throws Exception {
+        execute(CREATE_TABLE);
+        AuditLog audit = new AuditLog(() -> dataSource, options(1000, AuditLog.Overflow.SPILL));
+        audit.start();
+        for (int i = 0; i < 250; i++) {
+            audit.append(event(i));
+        }
+        audit.close();
+        assertEquals(250, count());
+        assertEquals(250, audit.written());
+        // 每批最多 100 条，批次数取决于写入线程被唤醒的时机
+        assertTrue(audit.batches() >= 3 && audit.batches() < 250, "batches " + audit.batches());
+        assertEquals(0, audit.spilled());
+    }
+
+    @Test
+    void spillsWhileDatabaseUnavailableAndReplays() throws Exception {
+        AuditLog audit = new AuditLog(() -> dataSource, options(1000, AuditLog.Overflow.SPILL));
+        // 表还不存在，写入失败的事件写入溢出文件
+        for (int i = 0; i < 30; i++) {
+            audit.append(event(i));
+        }
+        audit.flush();
+        assertEquals(30, audit.spilled());
+        assertEquals(0, audit.written());
+
+        execute(CREATE_TABLE);
+        audit.append(event(30));
+        audit.flush();
+        assertEquals(31, count());
+        assertEquals(30, audit.replayed());
+        try (var files = Files.list(dir.resolve("audit"))) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void appliesOverflowPolicy() {
+        AuditLog dropping = new AuditLog(() -> dataSource, options(10, AuditLog.Overflow.DROP));
+        for (int i = 0; i < 15; i++) {
+            dropping.append(event(i));
+        }
+        assertEquals(10, dropping.depth());
+        assertEquals(5, dropping.dropped());
+
+        AuditLog spilling = new AuditLog(() -> dataSource, options(10, AuditLog.Overflow.SPILL));
+        for (int i = 0; i < 15; i++) {
+            spilling.append(event(i));
+        }
+        assertEquals(10, spilling.depth());
+        assertEquals(5, spilling.spilled());
+        assertEquals(0, spilling.dropped());
+    }
+
+    private AuditLog.Options options(int capacity, AuditLog.Overflow overflow) {
+        return new AuditLog.Options(capacity, 100, 50, capacity, 0, overflow, 10, dir.resolve("audit").resolve("spill.jsonl"));
+    }
+
+    private static AuditEvent event(int i) {
+        return new AuditEvent(i, "save", 1, "file-" + i + ".yml", "file.save_success", "127.0.0.1");
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private int count() throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM " + AuditLog.TABLE)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+}
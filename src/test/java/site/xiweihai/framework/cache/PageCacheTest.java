@@ -0,0 +1,41 @@
+package site.xiweihai.framework.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageCacheTest {
+
+    @Test
+    void etagFollowsContent() {
+        PageCache cache = new PageCache(1024, 60_000);
+        assertEquals(cache.put("a", "<p>1</p>").etag(), cache.put("b", "<p>1</p>").etag());
+        assertNotEquals(cache.put("a", "<p>1</p>").etag(), cache.put("a", "<p>2</p>").etag());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedBeyondMaxBytes() {
+        PageCache cache = new PageCache(400, 60_000);
+        String page = "x".repeat(100);
+        cache.put("a", page);
+        cache.put("b", page);
+        cache.put("c", page);
+        cache.put("d", page);
+        assertEquals(400, cache.bytes());
+        cache.put("e", page);
+        assertEquals(400, cache.bytes());
+        // 超过总大小四分之一的页面不缓存
+        cache.put("f", "x".repeat(101));
+        assertEquals(400, cache.bytes());
+    }
+
+    @Test
+    void replacingEntryKeepsByteCount() {
+        PageCache cache = new PageCache(1024, 60_000);
+        cache.put("a", "x".repeat(100));
+        cache.put("a", "x".repeat(50));
+        assertEquals(50, cache.bytes());
+        cache.clear();
+        assertEquals(0, cache.bytes());
+    }
+}
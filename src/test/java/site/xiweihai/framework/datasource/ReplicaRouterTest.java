@@ -0,0 +1,100 @@
+package site.xiweihai.framework.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 用两个 SQLite 文件模拟主库和副本，每个库中的 NODE 表记录自己的名称
+ */
+class ReplicaRouterTest {
+
+    @TempDir
+    Path dir;
+
+    private HikariDataSource primary;
+    private HikariDataSource replica;
+    private ReplicaRouter router;
+
+    @BeforeEach
+    void init() throws SQLException {
+        primary = open("primary");
+        replica = open("replica");
+        execute(replica, "CREATE TABLE LAG_STATE (SECONDS REAL)");
+        execute(replica, "INSERT INTO LAG_STATE VALUES (0)");
+        router = new ReplicaRouter(() -> primary, List.of(
+                new ReplicaRouter.Replica("replica", replica, "SELECT SECONDS FROM LAG_STATE")), 5_000);
+    }
+
+    @AfterEach
+    void close() {
+        router.close();
+        primary.close();
+    }
+
+    @Test
+    void readsFromHealthyReplica() throws SQLException {
+        router.check();
+        assertEquals("replica", node(router));
+        assertEquals(1, router.stats().get(0).routed());
+        assertEquals(0, router.fallbacks());
+    }
+
+    @Test
+    void fallsBackWhenReplicaLags() throws SQLException {
+        execute(replica, "UPDATE LAG_STATE SET SECONDS = 30");
+        router.check();
+        assertEquals(30_000, router.stats().get(0).lagMillis());
+        assertEquals("primary", node(router));
+        assertEquals(1, router.fallbacks());
+
+        // 副本追上后恢复读副本
+        execute(replica, "UPDATE LAG_STATE SET SECONDS = 1");
+        router.check();
+        assertEquals("replica", node(router));
+    }
+
+    @Test
+    void fallsBackWhenReplicaIsDown() throws SQLException {
+        replica.close();
+        assertEquals("primary", node(router));
+        assertFalse(router.stats().get(0).healthy());
+        router.check();
+        assertFalse(router.stats().get(0).healthy());
+    }
+
+    private HikariDataSource open(String name) throws SQLException {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:sqlite:" + dir.resolve(name + ".db"));
+        dataSource.setPoolName(name);
+        dataSource.setMaximumPoolSize(2);
+        execute(dataSource, "CREATE TABLE NODE (NAME VARCHAR(20))");
+        execute(dataSource, "INSERT INTO NODE VALUES ('" + name + "')");
+        return dataSource;
+    }
+
+    private static void execute(HikariDataSource dataSource, String sql) throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private static String node(ReplicaRouter router) throws SQLException {
+        try (Connection connection = router.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT NAME FROM NODE")) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package site.xiweihai.framework.migration;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchemaMigratorTest {
+
+    @TempDir
+    Path dir;
+
+    private HikariDataSource dataSource;
+
+    @BeforeEach
+    void init() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:sqlite:" + dir.resolve("migration.db"));
+        dataSource.setMaximumPoolSize(2);
+    }
+
+    @AfterEach
+    void close() {
+        dataSource.close();
+    }
+
+    @Test
+    void appliesPendingStepsOnce() throws Exception {
+        AtomicInteger managedRuns = new AtomicInteger();
+        List<Migration> migrations = new ArrayList<>(List.of(
+                Migration.sql(1, "demo table", "CREATE TABLE DEMO (ID INT PRIMARY KEY, NAME VARCHAR(50))"),
+                Migration.managed(2, "managed step", (service, connection) -> managedRuns.incrementAndGet()),
+                Migration.sql(3, "demo index", "CREATE INDEX IDX_DEMO_NAME ON DEMO (NAME)")
+        ));
+        SchemaMigrator.Result result = new SchemaMigrator(dataSource, null, migrations).migrate();
+        assertEquals(new SchemaMigrator.Result(0, 3, 3), result);
+        assertEquals(1, managedRuns.get());
+
+        // 已是最新版本时不执行任何步骤
+        assertEquals(new SchemaMigrator.Result(3, 3, 0), new SchemaMigrator(dataSource, null, migrations).migrate());
+
+        // 追加的步骤只执行新的部分
+        migrations.add(Migration.sql(4, "demo column", "ALTER TABLE DEMO ADD COLUMN DESCRIPTION VARCHAR(200)"));
+        assertEquals(new SchemaMigrator.Result(3, 4, 1), new SchemaMigrator(dataSource, null, migrations).migrate());
+        assertEquals(1, managedRuns.get());
+        assertEquals(4, count("SELECT COUNT(*) FROM " + SchemaMigrator.VERSION_TABLE));
+    }
+
+    @Test
+    void rollsBackFailedTransactionalBatch() throws Exception {
+        List<Migration> migrations = List.of(
+                Migration.sql(1, "demo table", "CREATE TABLE DEMO (ID INT PRIMARY KEY)"),
+                Migration.sql(2, "broken", "CREATE INDEX IDX_BROKEN ON MISSING_TABLE (ID)")
+        );
+        assertThrows(SQLException.class, () -> new SchemaMigrator(dataSource, null, migrations).migrate());
+        // SQLite 支持事务性DDL，同一批中已执行的建表一起回滚
+        assertEquals(0, count("SELECT COUNT(*) FROM " + SchemaMigrator.VERSION_TABLE));
+        assertEquals(0, count("SELECT COUNT(*) FROM sqlite_master WHERE name = 'DEMO'"));
+    }
+
+    @Test
+    void toleratesStepsAppliedByAnotherNode() throws Exception {
+        List<Migration> migrations = List.of(
+                // 本节点执行第一个步骤期间，另一个节点完成了全部迁移
+                Migration.managed(1, "demo table", (service, connection) -> {
+                    try (Connection other = dataSource.getConnection(); Statement statement = other.createStatement()) {
+                        statement.execute("CREATE TABLE DEMO (ID INT PRIMARY KEY, NAME VARCHAR(50))");
+                        statement.execute("CREATE INDEX IDX_DEMO_NAME ON DEMO (NAME)");
+                        statement.execute("INSERT INTO " + SchemaMigrator.VERSION_TABLE + " (VERSION) VALUES (1)");
+                        statement.execute("INSERT INTO " + SchemaMigrator.VERSION_TABLE + " (VERSION) VALUES (2)");
+                    }
+                }),
+                Migration.sql(2, "demo index", "CREATE INDEX IDX_DEMO_NAME ON DEMO (NAME)")
+        );
+        // 版本记录主键冲突、索引已存在都视为已执行
+        assertEquals(2, new SchemaMigrator(dataSource, null, migrations).migrate().to());
+        assertEquals(2, count("SELECT COUNT(*) FROM " + SchemaMigrator.VERSION_TABLE));
+    }
+
+    @Test
+    void rejectsDuplicateVersions() {
+        List<Migration> migrations = List.of(Migration.sql(1, "a"), Migration.sql(1, "b"));
+        assertThrows(IllegalArgumentException.class, () -> new SchemaMigrator(dataSource, null, migrations));
+    }
+
+    private int count(String sql) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(sql)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package site.xiweihai.framework.plugin;
+
+import org.anyline.entity.DataRow;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class PluginRuntimeTest {
+
+    private static final int PLUGIN_COUNT = 120;
+
+    /**
+     * 每个插件包的条目数，让单个插件的加载耗时达到毫秒级，便于比较整体耗时与耗时之和
+     */
+    private static final int ENTRIES_PER_JAR = 2000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void loadAllInParallel() throws IOException {
+        List<DataRow> rows = new ArrayList<>();
+        for (int i = 1; i <= PLUGIN_COUNT; i++) {
+            rows.add(row(i, jar(i, 1)));
+        }
+
+        PluginRuntime runtime = new PluginRuntime();
+        PluginRuntime.LoadReport report = runtime.loadAll(rows);
+
+        assertEquals(PLUGIN_COUNT, report.total());
+        assertEquals(PLUGIN_COUNT, report.loaded());
+        assertEquals(0, report.failed());
+        assertEquals(PLUGIN_COUNT, runtime.loadedCount());
+        // 插件资源只能从各自的类加载器中看到
+        assertNotNull(runtime.get(7).getClassLoader().findResource("resource-7.txt"));
+        assertNull(runtime.get(7).getClassLoader().findResource("resource-8.txt"));
+
+        runtime.unload(7);
+        assertFalse(runtime.isLoaded(7));
+        runtime.unloadAll();
+        assertFalse(runtime.isLoaded(8));
+    }
+
+    @Test
+    void loadTimeIsSubLinear() throws IOException {
+        assumeTrue(Runtime.getRuntime().availableProcessors() > 1, "needs more than one processor");
+        List<DataRow> rows = new ArrayList<>();
+        for (int i = 1; i <= 40; i++) {
+            rows.add(row(i, jar(i, ENTRIES_PER_JAR)));
+        }
+        PluginRuntime runtime = new PluginRuntime();
+        // 逐个加载作为基准，同时预热
+        long start = System.nanoTime();
+        for (DataRow row : rows) {
+            runtime.load(row.getLong("ID"), row.getString("PLUGIN_PATH"));
+        }
+        long sequentialMillis = (System.nanoTime() - start) / 1_000_000;
+        runtime.unloadAll();
+
+        PluginRuntime.LoadReport report = runtime.loadAll(rows);
+        runtime.unloadAll();
+        assertEquals(40, report.loaded());
+        // 并行加载的整体耗时小于逐个加载的耗时
+        assertTrue(report.wallMillis() < sequentialMillis, report + " vs sequential " + sequentialMillis + " ms");
+    }
+
+    @Test
+    void concurrentLoadsKeepOneInstance() throws Exception {
+        String jar = jar(1, 1).toString();
+        PluginRuntime runtime = new PluginRuntime();
+        List<LoadedPlugin> instances = new CopyOnWriteArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 16; i++) {
+                executor.submit(() -> instances.add(runtime.load(1, jar)));
+            }
+        }
+        assertEquals(16, instances.size());
+        assertEquals(1, runtime.loadedCount());
+        LoadedPlugin current = runtime.get(1);
+        // 被替换的实例都已关闭，只有最后一个实例还能读取插件包
+        for (LoadedPlugin plugin : instances) {
+            assertEquals(plugin == current, plugin.getClassLoader().findResource("resource-1.txt") != null);
+        }
+        runtime.unloadAll();
+    }
+
+    @Test
+    void removeDuringLoadsKeepsOneInstance() throws Exception {
+        String jar = jar(1, 1).toString();
+        PluginRuntime runtime = new PluginRuntime();
+        List<LoadedPlugin> instances = new CopyOnWriteArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 32; i++) {
+                if (i % 4 == 0) {
+                    executor.submit(() -> runtime.remove(1));
+                } else {
+                    executor.submit(() -> instances.add(runtime.load(1, jar)));
+                }
+            }
+        }
+        assertTrue(runtime.loadedCount() <= 1);
+        LoadedPlugin current = runtime.get(1);
+        // 丢弃锁后加载仍依次执行，没有未关闭的旧实例
+        for (LoadedPlugin plugin : instances) {
+            assertEquals(plugin == current, plugin.getClassLoader().findResource("resource-1.txt") != null);
+        }
+        runtime.remove(1);
+        assertFalse(runtime.isLoaded(1));
+    }
+
+    @Test
+    void rowsWithoutIdFail() throws IOException {
+        DataRow row = new DataRow();
+        row.put("PLUGIN_PATH", jar(1, 1).toString());
+        PluginRuntime.LoadReport report = new PluginRuntime().loadAll(List.of(row));
+        assertEquals(1, report.total());
+        assertEquals(1, report.failed());
+    }
+
+    @Test
+    void missingJarFails() {
+        PluginRuntime runtime = new PluginRuntime();
+        assertThrows(IllegalStateException.class, () -> runtime.load(1, dir.resolve("missing.jar").toString()));
+        assertFalse(runtime.isLoaded(1));
+    }
+
+    private Path jar(int id, int entries) throws IOException {
+        Path jar = dir.resolve("plugin-" + id + ".jar");
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            out.putNextEntry(new ZipEntry("resource-" + id + ".txt"));
+            out.write(("plugin " + id).getBytes());
+            out.closeEntry();
+            for (int i = 1; i < entries; i++) {
+                out.putNextEntry(new ZipEntry("data/entry-" + i + ".txt"));
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    private static DataRow row(long id, Path jar) {
+        DataRow row = new DataRow();
+        row.put("ID", id);
+        row.put("PLUGIN_PATH", jar.toString());
+        return row;
+    }
+}
@@ -0,0 +1,167 @@
+package site.xiweihai.framework.service;
+
+import org.anyline.adapter.init.DefaultEnvironmentWorker;
+import org.anyline.entity.DataRow;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import site.xiweihai.framework.InitDb;
+import site.xiweihai.framework.datasource.DataSourceManager;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MenuServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private MenuService menus;
+
+    @BeforeAll
+    static void start() {
+        // 启动数据库框架默认的环境工作器
+        DefaultEnvironmentWorker.start();
+    }
+
+    @BeforeEach
+    void init() {
+        InitDb.run("org.sqlite.JDBC", "jdbc:sqlite:" + dir.resolve("menu.db"), "", "");
+        menus = new MenuService(DataSourceManager.DEFAULT_KEY);
+    }
+
+    @Test
+    void rebuildsOnlyChangedPath() {
+        long system = add("system", 0, 1);
+        long users = add("users", system, 1);
+        long other = add("other", 0, 2);
+        add("other-child", other, 1);
+        List<MenuService.Menu> before = menus.tree();
+        assertEquals(List.of("system", "other"), before.stream().map(MenuService.Menu::name).toList());
+
+        DataRow row = menus.get(users);
+        row.put("MENU_NAME", "accounts");
+        menus.update(row);
+        List<MenuService.Menu> after = menus.tree();
+        assertEquals("accounts", after.get(0).children().get(0).name());
+        // 没有变化的子树沿用上次生成的结果
+        assertSame(before.get(1), after.get(1));
+        assertTrue(menus.treeJson().contains("\"accounts\""));
+    }
+
+    @Test
+    void hidesSubtreeOfDisabledOrDeletedMenu() {
+        long system = add("system", 0, 1);
+        add("users", system, 1);
+        long other = add("other", 0, 2);
+        long child = add("other-child", other, 1);
+
+        DataRow row = menus.get(system);
+        row.put("MENU_STATUS", 0);
+        menus.update(row);
+        assertEquals(List.of("other"), menus.tree().stream().map(MenuService.Menu::name).toList());
+        assertFalse(menus.treeJson().contains("users"));
+
+        menus.delete(menus.get(other));
+        assertTrue(menus.tree().isEmpty());
+        assertEquals("[]", menus.treeJson());
+        assertNotNull(menus.get(child));
+    }
+
+    @Test
+    void cycleIsNotReachable() throws SQLException {
+        add("top", 0, 1);
+        // 两个菜单互为父菜单，从根节点不可达
+        execute("INSERT INTO " + MenuService.TABLE + " (ID, MENU_NAME, PARENT_ID, MENU_ORDER, MENU_STATUS) VALUES (100, 'a', 101, 1, 1)");
+        execute("INSERT INTO " + MenuService.TABLE + " (ID, MENU_NAME, PARENT_ID, MENU_ORDER, MENU_STATUS) VALUES (101, 'b', 100, 1, 1)");
+        menus.invalidate();
+        assertEquals(List.of("top"), menus.tree().stream().map(MenuService.Menu::name).toList());
+
+        // 修改环上的节点时向上清除缓存也能结束
+        DataRow row = menus.get(100);
+        row.put("MENU_NAME", "a2");
+        menus.update(row);
+        assertEquals(1, menus.tree().size());
+    }
+
+    @Test
+    void refreshWithoutChangesKeepsVersion() throws SQLException {
+        long system = add("system", 0, 1);
+        add("users", system, 1);
+        menus.refresh();
+        long version = menus.version();
+        menus.refresh();
+        menus.refresh();
+        assertEquals(version, menus.version());
+
+        // 其他节点删除一个菜单并新增一个，行数不变
+        execute("DELETE FROM " + MenuService.TABLE + " WHERE ID = " + system);
+        execute("INSERT INTO " + MenuService.TABLE + " (MENU_NAME, PARENT_ID, MENU_ORDER, MENU_STATUS) VALUES ('other', 0, 1, 1)");
+        menus.refresh();
+        assertNull(menus.get(system));
+        assertEquals(List.of("other"), menus.tree().stream().map(MenuService.Menu::name).toList());
+    }
+
+    @Test
+    void refreshSeesLateWriteWithEarlierTime() throws SQLException {
+        long other = add("other", 0, 2);
+        long now = System.currentTimeMillis();
+        touch(other, "other", now - 30_000);
+        menus.invalidate();
+        // 本节点的写入不推进水位线
+        add("system", 0, 1);
+        menus.refresh();
+
+        // 其他节点的写入更新时间早于本节点最近一次写入，提交后才可见
+        touch(other, "renamed", now - 10_000);
+        menus.refresh();
+        assertEquals(List.of("system", "renamed"), menus.tree().stream().map(MenuService.Menu::name).toList());
+    }
+
+    @Test
+    void invalidateKeepsPublishedTree() {
+        add("system", 0, 1);
+        String json = menus.treeJson();
+        long version = menus.version();
+        // 重新加载完成前不发布空菜单树
+        menus.invalidate();
+        assertEquals(version, menus.version());
+        assertEquals(json, menus.treeJson());
+    }
+
+    private long add(String name, long parentId, int order) {
+        DataRow row = new DataRow();
+        row.put("MENU_NAME", name);
+        row.put("PARENT_ID", parentId);
+        row.put("MENU_ORDER", order);
+        row.put("MENU_STATUS", MenuService.STATUS_ENABLED);
+        menus.add(row);
+        return row.getLong("ID");
+    }
+
+    private static void touch(long menuId, String name, long updateTime) throws SQLException {
+        try (Connection connection = DataSourceManager.global().dataSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "UPDATE " + MenuService.TABLE + " SET MENU_NAME = ?, UPDATE_TIME = ? WHERE ID = ?")) {
+            statement.setString(1, name);
+            statement.setTimestamp(2, new Timestamp(updateTime));
+            statement.setLong(3, menuId);
+            statement.executeUpdate();
+        }
+    }
+
+    private static void execute(String sql) throws SQLException {
+        try (Connection connection = DataSourceManager.global().dataSource().getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package site.xiweihai.framework.service;
+
+import org.anyline.adapter.init.DefaultEnvironmentWorker;
+import org.anyline.entity.DataRow;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import site.xiweihai.framework.InitDb;
+import site.xiweihai.framework.datasource.DataSourceManager;
+import site.xiweihai.framework.plugin.PluginRuntime;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PluginBulkServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private PluginRegistry registry;
+    private PluginBulkService bulk;
+
+    @BeforeAll
+    static void start() {
+        // 启动数据库框架默认的环境工作器
+        DefaultEnvironmentWorker.start();
+    }
+
+    @BeforeEach
+    void init() {
+        InitDb.run("org.sqlite.JDBC", "jdbc:sqlite:" + dir.resolve("bulk.db"), "", "");
+        registry = new PluginRegistry(DataSourceManager.DEFAULT_KEY);
+        bulk = new PluginBulkService(registry, new PluginRuntime());
+    }
+
+    @Test
+    void deletesRowsThenFiles() throws Exception {
+        long first = add("first");
+        long second = add("second");
+        List<BulkItem> results = bulk.delete(List.of(first, second, first, 999L));
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).success());
+        assertTrue(results.get(1).success());
+        assertEquals("plugin.not_exist", results.get(2).message());
+        assertNull(registry.get(first));
+        assertFalse(Files.exists(dir.resolve("first.jar")));
+        assertFalse(Files.exists(dir.resolve("second.jar")));
+    }
+
+    @Test
+    void keepsFilesWhenTransactionFails() throws Exception {
+        long first = add("first");
+        long second = add("second");
+        // 注册表已加载，数据库中的表不可用时批量删除失败
+        execute("ALTER TABLE " + PluginRegistry.TABLE + " RENAME TO " + PluginRegistry.TABLE + "_MOVED");
+        List<BulkItem> results = bulk.delete(List.of(first, second));
+        assertTrue(results.stream().noneMatch(BulkItem::success));
+        assertEquals("plugin.delete_fail", results.get(0).message());
+        assertNotNull(registry.get(first));
+        assertTrue(Files.exists(dir.resolve("first.jar")));
+        assertTrue(Files.exists(dir.resolve("second.jar")));
+    }
+
+    private long add(String name) throws Exception {
+        Path jar = Files.writeString(dir.resolve(name + ".jar"), name);
+        DataRow row = new DataRow();
+        row.put("PLUGIN_NAME", name);
+        row.put("PLUGIN_VERSION", "1.0");
+        row.put("PLUGIN_PATH", jar.toString());
+        row.put("PLUGIN_STATUS", PluginRegistry.STATUS_DISABLED);
+        registry.add(row);
+        return row.getLong("ID");
+    }
+
+    private static void execute(String sql) throws SQLException {
+        try (Connection connection = DataSourceManager.global().dataSource().getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+}
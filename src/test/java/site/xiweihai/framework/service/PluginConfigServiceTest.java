@@ -0,0 +1,78 @@
+package site.xiweihai.framework.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PluginConfigServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private PluginConfigService service;
+
+    @BeforeEach
+    void init() throws Exception {
+        Files.writeString(dir.resolve("app.properties"), "name=demo\ntimeout=30\n");
+        Files.writeString(dir.resolve("settings.json"), "{\"server\":{\"port\":8080,\"hosts\":[\"a\",\"b\"]}}");
+        Files.writeString(dir.resolve("page.html"), "<html></html>");
+        service = new PluginConfigService(id -> id == 1 ? dir : null);
+    }
+
+    @Test
+    void parsesConfigFilesOnce() {
+        PluginConfigService.PluginConfig config = service.get(1);
+        assertEquals(Set.of("app.properties", "settings.json"), config.files().keySet());
+        assertEquals("demo", config.get("name"));
+        assertEquals("8080", config.get("settings.json", "server.port"));
+        assertEquals("b", config.get("server.hosts[1]"));
+        assertSame(config, service.get(1));
+        assertNull(service.get(2));
+        assertThrows(UnsupportedOperationException.class, () -> config.files().clear());
+    }
+
+    @Test
+    void swapsSnapshotAndNotifiesSubscribers() throws Exception {
+        PluginConfigService.PluginConfig before = service.get(1);
+        BlockingQueue<PluginConfigService.ConfigChange> changes = new LinkedBlockingQueue<>();
+        service.subscribe(1, changes::add);
+
+        Files.writeString(dir.resolve("app.properties"), "name=demo\ntimeout=60\nretries=3\n");
+        service.reload(dir.resolve("app.properties"));
+        PluginConfigService.ConfigChange change = changes.poll(5, TimeUnit.SECONDS);
+        assertNotNull(change);
+        assertEquals("app.properties", change.file());
+        assertEquals(Set.of("timeout", "retries"), change.changedKeys());
+        assertSame(before, change.previous());
+        assertSame(change.current(), service.get(1));
+        assertEquals("30", before.get("timeout"));
+        assertEquals("60", service.get(1, "timeout"));
+
+        // 内容没有变化时不替换快照，也不通知
+        service.reload(dir.resolve("app.properties"));
+        assertSame(change.current(), service.get(1));
+
+        // 解析失败时保留上一次的内容
+        Files.writeString(dir.resolve("settings.json"), "{\"server\":");
+        service.reload(dir.resolve("settings.json"));
+        assertEquals("8080", service.get(1, "server.port"));
+
+        Files.delete(dir.resolve("app.properties"));
+        service.reload(dir.resolve("app.properties"));
+        change = changes.poll(5, TimeUnit.SECONDS);
+        assertNotNull(change);
+        assertEquals(Set.of("name", "timeout", "retries"), change.changedKeys());
+        assertNull(service.get(1, "name"));
+        assertTrue(changes.isEmpty());
+        assertEquals(2, service.reloads());
+    }
+}
@@ -0,0 +1,217 @@
+package site.xiweihai.framework.service;
+
+import org.anyline.adapter.init.DefaultEnvironmentWorker;
+import org.anyline.entity.DataRow;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import site.xiweihai.framework.InitDb;
+import site.xiweihai.framework.datasource.DataSourceManager;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PluginRegistryTest {
+
+    @TempDir
+    Path dir;
+
+    private PluginRegistry registry;
+
+    @BeforeAll
+    static void start() {
+        // 启动数据库框架默认的环境工作器
+        DefaultEnvironmentWorker.start();
+    }
+
+    @BeforeEach
+    void init() {
+        InitDb.run("org.sqlite.JDBC", "jdbc:sqlite:" + dir.resolve("registry.db"), "", "");
+        registry = new PluginRegistry(DataSourceManager.DEFAULT_KEY);
+    }
+
+    @Test
+    void refreshWithoutChangesKeepsVersion() {
+        registry.add(plugin("demo", "1.0"));
+        registry.add(plugin("demo", "2.0"));
+        registry.refresh();
+        long version = registry.version();
+        registry.refresh();
+        registry.refresh();
+        assertEquals(version, registry.version());
+    }
+
+    @Test
+    void refreshDetectsDeleteWithSameCount() throws SQLException {
+        registry.add(plugin("demo", "1.0"));
+        DataRow kept = plugin("demo", "2.0");
+        registry.add(kept);
+        long deleted = registry.get("demo", "1.0").getLong("ID");
+
+        // 其他节点删除一个插件并新增一个，行数不变
+        execute("DELETE FROM " + PluginRegistry.TABLE + " WHERE ID = " + deleted);
+        execute("INSERT INTO " + PluginRegistry.TABLE + " (PLUGIN_NAME, PLUGIN_VERSION, PLUGIN_PATH, PLUGIN_STATUS, ROW_VERSION)"
+                + " VALUES ('other', '1.0', 'other/1.0/other.jar', 0, 0)");
+        registry.refresh();
+        assertNull(registry.get(deleted));
+        assertNotNull(registry.get("other", "1.0"));
+        assertNotNull(registry.get(kept.getLong("ID")));
+        assertEquals(2, registry.list().size());
+    }
+
+    @Test
+    void refreshSeesLateWriteWithEarlierTime() throws SQLException {
+        DataRow other = plugin("other", "1.0");
+        registry.add(other);
+        long otherId = other.getLong("ID");
+        long now = System.currentTimeMillis();
+        touch(otherId, PluginRegistry.STATUS_DISABLED, now - 30_000);
+        registry.invalidate();
+        // 本节点的写入不推进水位线
+        registry.add(plugin("demo", "1.0"));
+        registry.refresh();
+
+        // 其他节点的写入更新时间早于本节点最近一次写入，提交后才可见
+        touch(otherId, PluginRegistry.STATUS_ENABLED, now - 10_000);
+        registry.refresh();
+        assertEquals(PluginRegistry.STATUS_ENABLED, registry.get(otherId).getInt("PLUGIN_STATUS"));
+    }
+
+    @Test
+    void pagesByStatus() throws SQLException {
+        for (int i = 1; i <= 5; i++) {
+            registry.add(plugin("demo", i + ".0"));
+        }
+        long second = registry.get("demo", "2.0").getLong("ID");
+        long fourth = registry.get("demo", "4.0").getLong("ID");
+        registry.transition(second, PluginRegistry.STATUS_DISABLED, PluginRegistry.STATUS_ENABLED);
+        registry.transition(fourth, PluginRegistry.STATUS_DISABLED, PluginRegistry.STATUS_ENABLED);
+
+        PluginPage first = registry.page(null, PluginRegistry.STATUS_ENABLED, PluginRegistry.SORT_ID, null, 1);
+        assertEquals(fourth, first.rows().get(0).getLong("ID"));
+        PluginPage next = registry.page(null, PluginRegistry.STATUS_ENABLED, PluginRegistry.SORT_ID, first.nextCursor(), 1);
+        assertEquals(second, next.rows().get(0).getLong("ID"));
+        assertNull(next.nextCursor());
+        assertEquals(2, registry.page(null, PluginRegistry.STATUS_ENABLED, PluginRegistry.SORT_TIME, null, 10).rows().size());
+        assertEquals(3, registry.page("DEMO", PluginRegistry.STATUS_DISABLED, PluginRegistry.SORT_TIME, null, 10).rows().size());
+    }
+
+    @Test
+    void listReturnsCopies() {
+        registry.add(plugin("demo", "1.0"));
+        List<DataRow> rows = List.copyOf(registry.list());
+        rows.get(0).put("PLUGIN_STATUS", PluginRegistry.STATUS_ENABLED);
+        assertEquals(PluginRegistry.STATUS_DISABLED, registry.get("demo", "1.0").getInt("PLUGIN_STATUS"));
+    }
+
+    @Test
+    void rejectsDuplicateNameAndVersion() throws SQLException {
+        assertTrue(registry.addIfAbsent(plugin("demo", "1.0")));
+        assertFalse(registry.addIfAbsent(plugin("demo", "1.0")));
+        assertTrue(registry.addIfAbsent(plugin("demo", "2.0")));
+        assertTrue(registry.exists("demo", "1.0"));
+        assertFalse(registry.exists("demo", "3.0"));
+        assertEquals(2, registry.list().size());
+    }
+
+    @Test
+    void recoverRemovesUnfinishedInstalls() throws SQLException {
+        registry.add(plugin("demo", "1.0"));
+        DataRow installing = plugin("demo", "2.0");
+        installing.put("PLUGIN_STATUS", PluginRegistry.STATUS_VERIFYING);
+        registry.add(installing);
+        // 上次运行的其他节点登记的安装中插件，不在内存中
+        execute("INSERT INTO " + PluginRegistry.TABLE + " (PLUGIN_NAME, PLUGIN_VERSION, PLUGIN_PATH, PLUGIN_STATUS, ROW_VERSION)"
+                + " VALUES ('other', '1.0', 'other/1.0/other.jar', 2, 0)");
+        assertEquals(2, registry.idsByStatus(PluginRegistry.STATUS_VERIFYING).size());
+
+        new PluginInstaller(registry, 1, 4, 1000).recover();
+        assertEquals(List.of(), registry.idsByStatus(PluginRegistry.STATUS_VERIFYING));
+        assertNull(registry.get(installing.getLong("ID")));
+        assertNotNull(registry.get("demo", "1.0"));
+    }
+
+    @Test
+    void transitionChecksDatabaseStatus() throws SQLException {
+        DataRow row = plugin("demo", "1.0");
+        registry.add(row);
+        long pluginId = row.getLong("ID");
+        assertTrue(registry.transition(pluginId, PluginRegistry.STATUS_DISABLED, PluginRegistry.STATUS_ENABLED));
+        assertEquals(PluginRegistry.STATUS_ENABLED, registry.get(pluginId).getInt("PLUGIN_STATUS"));
+        // 预期状态与数据库不一致时不修改
+        assertFalse(registry.transition(pluginId, PluginRegistry.STATUS_DISABLED, PluginRegistry.STATUS_ENABLED));
+
+        // 其他节点禁用了插件，内存中仍是启用状态，按启用状态确认时失败，并丢弃内存中的数据
+        execute("UPDATE " + PluginRegistry.TABLE + " SET PLUGIN_STATUS = 0 WHERE ID = " + pluginId);
+        assertFalse(registry.transition(pluginId, PluginRegistry.STATUS_ENABLED, PluginRegistry.STATUS_ENABLED));
+        assertEquals(PluginRegistry.STATUS_DISABLED, registry.get(pluginId).getInt("PLUGIN_STATUS"));
+
+        assertFalse(registry.transition(999, PluginRegistry.STATUS_DISABLED, PluginRegistry.STATUS_ENABLED));
+    }
+
+    @Test
+    void updateMetadataUsesRowVersion() throws SQLException {
+        DataRow row = plugin("demo", "1.0");
+        registry.add(row);
+        long pluginId = row.getLong("ID");
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put("PLUGIN_DESC", "first");
+        fields.put("PLUGIN_VERSION", "");
+        assertTrue(registry.updateMetadata(pluginId, 0, fields));
+        DataRow updated = registry.get(pluginId);
+        assertEquals("first", updated.getString("PLUGIN_DESC"));
+        // 值为空的列不修改
+        assertEquals("1.0", updated.getString("PLUGIN_VERSION"));
+        assertEquals(1, updated.getLong(PluginRegistry.ROW_VERSION, 0L));
+
+        // 基于旧版本的修改被拒绝
+        fields.put("PLUGIN_DESC", "stale");
+        assertFalse(registry.updateMetadata(pluginId, 0, fields));
+        assertEquals("first", registry.get(pluginId).getString("PLUGIN_DESC"));
+
+        // 其他节点修改后内存中的版本过期，修改被拒绝并重新加载
+        execute("UPDATE " + PluginRegistry.TABLE + " SET PLUGIN_DESC = 'other', ROW_VERSION = 2 WHERE ID = " + pluginId);
+        assertFalse(registry.updateMetadata(pluginId, 1, fields));
+        DataRow latest = registry.get(pluginId);
+        assertEquals("other", latest.getString("PLUGIN_DESC"));
+        assertTrue(registry.updateMetadata(pluginId, latest.getLong(PluginRegistry.ROW_VERSION, 0L), fields));
+        assertEquals("stale", registry.get(pluginId).getString("PLUGIN_DESC"));
+    }
+
+    private static DataRow plugin(String name, String version) {
+        DataRow row = new DataRow();
+        row.put("PLUGIN_NAME", name);
+        row.put("PLUGIN_VERSION", version);
+        row.put("PLUGIN_PATH", name + "/" + version + "/" + name + ".jar");
+        row.put("PLUGIN_STATUS", PluginRegistry.STATUS_DISABLED);
+        return row;
+    }
+
+    private static void touch(long pluginId, int status, long updateTime) throws SQLException {
+        try (Connection connection = DataSourceManager.global().dataSource().getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "UPDATE " + PluginRegistry.TABLE + " SET PLUGIN_STATUS = ?, UPDATE_TIME = ? WHERE ID = ?")) {
+            statement.setInt(1, status);
+            statement.setTimestamp(2, new Timestamp(updateTime));
+            statement.setLong(3, pluginId);
+            statement.executeUpdate();
+        }
+    }
+
+    private static void execute(String sql) throws SQLException {
+        try (Connection connection = DataSourceManager.global().dataSource().getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package site.xiweihai.framework.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DirectoryListerTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void pagesWithCursor() throws Exception {
+        Files.createDirectory(dir.resolve("sub"));
+        for (int i = 0; i < 5; i++) {
+            Files.writeString(dir.resolve("f" + i + ".txt"), "x".repeat(5 - i));
+        }
+        List<String> names = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            DirectoryLister.Listing listing = DirectoryLister.list(dir, DirectoryLister.SORT_NAME, cursor, 2);
+            assertTrue(listing.entries().size() <= 2);
+            listing.entries().forEach(entry -> names.add(entry.name()));
+            cursor = listing.nextCursor();
+            pages++;
+        } while (cursor != null);
+        // 目录排在文件前面
+        assertEquals(List.of("sub", "f0.txt", "f1.txt", "f2.txt", "f3.txt", "f4.txt"), names);
+        assertEquals(3, pages);
+
+        DirectoryLister.Listing bySize = DirectoryLister.list(dir, DirectoryLister.SORT_SIZE, null, 3);
+        assertEquals(List.of("sub", "f4.txt", "f3.txt"), bySize.entries().stream().map(DirectoryLister.FileEntry::name).toList());
+        // 无法解析的游标从第一页开始
+        assertEquals(bySize, DirectoryLister.list(dir, DirectoryLister.SORT_SIZE, "broken", 3));
+    }
+
+    @Test
+    void unpagedListing() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            Files.writeString(dir.resolve("f" + i), "");
+        }
+        DirectoryLister.Listing listing = DirectoryLister.list(dir, DirectoryLister.SORT_NAME, null, Integer.MAX_VALUE);
+        assertEquals(3, listing.entries().size());
+        assertNull(listing.nextCursor());
+    }
+}
@@ -0,0 +1,60 @@
+package site.xiweihai.framework.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileDigestCacheTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void compactsJournalAtRuntime() throws Exception {
+        File kept = Files.writeString(dir.resolve("kept.txt"), "kept").toFile();
+        File deleted = Files.writeString(dir.resolve("deleted.txt"), "deleted").toFile();
+        FileDigestCache cache = new FileDigestCache(dir, 16);
+        cache.put(deleted, "d");
+        Files.delete(deleted.toPath());
+        // 同一文件反复写入，旧记录被覆盖
+        for (int i = 0; i < 40; i++) {
+            cache.put(kept, "k" + i);
+        }
+        assertTrue(cache.journalLines() < 16, "journal lines " + cache.journalLines());
+        // 压缩时移除已删除文件的条目
+        assertEquals(1, cache.size());
+        cache.close();
+
+        FileDigestCache reloaded = new FileDigestCache(dir, 16);
+        assertEquals("k39", reloaded.get(kept, kept.length(), kept.lastModified()));
+        assertNull(reloaded.get(deleted, 7, 0));
+        reloaded.close();
+    }
+
+    @Test
+    void remembersFailureUntilFileChanges() throws Exception {
+        // 目录无法计算摘要
+        File unreadable = Files.createDirectory(dir.resolve("unreadable.jar")).toFile();
+        long size = unreadable.length();
+        long lastModified = unreadable.lastModified();
+        FileDigestCache cache = new FileDigestCache(dir, 16);
+        assertNull(cache.get(unreadable, size, lastModified));
+        String md5 = null;
+        for (int i = 0; i < 100 && md5 == null; i++) {
+            Thread.sleep(20);
+            md5 = cache.get(unreadable, size, lastModified);
+        }
+        // 失败后不再显示为计算中，文件属性变化后重新计算
+        assertEquals("", md5);
+        assertEquals("", cache.get(unreadable, size, lastModified));
+        assertNull(cache.get(unreadable, size + 1, lastModified));
+        // 失败标记不写入日志
+        assertEquals(0, cache.journalLines());
+        cache.close();
+    }
+}
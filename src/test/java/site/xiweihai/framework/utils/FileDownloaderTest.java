@@ -0,0 +1,32 @@
+package site.xiweihai.framework.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileDownloaderTest {
+
+    @Test
+    void parseRange() {
+        assertArrayEquals(new long[]{0, 99}, FileDownloader.parseRange("bytes=0-99", 1000));
+        assertArrayEquals(new long[]{100, 999}, FileDownloader.parseRange("bytes=100-", 1000));
+        assertArrayEquals(new long[]{900, 999}, FileDownloader.parseRange("bytes=-100", 1000));
+        // 结束位置超出文件长度时截断
+        assertArrayEquals(new long[]{500, 999}, FileDownloader.parseRange("bytes=500-5000", 1000));
+        // 多段或格式不支持时忽略 Range
+        assertEquals(0, FileDownloader.parseRange("bytes=0-1,5-6", 1000).length);
+        assertEquals(0, FileDownloader.parseRange("items=0-1", 1000).length);
+        // 无法满足的范围
+        assertNull(FileDownloader.parseRange("bytes=1000-", 1000));
+        assertNull(FileDownloader.parseRange("bytes=20-10", 1000));
+    }
+
+    @Test
+    void ifRangeUsesStrongComparison() {
+        assertTrue(FileDownloader.ifRangeMatches(null, "W/\"3e8-1\""));
+        assertTrue(FileDownloader.ifRangeMatches("\"abc\"", "\"abc\""));
+        assertFalse(FileDownloader.ifRangeMatches("\"abd\"", "\"abc\""));
+        // 弱 ETag 即使相同也返回完整内容
+        assertFalse(FileDownloader.ifRangeMatches("W/\"3e8-1\"", "W/\"3e8-1\""));
+    }
+}
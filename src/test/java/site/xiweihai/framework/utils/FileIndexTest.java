@@ -0,0 +1,96 @@
+package site.xiweihai.framework.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileIndexTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void followsChangesOnDisk() throws Exception {
+        Path dir = Files.createDirectories(root.resolve("demo").resolve("1.0"));
+        Files.writeString(dir.resolve("a.yml"), "a: 1");
+        Files.createDirectories(root.resolve(".blobs"));
+        FileIndex index = new FileIndex(root, Set.of(".blobs"), null);
+        index.start();
+        try {
+            await(() -> index.version(dir) >= 0);
+            assertEquals(-1, index.version(root.resolve(".blobs")));
+            assertEquals(List.of("a.yml"), names(index, dir));
+
+            // 外部新增文件由监听事件更新
+            long version = index.version(dir);
+            Files.writeString(dir.resolve("b.yml"), "b: 2");
+            await(() -> names(index, dir).contains("b.yml"));
+            assertNotEquals(version, index.version(dir));
+
+            // 应用自身写入后立即可见
+            Files.delete(dir.resolve("a.yml"));
+            index.refresh(dir.resolve("a.yml"));
+            assertEquals(List.of("b.yml"), names(index, dir));
+
+            // 新建的子目录开始监听
+            Path sub = Files.createDirectories(dir.resolve("conf"));
+            await(() -> index.version(sub) >= 0);
+            Files.writeString(sub.resolve("c.yml"), "c: 3");
+            await(() -> names(index, sub).contains("c.yml"));
+        } finally {
+            index.stop();
+        }
+        assertNull(index.list(dir, DirectoryLister.SORT_NAME, null, 10));
+    }
+
+    @Test
+    void ignoresDigestJournal() throws Exception {
+        Path dir = Files.createDirectories(root.resolve("demo").resolve("1.0"));
+        FileDigestCache digests = new FileDigestCache(root);
+        FileIndex index = new FileIndex(root, Set.of(".blobs"), digests);
+        index.start();
+        try {
+            await(() -> index.version(dir) >= 0);
+            Files.writeString(dir.resolve("a.yml"), "a: 1");
+            Path file = dir.resolve("a.yml");
+            await(() -> digests.get(file.toFile(), file.toFile().length(), file.toFile().lastModified()) != null);
+
+            // 摘要写入日志后不再引起新的计算，日志行数和事件数保持不变
+            Thread.sleep(500);
+            int lines = digests.journalLines();
+            long events = index.events();
+            Thread.sleep(1000);
+            assertEquals(lines, digests.journalLines());
+            assertEquals(events, index.events());
+            assertTrue(Files.exists(root.resolve(FileDigestCache.CACHE_FILE_NAME)));
+            DirectoryLister.Listing listing = index.list(root, DirectoryLister.SORT_NAME, null, 100);
+            assertEquals(List.of("demo"), listing.entries().stream().map(DirectoryLister.FileEntry::name).toList());
+        } finally {
+            index.stop();
+            digests.close();
+        }
+    }
+
+    private static List<String> names(FileIndex index, Path dir) {
+        DirectoryLister.Listing listing = index.list(dir, DirectoryLister.SORT_NAME, null, 100);
+        return listing == null ? List.of() : listing.entries().stream().filter(entry -> !entry.directory()).map(DirectoryLister.FileEntry::name).toList();
+    }
+
+    /**
+     * 监听事件异步到达，轮询等待条件成立
+     */
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package site.xiweihai.framework.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JarScannerTest {
+
+    @Test
+    void collectsIndexEntries() throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (JarOutputStream jar = new JarOutputStream(bytes, manifest)) {
+            put(jar, "com/example/demo/DemoController.class",
+                    "Êþº¾Lorg/noear/solon/annotation/Controller;".getBytes(StandardCharsets.ISO_8859_1));
+            put(jar, "com/example/demo/util/Helper.class", new byte[]{(byte) 0xCA, (byte) 0xFE});
+            put(jar, "META-INF/services/com.example.Api", "# comment\ncom.example.demo.ApiImpl\n\n".getBytes(StandardCharsets.UTF_8));
+            put(jar, "META-INF/solon/demo.properties", "solon.plugin=com.example.demo.DemoPlugin\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        JarScanner.JarScan scan = JarScanner.scan(new ByteArrayInputStream(bytes.toByteArray()), OutputStream.nullOutputStream());
+        assertNotNull(scan.manifest());
+        assertEquals(bytes.size(), scan.size());
+        assertEquals(List.of("com.example.demo", "com.example.demo.util"), List.copyOf(scan.packages()));
+        assertEquals(List.of("com.example.demo.ApiImpl"), scan.services().get("com.example.Api"));
+        assertEquals(List.of("com.example.demo.DemoPlugin"), scan.solonPlugins());
+        assertEquals(List.of("com.example.demo.DemoController"), scan.controllers());
+    }
+
+    @Test
+    void rejectsNonZipData() {
+        byte[] data = "not a jar".getBytes(StandardCharsets.UTF_8);
+        assertThrows(ZipException.class, () -> JarScanner.scan(new ByteArrayInputStream(data), OutputStream.nullOutputStream()));
+    }
+
+    private static void put(JarOutputStream jar, String name, byte[] data) throws IOException {
+        jar.putNextEntry(new JarEntry(name));
+        jar.write(data);
+        jar.closeEntry();
+    }
+}